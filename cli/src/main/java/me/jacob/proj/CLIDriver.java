@@ -5,10 +5,14 @@ import me.jacob.proj.controller.CrawlerCommand;
 import me.jacob.proj.controller.CrawlerExitCommand;
 import me.jacob.proj.controller.WikipediaCommand;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 public class CLIDriver {
 
-    public static void main(String[] args) {
-        WikipediaGame game = new WikipediaGame();
+    //usage: CLIDriver [graph snapshot file]
+    public static void main(String[] args) throws IOException {
+        WikipediaGame game = new WikipediaGame(args.length > 0 ? Path.of(args[0]) : null);
         CommandLineInterface cli = new CommandLineInterface();
         cli.getCommandMap().registerCommand(new CrawlerCommand(game));
         cli.getCommandMap().registerCommand(new CrawlerExitCommand(cli,game));
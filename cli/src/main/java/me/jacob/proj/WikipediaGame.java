@@ -3,7 +3,9 @@ package me.jacob.proj;
 import me.jacob.proj.model.PageRepository;
 import me.jacob.proj.model.map.HashMapLinkRepository;
 import me.jacob.proj.model.map.HashMapPageRepository;
+import me.jacob.proj.model.mapped.MappedPageRepository;
 import me.jacob.proj.service.LinkService;
+import me.jacob.proj.service.PathQueryService;
 import me.jacob.proj.service.Wikipedia;
 import me.jacob.proj.service.crawl.WikiCrawler;
 import me.jacob.proj.service.crawl.analysis.factory.WikiAnalyzerFactory;
@@ -11,6 +13,9 @@ import me.jacob.proj.service.crawl.fetch.FileDocumentFetcher;
 import me.jacob.proj.util.AtomicIntCounter;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 
@@ -19,12 +24,23 @@ public class WikipediaGame {
     private WikiCrawler crawler;
     private Wikipedia pageService;
     private LinkService linkService;
+    private PathQueryService queryService;
+    private final boolean readOnly;
 
-    public WikipediaGame() {
-        PageRepository repository = new HashMapPageRepository(new AtomicIntCounter());
-        pageService = new Wikipedia(linkService, new HashMapPageRepository(new AtomicIntCounter()));
+    public WikipediaGame() throws IOException {
+        this(null);
+    }
+
+    /**
+     * Serves the graph in the snapshot file if there is one, read only and without loading it.
+     * Otherwise the graph starts empty and the crawler writes it to the file when it shuts down.
+     */
+    public WikipediaGame(Path snapshot) throws IOException {
+        readOnly = snapshot != null && Files.exists(snapshot);
+        PageRepository repository = readOnly ? MappedPageRepository.open(snapshot) : new HashMapPageRepository(new AtomicIntCounter());
         linkService = new LinkService(new HashMapLinkRepository(repository), repository);
         linkService.setTimeBetweenUpdates(Duration.of(30, ChronoUnit.SECONDS));
+        pageService = new Wikipedia(linkService, repository);
 
         crawler = new WikiCrawler.Builder(pageService,linkService)
                 .setShutDownOnEarlyStop(true)
@@ -33,14 +49,26 @@ public class WikipediaGame {
                 .setProducers(1)
                 .setAnalyzer(new WikiAnalyzerFactory(pageService))
                 .setFetcher(new FileDocumentFetcher(new File("testpages").toPath()))
+                .setSnapshotFile(readOnly ? null : snapshot)
+                .build();
+
+        queryService = new PathQueryService.Builder(pageService)
+                .setThreads(1)
+                .setQueueCapacity(16)
                 .build();
     }
 
     public void shutdown() {
         crawler.shutdown();
+        queryService.shutdown();
         pageService.publishBulkCreate();
     }
 
+    //whether the graph was opened from a snapshot, the crawler can't add to it
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
     public WikiCrawler getCrawler() {
         return crawler;
     }
@@ -53,6 +81,10 @@ public class WikipediaGame {
         return linkService;
     }
 
+    public PathQueryService getQueryService() {
+        return queryService;
+    }
+
     public void setCrawler(WikiCrawler crawler) {
         this.crawler = crawler;
     }
@@ -64,4 +96,8 @@ public class WikipediaGame {
     public void setLinkService(LinkService linkService) {
         this.linkService = linkService;
     }
+
+    public void setQueryService(PathQueryService queryService) {
+        this.queryService = queryService;
+    }
 }
@@ -40,6 +40,11 @@ public class CrawlerCommand extends Command {
             return;
         }
 
+        if(game.isReadOnly()) {
+            System.out.println("The graph was opened from a snapshot and is read only");
+            return;
+        }
+
         if(option.equals("start")) {
             startCrawler();
         } else if(option.equals("stop")) {
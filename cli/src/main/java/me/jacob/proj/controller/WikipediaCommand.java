@@ -3,6 +3,9 @@ package me.jacob.proj.controller;
 import me.jacob.proj.Command;
 import me.jacob.proj.WikipediaGame;
 import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.service.PathQuery;
+import me.jacob.proj.service.SearchBudget;
+import me.jacob.proj.service.ShortestPaths;
 import me.jacob.proj.service.Wikipedia;
 import me.jacob.proj.view.DisplayWikiView;
 import picocli.CommandLine;
@@ -11,6 +14,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 @CommandLine.Command(name = "wiki", description = "Options for controlling and viewing indexed wikipedia pages")
@@ -22,6 +28,15 @@ public class WikipediaCommand extends Command {
     @CommandLine.Option(names = {"-p"}, description = "Toggle to find the shortest path between two pages")
     private boolean findPath;
 
+    @CommandLine.Option(names = {"-n", "--limit"}, defaultValue = "10", description = "The most shortest paths to display for each pair of pages")
+    private int limit;
+
+    @CommandLine.Option(names = {"-t", "--timeout"}, defaultValue = "0", description = "The most milliseconds to search for each pair of pages, 0 for no limit")
+    private long timeout;
+
+    @CommandLine.Option(names = {"-s", "--stats"}, description = "Toggle to display the queue and latency of path queries")
+    private boolean stats;
+
     private final static Pattern UNDERSCORE_PATTERN = Pattern.compile("_");
 
     private final DisplayWikiView view;
@@ -39,7 +54,9 @@ public class WikipediaCommand extends Command {
 
     @Override
     public void run() {
-        if(pages !=null) {
+        if(stats) {
+            System.out.println(game.getQueryService());
+        } else if(pages !=null) {
             pageMode();
         } else {
             wikiMode
@@ -89,14 +106,27 @@ public class WikipediaCommand extends Command {
         }
 
         List<WikiPage> wikiPages = new ArrayList<>(pages);
-        WikiPage page1 = wikiPages.get(0);
-
+        List<PathQuery> queries = new ArrayList<>();
         for(int i=1;i<wikiPages.size();i++) {
-            WikiPage page2 = wikiPages.get(i);
-            view.displayShortestPaths(page1,page2,game.getPageService().getShortestPaths(
-                    page1, page2));
+            queries.add(new PathQuery(wikiPages.get(i-1),wikiPages.get(i)));
+        }
+
+        //every pair is worked out in one batch, then shown in order
+        SearchBudget budget = timeout > 0 ? SearchBudget.of(timeout,TimeUnit.MILLISECONDS) : SearchBudget.unlimited();
+        List<ShortestPaths> answers;
+        try {
+            answers = game.getQueryService().submitAll(queries,budget).join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RejectedExecutionException) {
+                System.out.println("Too many path queries are running, try again later");
+                return;
+            }
+            throw e;
+        }
 
-            page1 = page2;
+        for(int i=0;i<queries.size();i++) {
+            PathQuery query = queries.get(i);
+            view.displayShortestPaths(query.getStart(),query.getEnd(),answers.get(i),limit);
         }
     }
 
@@ -1,8 +1,11 @@
 package me.jacob.proj.view;
 
 import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.service.ShortestPaths;
 import me.jacob.proj.service.Wikipedia;
 
+import java.math.BigInteger;
+import java.util.Iterator;
 import java.util.List;
 
 public class DisplayWikiView {
@@ -10,9 +13,7 @@ public class DisplayWikiView {
     public void displayPages(Wikipedia wikipedia) {
         for(WikiPage page : wikipedia.getAllPages()) {
             System.out.println(page.getTitle());
-            for(WikiPage neighbour : page.getNeighbours()) {
-                System.out.println(" - "+neighbour.getTitle());
-            }
+            page.forEachNeighbour(neighbour -> System.out.println(" - "+neighbour.getTitle()));
         }
     }
 
@@ -29,19 +30,30 @@ public class DisplayWikiView {
         System.out.println("Article Type: " + page.getArticleType());
         System.out.println("Unique Id: "+page.getUniqueId());
         System.out.println("Neighbours:");
-        for(WikiPage neighbour : page.getNeighbours()) {
-            System.out.println(" - "+neighbour.getTitle());
-        }
+        page.forEachNeighbour(neighbour -> System.out.println(" - "+neighbour.getTitle()));
     }
 
-    public void displayShortestPaths(WikiPage page1, WikiPage page2, List<List<WikiPage>> shortestPaths) {
-        if(shortestPaths.size()==0) {
+    public void displayShortestPaths(WikiPage page1, WikiPage page2, ShortestPaths shortestPaths, int limit) {
+        if(shortestPaths.isCutOff()) {
+            System.out.println("Gave up finding a path from "+page1.getTitle()+" to "+page2.getTitle()+" ("+shortestPaths.getStatus()+")");
+            System.out.println("Distance: at least "+shortestPaths.getLowerBound()+", Pages Searched: "+shortestPaths.getExpanded());
+            return;
+        }
+
+        if(!shortestPaths.exists()) {
             System.out.println("No path exists from "+page1.getTitle()+" to "+page2.getTitle());
             return;
         }
 
+        BigInteger total = shortestPaths.getPathCount();
         System.out.println("Displaying Paths from "+page1.getTitle()+" to "+page2.getTitle());
-        for(List<WikiPage> path : shortestPaths) {
+        System.out.println("Distance: "+shortestPaths.getDistance()+", Shortest Paths: "+total);
+        //the paths are built as they are printed, there may be far too many to list them all
+        Iterator<List<WikiPage>> iterator = shortestPaths.iterator();
+        int shown = 0;
+        while (iterator.hasNext() && shown < limit) {
+            List<WikiPage> path = iterator.next();
+            shown++;
             StringBuilder pathDisplay = new StringBuilder("[");
             int count = 0;
             for(WikiPage page : path) {
@@ -54,5 +66,9 @@ public class DisplayWikiView {
             pathDisplay.append("]");
             System.out.println(pathDisplay);
         }
+
+        BigInteger remaining = total.subtract(BigInteger.valueOf(shown));
+        if(remaining.signum() > 0)
+            System.out.println("... and "+remaining+" more");
     }
 }
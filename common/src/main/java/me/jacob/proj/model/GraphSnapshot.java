@@ -0,0 +1,220 @@
+package me.jacob.proj.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * An immutable, read optimized copy of the page graph. Pages are indexed by their unique id and
+ * the links are held in compressed sparse row form, the links out of page u are
+ * targets[offsets[u]] to targets[offsets[u+1]-1]. The reverse links are held the same way so that
+ * the "what links here" of a page can be read without touching the repository.
+ */
+public class GraphSnapshot implements PageGraph {
+
+    private final WikiPage[] pages;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] inOffsets;
+    private final int[] sources;
+    private final BitSet removed;
+
+    private GraphSnapshot(WikiPage[] pages, int[] offsets, int[] targets, int[] inOffsets, int[] sources, BitSet removed) {
+        this.pages = pages;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.inOffsets = inOffsets;
+        this.sources = sources;
+        this.removed = removed;
+    }
+
+    @Override
+    public int size() {
+        return pages.length;
+    }
+
+    @Override
+    public int getAmountOfEdges() {
+        return targets.length;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return id >= 0 && id < pages.length && pages[id] != null;
+    }
+
+    @Override
+    public WikiPage getPage(int id) {
+        if(!contains(id))
+            return null;
+
+        return pages[id];
+    }
+
+    @Override
+    public boolean isRemoved(int id) {
+        return removed.get(id);
+    }
+
+    @Override
+    public int getDegree(int id) {
+        return offsets[id+1] - offsets[id];
+    }
+
+    public int getInDegree(int id) {
+        return inOffsets[id+1] - inOffsets[id];
+    }
+
+    @Override
+    public void forEachNeighbour(int id, IntConsumer action) {
+        for(int i = offsets[id]; i < offsets[id+1]; i++) {
+            action.accept(targets[i]);
+        }
+    }
+
+    @Override
+    public void forEachInLink(int id, IntConsumer action) {
+        for(int i = inOffsets[id]; i < inOffsets[id+1]; i++) {
+            action.accept(sources[i]);
+        }
+    }
+
+    @Override
+    public boolean anyInLink(int id, IntPredicate predicate) {
+        for(int i = inOffsets[id]; i < inOffsets[id+1]; i++) {
+            if(predicate.test(sources[i]))
+                return true;
+        }
+        return false;
+    }
+
+    //the position of the first link out of the page
+    public int getOffset(int id) {
+        return offsets[id];
+    }
+
+    public int getTarget(int position) {
+        return targets[position];
+    }
+
+    //the position of the first link into the page
+    public int getInOffset(int id) {
+        return inOffsets[id];
+    }
+
+    public int getSource(int position) {
+        return sources[position];
+    }
+
+    public static class Builder {
+
+        private final List<WikiPage> pages;
+        private int[] from;
+        private int[] to;
+        private int edges;
+        private int maxId;
+
+        public Builder() {
+            this.pages = new ArrayList<>();
+            this.from = new int[16];
+            this.to = new int[16];
+            this.edges = 0;
+            this.maxId = -1;
+        }
+
+        public Builder addPage(WikiPage page) {
+            pages.add(page);
+            maxId = Math.max(maxId,page.getUniqueId());
+            return this;
+        }
+
+        public Builder addEdge(int source, int target) {
+            if(edges == from.length) {
+                from = Arrays.copyOf(from,edges * 2);
+                to = Arrays.copyOf(to,edges * 2);
+            }
+            from[edges] = source;
+            to[edges] = target;
+            edges++;
+            return this;
+        }
+
+        public GraphSnapshot build() {
+            int size = maxId + 1;
+            WikiPage[] byId = new WikiPage[size];
+            BitSet removed = new BitSet(size);
+            for(WikiPage page : pages) {
+                byId[page.getUniqueId()] = page;
+                if(page.isRemoved())
+                    removed.set(page.getUniqueId());
+            }
+
+            int[] offsets = new int[size + 1];
+            int[] targets = toRows(byId,from,to,edges,offsets);
+            //compact away duplicate links, the repositories may report the same link twice
+            targets = deduplicate(offsets,targets);
+
+            //the reverse rows are built from the de-duplicated forward rows
+            int[] reverseFrom = new int[targets.length];
+            for(int id = 0; id < size; id++) {
+                for(int i = offsets[id]; i < offsets[id+1]; i++) {
+                    reverseFrom[i] = id;
+                }
+            }
+            int[] inOffsets = new int[size + 1];
+            int[] sources = toRows(byId,targets,reverseFrom,targets.length,inOffsets);
+
+            return new GraphSnapshot(byId,offsets,targets,inOffsets,sources,removed);
+        }
+
+        private int[] toRows(WikiPage[] byId, int[] rowIds, int[] values, int length, int[] offsets) {
+            int size = byId.length;
+            int count = 0;
+            for(int i = 0; i < length; i++) {
+                if(isValid(byId,rowIds[i]) && isValid(byId,values[i])) {
+                    offsets[rowIds[i] + 1]++;
+                    count++;
+                }
+            }
+
+            for(int id = 0; id < size; id++) {
+                offsets[id+1] += offsets[id];
+            }
+
+            int[] rows = new int[count];
+            int[] fill = Arrays.copyOf(offsets,size);
+            for(int i = 0; i < length; i++) {
+                if(isValid(byId,rowIds[i]) && isValid(byId,values[i])) {
+                    rows[fill[rowIds[i]]++] = values[i];
+                }
+            }
+
+            return rows;
+        }
+
+        private boolean isValid(WikiPage[] byId, int id) {
+            return id >= 0 && id < byId.length && byId[id] != null;
+        }
+
+        private int[] deduplicate(int[] offsets, int[] targets) {
+            int write = 0;
+            int rowStart = 0;
+            for(int id = 0; id < offsets.length - 1; id++) {
+                int end = offsets[id+1];
+                Arrays.sort(targets,rowStart,end);
+                int newStart = write;
+                for(int i = rowStart; i < end; i++) {
+                    if(write == newStart || targets[write-1] != targets[i])
+                        targets[write++] = targets[i];
+                }
+                rowStart = end;
+                offsets[id] = newStart;
+            }
+            offsets[offsets.length - 1] = write;
+            return Arrays.copyOf(targets,write);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package me.jacob.proj.model;
+
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * One published version of the link graph, see {@link GraphVersions}. Nothing a version can reach
+ * changes after it is published, so a search reading it sees the graph as it was at the end of one
+ * epoch however many updates are published while it runs. The pages are kept in chunks of ids and
+ * a new version only copies the chunks holding pages that changed, the others are shared with the
+ * version before it.
+ * <p>
+ * An id that is only linked to has no page yet, it counts as removed so searches pass over it.
+ */
+public final class GraphVersion implements PageGraph {
+
+    final static int CHUNK_SHIFT = 10;
+    final static int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    final static int[] NONE = new int[0];
+
+    private final long epoch;
+    private final Node[][] chunks;
+    private final int size;
+    private final int edges;
+
+    GraphVersion(long epoch, Node[][] chunks, int size, int edges) {
+        this.epoch = epoch;
+        this.chunks = chunks;
+        this.size = size;
+        this.edges = edges;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getAmountOfEdges() {
+        return edges;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        Node node = node(id);
+        return node != null && node.page != null;
+    }
+
+    @Override
+    public WikiPage getPage(int id) {
+        Node node = node(id);
+        return node == null ? null : node.page;
+    }
+
+    @Override
+    public boolean isRemoved(int id) {
+        Node node = node(id);
+        return node == null || node.page == null || node.removed;
+    }
+
+    @Override
+    public int getDegree(int id) {
+        Node node = node(id);
+        return node == null ? 0 : node.out.length;
+    }
+
+    @Override
+    public void forEachNeighbour(int id, IntConsumer action) {
+        Node node = node(id);
+        if(node == null)
+            return;
+
+        for(int target : node.out) {
+            action.accept(target);
+        }
+    }
+
+    @Override
+    public void forEachInLink(int id, IntConsumer action) {
+        anyInLink(id, source -> {
+            action.accept(source);
+            return false;
+        });
+    }
+
+    @Override
+    public boolean anyInLink(int id, IntPredicate predicate) {
+        Node node = node(id);
+        if(node == null)
+            return false;
+
+        //the array may be longer than this version's in links, the rest belong to later versions
+        int[] in = node.in;
+        for(int i = 0; i < node.inCount; i++) {
+            if(predicate.test(in[i]))
+                return true;
+        }
+        return false;
+    }
+
+    Node node(int id) {
+        int chunk = id >>> CHUNK_SHIFT;
+        if(id < 0 || chunk >= chunks.length || chunks[chunk] == null)
+            return null;
+
+        return chunks[chunk][id & (CHUNK_SIZE - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return "GraphVersion{epoch=" + epoch + ", size=" + size + ", edges=" + edges + '}';
+    }
+
+    /**
+     * A page and its links as of one version. The out links are sorted and never written to. The in
+     * links are only ever appended to, a later version may have written past inCount but never
+     * before it, so each version reads the prefix it was published with.
+     */
+    static final class Node {
+        final WikiPage page;
+        final boolean removed;
+        final int[] out;
+        final int[] in;
+        final int inCount;
+
+        Node(WikiPage page, boolean removed, int[] out, int[] in, int inCount) {
+            this.page = page;
+            this.removed = removed;
+            this.out = out;
+            this.in = in;
+            this.inCount = inCount;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package me.jacob.proj.model;
+
+import me.jacob.proj.model.GraphVersion.Node;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Multi-version reads of the link graph. Writers hand over whole changes through {@link #publish},
+ * each call is applied and then published as one new epoch, so a reader never sees part of a
+ * change, such as a page whose links were cleared before it was relinked. Readers {@link #pin()} the
+ * latest version and search it without taking a lock, while writers carry on building the next one.
+ * <p>
+ * Only the latest version is held here. A version no reader has pinned any more is left to the
+ * garbage collector, the pin counts are kept to report which epochs readers still hold.
+ */
+public class GraphVersions {
+
+    private final ReentrantLock writeLock;
+    private final Changes changes;
+    private final Map<GraphVersion,Integer> pinned;
+
+    //the version being built, only touched under the write lock
+    private Node[][] chunks;
+    //the chunks already copied since the last publish, they are not shared with any version yet
+    private boolean[] owned;
+    private int size;
+    private int edges;
+    private long epoch;
+    private boolean dirty;
+
+    private volatile GraphVersion current;
+
+    public GraphVersions() {
+        this.writeLock = new ReentrantLock();
+        this.changes = new Changes();
+        this.pinned = new ConcurrentHashMap<>();
+        this.chunks = new Node[0][];
+        this.owned = new boolean[0];
+        this.current = new GraphVersion(0,chunks,0,0);
+    }
+
+    //a first version holding every page and link of the graph
+    public static GraphVersions of(PageGraph graph) {
+        GraphVersions versions = new GraphVersions();
+        versions.publish(changes -> changes.copy(graph));
+        return versions;
+    }
+
+    /**
+     * Applies the changes and publishes them as the next epoch. Writers are applied one at a time,
+     * readers are never held up by them.
+     */
+    public GraphVersion publish(Consumer<Changes> change) {
+        writeLock.lock();
+        try {
+            change.accept(changes);
+            if(dirty) {
+                epoch++;
+                //the table of chunks is copied, the chunks themselves are shared until written to
+                current = new GraphVersion(epoch,chunks.clone(),size,edges);
+                Arrays.fill(owned,false);
+                dirty = false;
+            }
+            return current;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //the latest version, without pinning it
+    public GraphVersion current() {
+        return current;
+    }
+
+    //the latest version, held for the reader until the view is closed
+    public ReadView pin() {
+        GraphVersion version = current;
+        pinned.merge(version,1,Integer::sum);
+        return new ReadView(version);
+    }
+
+    public long getEpoch() {
+        return current.getEpoch();
+    }
+
+    //the amount of versions readers hold, the latest included
+    public int getPinnedVersions() {
+        return pinned.size();
+    }
+
+    //the oldest epoch a reader still holds, or the latest if no reader holds any
+    public long getOldestPinnedEpoch() {
+        long oldest = current.getEpoch();
+        for(GraphVersion version : pinned.keySet()) {
+            oldest = Math.min(oldest,version.getEpoch());
+        }
+        return oldest;
+    }
+
+    private void unpin(GraphVersion version) {
+        pinned.computeIfPresent(version, (v, count) -> count == 1 ? null : count - 1);
+    }
+
+    private Node node(int id) {
+        int chunk = id >>> GraphVersion.CHUNK_SHIFT;
+        if(chunk >= chunks.length || chunks[chunk] == null)
+            return null;
+
+        return chunks[chunk][id & (GraphVersion.CHUNK_SIZE - 1)];
+    }
+
+    private void write(int id, Node node) {
+        if(id < 0)
+            throw new IndexOutOfBoundsException("id must not be negative: "+id);
+
+        int chunk = id >>> GraphVersion.CHUNK_SHIFT;
+        if(chunk >= chunks.length) {
+            int length = Math.max(chunk + 1, chunks.length * 2);
+            chunks = Arrays.copyOf(chunks,length);
+            owned = Arrays.copyOf(owned,length);
+        }
+
+        //a chunk is copied the first time it is written to in an epoch, published versions keep theirs
+        if(!owned[chunk]) {
+            Node[] nodes = chunks[chunk];
+            chunks[chunk] = nodes == null ? new Node[GraphVersion.CHUNK_SIZE] : nodes.clone();
+            owned[chunk] = true;
+        }
+        chunks[chunk][id & (GraphVersion.CHUNK_SIZE - 1)] = node;
+        size = Math.max(size,id + 1);
+        dirty = true;
+    }
+
+    /**
+     * The changes a writer can make to the version being built. They are only valid inside the
+     * {@link #publish} call they were handed to.
+     */
+    public class Changes {
+
+        private Changes() {
+        }
+
+        //adds the page or takes in its removed flag, its links are left as they are
+        public void putPage(WikiPage page) {
+            int id = page.getUniqueId();
+            Node node = node(id);
+            if(node == null) {
+                write(id,new Node(page,page.isRemoved(),GraphVersion.NONE,GraphVersion.NONE,0));
+            } else if(node.page != page || node.removed != page.isRemoved()) {
+                write(id,new Node(page,page.isRemoved(),node.out,node.in,node.inCount));
+            }
+        }
+
+        public void setRemoved(int id, boolean removed) {
+            Node node = node(id);
+            if(node != null && node.removed != removed)
+                write(id,new Node(node.page,removed,node.out,node.in,node.inCount));
+        }
+
+        //replaces the links out of the source with the first count targets, repeats are dropped
+        public void setLinks(int source, int[] targets, int count) {
+            int[] out = Arrays.copyOf(targets,count);
+            Arrays.sort(out);
+            int unique = 0;
+            for(int i = 0; i < out.length; i++) {
+                if(unique == 0 || out[unique - 1] != out[i])
+                    out[unique++] = out[i];
+            }
+            if(unique < out.length)
+                out = Arrays.copyOf(out,unique);
+
+            Node node = node(source);
+            int[] old = node == null ? GraphVersion.NONE : node.out;
+            if(Arrays.equals(old,out))
+                return;
+
+            writeOut(source,node,out);
+            //both are sorted, so one pass finds the links that went and the ones that came
+            int i = 0;
+            int j = 0;
+            while (i < old.length || j < out.length) {
+                if(j == out.length || (i < old.length && old[i] < out[j])) {
+                    removeIn(old[i++],source);
+                } else if(i == old.length || out[j] < old[i]) {
+                    addIn(out[j++],source);
+                } else {
+                    i++;
+                    j++;
+                }
+            }
+            edges += out.length - old.length;
+        }
+
+        public void addLink(int source, int target) {
+            Node node = node(source);
+            int[] old = node == null ? GraphVersion.NONE : node.out;
+            int at = Arrays.binarySearch(old,target);
+            if(at >= 0)
+                return;
+
+            at = -at - 1;
+            int[] out = new int[old.length + 1];
+            System.arraycopy(old,0,out,0,at);
+            out[at] = target;
+            System.arraycopy(old,at,out,at + 1,old.length - at);
+            writeOut(source,node,out);
+            addIn(target,source);
+            edges++;
+        }
+
+        //every page and link of the graph
+        private void copy(PageGraph graph) {
+            int[] targets = new int[16];
+            for(int id = 0; id < graph.size(); id++) {
+                WikiPage page = graph.getPage(id);
+                if(page == null)
+                    continue;
+
+                putPage(page);
+                setRemoved(id,graph.isRemoved(id));
+                int[][] into = {targets};
+                int[] count = {0};
+                graph.forEachNeighbour(id, target -> {
+                    if(count[0] == into[0].length)
+                        into[0] = Arrays.copyOf(into[0],count[0] * 2);
+                    into[0][count[0]++] = target;
+                });
+                targets = into[0];
+                setLinks(id,targets,count[0]);
+            }
+        }
+
+        private void writeOut(int source, Node node, int[] out) {
+            if(node == null) {
+                write(source,new Node(null,false,out,GraphVersion.NONE,0));
+            } else {
+                write(source,new Node(node.page,node.removed,out,node.in,node.inCount));
+            }
+        }
+
+        private void addIn(int target, int source) {
+            Node node = node(target);
+            int[] in = node == null ? GraphVersion.NONE : node.in;
+            int count = node == null ? 0 : node.inCount;
+            if(count == in.length) {
+                //only this writer appends past the count, older versions never read that far
+                in = Arrays.copyOf(in,count + Math.max(2,count >> 1));
+            }
+            in[count] = source;
+
+            if(node == null) {
+                write(target,new Node(null,false,GraphVersion.NONE,in,1));
+            } else {
+                write(target,new Node(node.page,node.removed,node.out,in,count + 1));
+            }
+        }
+
+        private void removeIn(int target, int source) {
+            Node node = node(target);
+            if(node == null)
+                return;
+
+            //older versions may still be reading the array, so the link is dropped from a copy
+            int[] in = new int[node.in.length];
+            int count = 0;
+            for(int i = 0; i < node.inCount; i++) {
+                if(node.in[i] != source)
+                    in[count++] = node.in[i];
+            }
+            write(target,new Node(node.page,node.removed,node.out,in,count));
+        }
+    }
+
+    /**
+     * A pinned version. Searches read {@link #getGraph()} and close the view once they are done with
+     * it.
+     */
+    public class ReadView implements AutoCloseable {
+
+        private final GraphVersion graph;
+        private boolean closed;
+
+        private ReadView(GraphVersion graph) {
+            this.graph = graph;
+        }
+
+        public GraphVersion getGraph() {
+            return graph;
+        }
+
+        public long getEpoch() {
+            return graph.getEpoch();
+        }
+
+        @Override
+        public void close() {
+            if(closed)
+                return;
+
+            closed = true;
+            unpin(graph);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package me.jacob.proj.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The table every {@link WikiLink} path is interned into. Each english path is given a dense id the
+ * first time it is seen and the same string is shared by every link to it, so a link itself only
+ * has to hold the id. The paths of other languages are rare, they are kept in a side table that only
+ * has entries for the paths that have them.
+ */
+public class LinkSymbols {
+
+    private final static LinkSymbols GLOBAL = new LinkSymbols();
+
+    //4096 paths to a chunk
+    private final static int CHUNK_SHIFT = 12;
+    private final static int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private final ConcurrentHashMap<String,Integer> ids;
+    //the chunks are never copied once made, only the table of them grows
+    private volatile String[][] paths;
+    private int size;
+
+    private final ConcurrentHashMap<Integer,Map<Locale,String>> locales;
+
+    public LinkSymbols() {
+        this.ids = new ConcurrentHashMap<>();
+        this.paths = new String[0][];
+        this.size = 0;
+        this.locales = new ConcurrentHashMap<>();
+    }
+
+    public static LinkSymbols global() {
+        return GLOBAL;
+    }
+
+    //the id of the path, the path is added to the table if it is new
+    public int intern(String path) {
+        Integer id = ids.get(path);
+        if(id != null)
+            return id;
+
+        return ids.computeIfAbsent(path,this::add);
+    }
+
+    //only called once for each path, from inside computeIfAbsent
+    private synchronized int add(String path) {
+        int id = size;
+        int chunk = id >>> CHUNK_SHIFT;
+        String[][] paths = this.paths;
+        if(chunk >= paths.length) {
+            String[][] grown = new String[Math.max(chunk + 1, paths.length * 2)][];
+            System.arraycopy(paths,0,grown,0,paths.length);
+            paths = grown;
+        }
+        if(paths[chunk] == null)
+            paths[chunk] = new String[CHUNK_SIZE];
+
+        paths[chunk][id & (CHUNK_SIZE - 1)] = path;
+        this.paths = paths;
+        size++;
+        return id;
+    }
+
+    public String getPath(int id) {
+        return paths[id >>> CHUNK_SHIFT][id & (CHUNK_SIZE - 1)];
+    }
+
+    //-1 if the path has never been interned
+    public int getId(String path) {
+        Integer id = ids.get(path);
+        return id == null ? -1 : id;
+    }
+
+    public void addLocale(int id, Locale locale, String path) {
+        if(Locale.ENGLISH.equals(locale))
+            throw new IllegalArgumentException("the english path is the link itself");
+
+        locales.computeIfAbsent(id, k -> new ConcurrentHashMap<>()).put(locale,path);
+    }
+
+    public String getLocalePath(int id, Locale locale) {
+        if(Locale.ENGLISH.equals(locale))
+            return getPath(id);
+
+        Map<Locale,String> extra = locales.get(id);
+        return extra == null ? null : extra.get(locale);
+    }
+
+    //the paths in every language including english
+    public Map<Locale,String> getLocales(int id) {
+        Map<Locale,String> all = new HashMap<>();
+        Map<Locale,String> extra = locales.get(id);
+        if(extra != null)
+            all.putAll(extra);
+
+        all.put(Locale.ENGLISH,getPath(id));
+        return Collections.unmodifiableMap(all);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    //the amount of paths that have another language
+    public int getLocalised() {
+        return locales.size();
+    }
+}
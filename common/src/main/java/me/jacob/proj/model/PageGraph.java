@@ -0,0 +1,47 @@
+package me.jacob.proj.model;
+
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * The link graph seen through the unique ids of the pages. Searches written against this interface
+ * work the same on the live repository and on any snapshot of it. Links may point at ids that are
+ * not less than {@link #size()} if pages were added while a search is running, searches should skip
+ * those.
+ */
+public interface PageGraph {
+
+    //the amount of ids in the graph, every page id is less than the size
+    int size();
+
+    int getAmountOfEdges();
+
+    boolean contains(int id);
+
+    WikiPage getPage(int id);
+
+    boolean isRemoved(int id);
+
+    //the amount of links out of the page
+    int getDegree(int id);
+
+    void forEachNeighbour(int id, IntConsumer action);
+
+    void forEachInLink(int id, IntConsumer action);
+
+    //stops at the first page linking to this one that matches
+    boolean anyInLink(int id, IntPredicate predicate);
+
+    /**
+     * Gives every id below the limit that passes the candidate test, is a page that isn't removed and
+     * is linked to from a page passing the source test, the scan of a bottom-up layer. A graph that
+     * locks can hold its lock over many ids rather than taking it for every check of every id.
+     */
+    default void forEachLinkedFrom(int limit, IntPredicate candidates, IntPredicate sources, IntConsumer action) {
+        for(int id = 0; id < limit; id++) {
+            if(candidates.test(id) && !isRemoved(id) && contains(id) && anyInLink(id,sources))
+                action.accept(id);
+        }
+    }
+
+}
@@ -3,6 +3,7 @@ package me.jacob.proj.model;
 import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface PageRepository {
 
@@ -18,6 +19,15 @@ public interface PageRepository {
 
     Collection<WikiPage> getNeighbours(int id);
 
+    Collection<WikiPage> getInLinks(int id);
+
+    //visits the saved links of the page and the links it holds that are not saved yet, every
+    //neighbour once and without copying. The action must not change the links of the page.
+    void forEachNeighbour(WikiPage page, Consumer<WikiPage> action);
+
+    //the amount of neighbours forEachNeighbour visits
+    int getDegree(WikiPage page);
+
     void createPage(WikiPage page);
 
     void createPages(Collection<WikiPage> pages);
@@ -32,10 +42,19 @@ public interface PageRepository {
 
     void clearNeighbours(int uniqueId);
 
+    //whether the page is removed, read without locking the page so searches can check every link
+    boolean isRemoved(int uniqueId);
+
+    //marks the page in the removed index, the page itself is still saved with savePage
+    void setRemoved(int uniqueId, boolean removed);
+
     Collection<WikiPage> getAndClearUnconnected(UUID uniqueId);
 
     Collection<WikiPage> getUnconnected(UUID uniqueId);
 
     void saveUnconnected(Collection<CrawlableLink> links);
 
+    //an immutable copy of every page and link, used to serve read heavy path queries
+    GraphSnapshot snapshot();
+
 }
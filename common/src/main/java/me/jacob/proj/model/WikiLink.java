@@ -4,11 +4,19 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
 
+/**
+ * A link to a page of the wiki. The english path is interned in the {@link LinkSymbols} table so a
+ * link is no more than the id of its path, any two links to the same page share one string. The
+ * paths of the page in other languages belong to the path, not to the link object, and are kept in
+ * the side table of {@link LinkSymbols}.
+ */
 public class WikiLink {
 
     private final static String PROTOCOL = "https";
     private final static String AUTHORITY = "wikipedia.org";
-    private final Map<Locale,String> paths;
+    private final static String ENGLISH_ROOT = PROTOCOL + "://" + Locale.ENGLISH.getLanguage() + "." + AUTHORITY;
+
+    private final int id;
 
     public static void main(String[] args) throws MalformedURLException {
         WikiLink l = new WikiLink(new URL("https://en.wikipedia.org/wiki/Black_hole"));
@@ -24,29 +32,40 @@ public class WikiLink {
         if(!authorities.containsKey(Locale.ENGLISH))
             throw new IllegalArgumentException("no english link");
 
-        this.paths = authorities;
+        this.id = symbols().intern(authorities.get(Locale.ENGLISH));
+        for(Map.Entry<Locale,String> authority : authorities.entrySet()) {
+            if(!Locale.ENGLISH.equals(authority.getKey()))
+                addSupportedLang(authority.getKey(),authority.getValue());
+        }
     }
 
     public WikiLink(String page) {
-        this.paths = new HashMap<>();
-        this.paths.put(Locale.ENGLISH,page);
+        this.id = symbols().intern(page);
+    }
+
+    private static LinkSymbols symbols() {
+        return LinkSymbols.global();
     }
 
     public void addSupportedLang(Locale locale, String path) {
-        paths.put(locale,path);
+        if(Locale.ENGLISH.equals(locale))
+            return;
+
+        symbols().addLocale(id,locale,path);
     }
 
     public Collection<Locale> getSupportedLangs() {
-        return Collections.unmodifiableSet(paths.keySet());
+        return getAuthorities().keySet();
     }
 
+    //builds a new URL every call, use getRelative or toString where a string will do
     public URL getLink() {
         return getLink(Locale.ENGLISH);
     }
 
     public URL getLink(Locale locale) {
         try {
-            return new URL(PROTOCOL, locale.getLanguage() + "." + AUTHORITY, paths.get(locale));
+            return new URL(PROTOCOL, locale.getLanguage() + "." + AUTHORITY, getRelative(locale));
         } catch (MalformedURLException e) {
             throw new RuntimeException();
         }
@@ -54,7 +73,7 @@ public class WikiLink {
 
     public Collection<URL> getURLS() {
         List<URL> urls = new ArrayList<>();
-        for(Locale locale : paths.keySet()) {
+        for(Locale locale : getSupportedLangs()) {
             urls.add(getLink(locale));
         }
 
@@ -62,16 +81,21 @@ public class WikiLink {
     }
 
     public String getRelative() {
-        return getRelative(Locale.ENGLISH);
+        return symbols().getPath(id);
     }
 
     public String getRelative(Locale locale) {
-        return paths.get(locale);
+        return symbols().getLocalePath(id,locale);
+    }
+
+    //the dense id of the english path in the symbol table
+    public int getId() {
+        return id;
     }
 
     @Override
     public String toString() {
-        return getLink().toString();
+        return ENGLISH_ROOT + getRelative();
     }
 
     @Override
@@ -80,15 +104,15 @@ public class WikiLink {
             return false;
 
         WikiLink link = (WikiLink) o;
-        return this.paths.get(Locale.ENGLISH).equals(link.paths.get(Locale.ENGLISH));
+        return this.id == link.id;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(paths.get(Locale.ENGLISH));
+        return id;
     }
 
     public Map<Locale, String> getAuthorities() {
-        return Collections.unmodifiableMap(paths);
+        return symbols().getLocales(id);
     }
 }
@@ -1,126 +1,260 @@
 package me.jacob.proj.model;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.UnaryOperator;
 
+/**
+ * A page of the wiki. Everything about the page that can change, other than its links, is held in
+ * an immutable {@link State} that is swapped whole on every change. Readers never lock the page and
+ * a state read once is always consistent with itself. A page is identified by its link alone, which
+ * never changes, so a page can sit in a hash map before it has been given its unique id.
+ */
 public class WikiPage {
 
+    private final static VarHandle STATE;
+    private final static VarHandle NEIGHBOURS;
+    private final static VarHandle IN_LINKS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            STATE = lookup.findVarHandle(WikiPage.class,"state",State.class);
+            NEIGHBOURS = lookup.findVarHandle(WikiPage.class,"cachedNeighbours",Set.class);
+            IN_LINKS = lookup.findVarHandle(WikiPage.class,"cachedInLinks",Set.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     //node data
-    private int uniqueId;
-    private String title;
-    private String description;
+    private volatile State state;
     private final WikiLink link;
 
     private final PageRepository repository;
-    private final ConcurrentMap<WikiPage,Object> cachedNeighbours;
-
-    private boolean isRedirect;
-    private String articleType;
-
-    private boolean isRemoved;
+    //links made but not saved yet, a repository may take them over once it has saved them. A set
+    //emptied that way is swapped for a new one, a concurrent set never gives back its table
+    private volatile Set<WikiPage> cachedNeighbours;
+    private volatile Set<WikiPage> cachedInLinks;
 
     public WikiPage(String title, WikiLink link, PageRepository repository) {
         this.link = link;
         this.repository = repository;
-        this.title = title;
-        this.articleType = "";
-        this.description = "";
-        this.cachedNeighbours = new ConcurrentHashMap<>();
+        this.state = new State(0,title,"",false,"",false);
+        this.cachedNeighbours = ConcurrentHashMap.newKeySet();
+        this.cachedInLinks = ConcurrentHashMap.newKeySet();
     }
 
-    public synchronized String getTitle() {
-        return title;
+    //everything about the page at one moment, read it once to use several fields together
+    public State getState() {
+        return state;
     }
 
-    public synchronized String getDescription() {
-        return description;
+    //applies the change to the latest state, retrying if another thread changed the page meanwhile
+    public State update(UnaryOperator<State> change) {
+        State current;
+        State next;
+        do {
+            current = state;
+            next = change.apply(current);
+        } while (!STATE.compareAndSet(this,current,next));
+        return next;
     }
 
+    public String getTitle() {
+        return state.title();
+    }
+
+    public String getDescription() {
+        return state.description();
+    }
+
+    //a copy of the neighbours, searches should use forEachNeighbour which copies nothing
     public Collection<WikiPage> getNeighbours() {
-        Set<WikiPage> neighbours = new HashSet<>(repository.getNeighbours(this.uniqueId));
-        neighbours.addAll(cachedNeighbours.keySet());
+        List<WikiPage> neighbours = new ArrayList<>(getDegree());
+        forEachNeighbour(neighbours::add);
         return neighbours;
     }
 
+    //visits every neighbour once, the action must not change the links of this page
+    public void forEachNeighbour(Consumer<WikiPage> action) {
+        if(repository == null) {
+            for(WikiPage neighbour : cachedNeighbours) {
+                action.accept(neighbour);
+            }
+            return;
+        }
+
+        repository.forEachNeighbour(this,action);
+    }
+
+    public void forEachNeighbourId(IntConsumer action) {
+        forEachNeighbour(neighbour -> action.accept(neighbour.getUniqueId()));
+    }
+
+    //the amount of neighbours, worked out without copying them
+    public int getDegree() {
+        if(repository == null)
+            return cachedNeighbours.size();
+
+        return repository.getDegree(this);
+    }
+
     public Collection<WikiPage> getCachedNeighbours() {
-        return Collections.unmodifiableCollection(cachedNeighbours.keySet());
+        return Collections.unmodifiableCollection(cachedNeighbours);
+    }
+
+    //the pages that link to this page, the "what links here" of the page
+    public Collection<WikiPage> getInLinks() {
+        Set<WikiPage> inLinks = new HashSet<>(repository.getInLinks(getUniqueId()));
+        inLinks.addAll(cachedInLinks);
+        return inLinks;
+    }
+
+    public Collection<WikiPage> getCachedInLinks() {
+        return Collections.unmodifiableCollection(cachedInLinks);
     }
 
     public void addNeighbour(WikiPage neighbour) {
-        cachedNeighbours.put(neighbour,new Object());
+        //added again if the set was swapped meanwhile, it might have been dropped with the old one
+        Set<WikiPage> neighbours;
+        do {
+            neighbours = cachedNeighbours;
+            neighbours.add(neighbour);
+        } while (neighbours != cachedNeighbours);
+
+        Set<WikiPage> inLinks;
+        do {
+            inLinks = neighbour.cachedInLinks;
+            inLinks.add(this);
+        } while (inLinks != neighbour.cachedInLinks);
+    }
+
+    //true if the page reads its links from the repository
+    public boolean belongsTo(PageRepository repository) {
+        return this.repository == repository;
     }
 
-    public synchronized void setDescription(String description) {
-        this.description = description;
+    public void setDescription(String description) {
+        update(s -> s.withDescription(description));
     }
 
     public WikiLink getLink() {
         return link;
     }
 
-    public synchronized int getUniqueId() {
-        return uniqueId;
+    public int getUniqueId() {
+        return state.uniqueId();
     }
 
-    public synchronized void setUniqueId(int uniqueId) {
-        this.uniqueId = uniqueId;
+    public void setUniqueId(int uniqueId) {
+        update(s -> s.withUniqueId(uniqueId));
     }
 
     @Override
     public String toString() {
         return "WikiPage{" +
-                "title='" + title + '\'' +
+                "title='" + getTitle() + '\'' +
                 '}';
     }
 
-    public synchronized boolean isRedirect() {
-        return isRedirect;
+    public boolean isRedirect() {
+        return state.redirect();
     }
 
-    public synchronized void setRedirect(boolean redirect) {
-        isRedirect = redirect;
+    public void setRedirect(boolean redirect) {
+        update(s -> s.withRedirect(redirect));
     }
 
-    public synchronized String getArticleType() {
-        return articleType;
+    public String getArticleType() {
+        return state.articleType();
     }
 
-    public synchronized void setArticleType(String articleType) {
-        this.articleType = articleType;
+    public void setArticleType(String articleType) {
+        update(s -> s.withArticleType(articleType));
     }
 
-    public synchronized boolean isRemoved() {
-        return isRemoved;
+    public boolean isRemoved() {
+        return state.removed();
     }
 
-    public synchronized void setRemoved(boolean removed) {
-        isRemoved = removed;
+    public void setRemoved(boolean removed) {
+        update(s -> s.withRemoved(removed));
     }
 
-    public synchronized void setTitle(String title) {
-        this.title = title;
+    public void setTitle(String title) {
+        update(s -> s.withTitle(title));
     }
 
     @Override
-    public synchronized boolean equals(Object o) {
+    public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         WikiPage wikiPage = (WikiPage) o;
-        return uniqueId == wikiPage.uniqueId && Objects.equals(link, wikiPage.link);
+        return Objects.equals(link, wikiPage.link);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(uniqueId, link);
+        return Objects.hashCode(link);
     }
 
     public void clearNeighbours() {
-        this.cachedNeighbours.clear();
-        repository.clearNeighbours(this.uniqueId);
+        clearCached();
+        repository.clearNeighbours(getUniqueId());
     }
 
     public void clearCached() {
+        for(WikiPage neighbour : cachedNeighbours) {
+            neighbour.cachedInLinks.remove(this);
+        }
         this.cachedNeighbours.clear();
     }
+
+    //drops the links a repository has saved and now holds itself, links made since are kept
+    public void releaseCached(Collection<WikiPage> saved) {
+        for(WikiPage neighbour : saved) {
+            if(cachedNeighbours.remove(neighbour)) {
+                neighbour.cachedInLinks.remove(this);
+                neighbour.shrink(IN_LINKS,neighbour.cachedInLinks);
+            }
+        }
+        shrink(NEIGHBOURS,cachedNeighbours);
+    }
+
+    private void shrink(VarHandle field, Set<WikiPage> links) {
+        if(links.isEmpty())
+            field.compareAndSet(this,links,ConcurrentHashMap.newKeySet());
+    }
+
+    public record State(int uniqueId, String title, String description, boolean redirect, String articleType, boolean removed) {
+
+        public State withUniqueId(int uniqueId) {
+            return new State(uniqueId,title,description,redirect,articleType,removed);
+        }
+
+        public State withTitle(String title) {
+            return new State(uniqueId,title,description,redirect,articleType,removed);
+        }
+
+        public State withDescription(String description) {
+            return new State(uniqueId,title,description,redirect,articleType,removed);
+        }
+
+        public State withRedirect(boolean redirect) {
+            return new State(uniqueId,title,description,redirect,articleType,removed);
+        }
+
+        public State withArticleType(String articleType) {
+            return new State(uniqueId,title,description,redirect,articleType,removed);
+        }
+
+        public State withRemoved(boolean removed) {
+            return new State(uniqueId,title,description,redirect,articleType,removed);
+        }
+    }
 }
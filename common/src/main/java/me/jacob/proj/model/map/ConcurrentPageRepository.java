@@ -0,0 +1,463 @@
+package me.jacob.proj.model.map;
+
+import me.jacob.proj.model.CrawlableLink;
+import me.jacob.proj.model.GraphSnapshot;
+import me.jacob.proj.model.PageGraph;
+import me.jacob.proj.model.PageRepository;
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.util.ConcurrentBitSet;
+import me.jacob.proj.util.ConcurrentIdTable;
+import me.jacob.proj.util.IDCounter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Keeps the pages in memory for many crawler threads at once. Where {@link HashMapPageRepository}
+ * puts every page behind one lock, here the pages sit in concurrent maps and a {@link ConcurrentIdTable}
+ * and a lookup takes no lock at all. The links of each page are one int array laid out as in
+ * {@link me.jacob.proj.util.IntAdjacency}: the amount of out links, the amount of in links, the out
+ * links, then the in links with room to grow.
+ * <p>
+ * Writing the links of a page takes the lock of the stripe its id falls in, and a writer holds one
+ * stripe at a time so two writers never wait on each other in a cycle. Readers take no lock. The out
+ * links of an array never change once it is published, a new array is made instead, and an in link
+ * is written before the count that covers it is released. A reader sees every link a page had when
+ * it read the array. The in links follow the out links, so for a moment a new link may be seen from
+ * one of its ends only.
+ */
+public class ConcurrentPageRepository implements PageRepository, PageGraph {
+
+    private final static int STRIPES = 64;
+    private final static int OUT = 0;
+    private final static int IN = 1;
+    private final static int HEADER = 2;
+    //shared by every page without links, it is replaced before anything is written to it
+    private final static int[] NONE = new int[HEADER];
+    private final static VarHandle COUNTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final Map<WikiLink, WikiPage> byLink;
+    private final Map<String, WikiPage> byName;
+    private final ConcurrentIdTable<WikiPage> byId;
+    private final IDCounter idCounter;
+
+    private final ConcurrentIdTable<int[]> links = new ConcurrentIdTable<>();
+    //pages that have been linked to but not created here yet, so their ids can still be resolved
+    private final ConcurrentIdTable<WikiPage> linkedTo = new ConcurrentIdTable<>();
+    private final Lock[] stripes;
+    private final Map<UUID,List<WikiPage>> unconnected = new ConcurrentHashMap<>();
+    private final ConcurrentBitSet removed = new ConcurrentBitSet();
+    private final AtomicInteger maxId = new AtomicInteger(-1);
+    private final AtomicInteger edges = new AtomicInteger();
+
+    public ConcurrentPageRepository(IDCounter idCounter) {
+        this.byLink = new ConcurrentHashMap<>();
+        this.byName = new ConcurrentHashMap<>();
+        this.byId = new ConcurrentIdTable<>();
+        this.idCounter = idCounter;
+        this.stripes = new Lock[STRIPES];
+        for(int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public WikiPage getPage(String title) {
+        return byName.get(title);
+    }
+
+    @Override
+    public WikiPage getPage(int id) {
+        return byId.get(id);
+    }
+
+    @Override
+    public WikiPage getPage(WikiLink link) {
+        return byLink.get(link);
+    }
+
+    @Override
+    public Collection<WikiPage> getAllPages() {
+        return Collections.unmodifiableCollection(byName.values());
+    }
+
+    @Override
+    public Collection<WikiPage> getAll(Collection<WikiLink> links) {
+        List<WikiPage> result = new ArrayList<>();
+        for (WikiLink link : links) {
+            WikiPage page = byLink.get(link);
+            if(page!=null)
+                result.add(page);
+        }
+
+        return result;
+    }
+
+    @Override
+    public Collection<WikiPage> getNeighbours(int id) {
+        int[] list = linksOf(id);
+        List<WikiPage> out = new ArrayList<>(list[OUT]);
+        for(int i = HEADER; i < HEADER + list[OUT]; i++) {
+            out.add(resolve(list[i]));
+        }
+        return out;
+    }
+
+    @Override
+    public Collection<WikiPage> getInLinks(int id) {
+        int[] list = linksOf(id);
+        int in = (int) COUNTS.getAcquire(list, IN);
+        int start = HEADER + list[OUT];
+        List<WikiPage> sources = new ArrayList<>(in);
+        for(int i = start; i < start + in; i++) {
+            sources.add(byId.get(list[i]));
+        }
+        return sources;
+    }
+
+    @Override
+    public void createPage(WikiPage page) {
+        int id = page.getUniqueId();
+        //in the id table first, so a page linking to it from now on resolves it from there
+        byId.set(id, page);
+        linkedTo.set(id, null);
+        byLink.put(page.getLink(), page);
+        byName.put(page.getTitle(), page);
+        maxId.accumulateAndGet(id, Math::max);
+        removed.set(id, page.isRemoved());
+        index(page);
+    }
+
+    @Override
+    public void createPages(Collection<WikiPage> pages) {
+        for (WikiPage page : pages) {
+            createPage(page);
+        }
+    }
+
+    //adds the links the page holds to the ones already saved, then the in links of every new neighbour
+    private void index(WikiPage page) {
+        List<WikiPage> cached = new ArrayList<>(page.getCachedNeighbours());
+        if(cached.isEmpty())
+            return;
+
+        int id = page.getUniqueId();
+        int[] added = new int[cached.size()];
+        int count = 0;
+        Lock lock = stripe(id);
+        lock.lock();
+        try {
+            int[] old = linksOf(id);
+            int saved = old[OUT];
+            for(WikiPage neighbour : cached) {
+                int target = neighbour.getUniqueId();
+                if(saved > 0 && containsOut(old, target))
+                    continue;
+
+                added[count++] = target;
+                if(byId.get(target) == null)
+                    linkedTo.set(target, neighbour);
+            }
+
+            if(count > 0) {
+                int in = old[IN];
+                int[] updated = new int[HEADER + saved + count + in];
+                updated[OUT] = saved + count;
+                updated[IN] = in;
+                System.arraycopy(old, HEADER, updated, HEADER, saved);
+                System.arraycopy(added, 0, updated, HEADER + saved, count);
+                System.arraycopy(old, HEADER + saved, updated, HEADER + saved + count, in);
+                links.set(id, updated);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        edges.addAndGet(count);
+        for(int i = 0; i < count; i++) {
+            addIn(added[i], id);
+        }
+
+        //the staging repository of a bulk create hands its pages on, they keep their links for the next one
+        if(page.belongsTo(this))
+            page.releaseCached(cached);
+    }
+
+    private void addIn(int target, int source) {
+        Lock lock = stripe(target);
+        lock.lock();
+        try {
+            int[] list = linksOf(target);
+            int in = list[IN];
+            int end = HEADER + list[OUT] + in;
+            if(end < list.length) {
+                list[end] = source;
+                COUNTS.setRelease(list, IN, in + 1);
+                return;
+            }
+
+            //the room grows with the in links alone, most pages are only linked from a handful of others
+            int[] grown = Arrays.copyOf(list, end + Math.max(2, in >> 1));
+            grown[end] = source;
+            grown[IN] = in + 1;
+            links.set(target, grown);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //a reader may be going over the in links, so they are copied rather than changed in place
+    private void removeIn(int target, int source) {
+        Lock lock = stripe(target);
+        lock.lock();
+        try {
+            int[] list = linksOf(target);
+            int start = HEADER + list[OUT];
+            int end = start + list[IN];
+            for(int i = start; i < end; i++) {
+                if(list[i] != source)
+                    continue;
+
+                int[] updated = Arrays.copyOf(list, end - 1);
+                System.arraycopy(list, i + 1, updated, i, end - i - 1);
+                updated[IN] = list[IN] - 1;
+                links.set(target, updated);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void savePage(WikiPage page, boolean updateLinks) {
+        if(updateLinks && contains(page.getUniqueId()))
+            index(page);
+    }
+
+    @Override
+    public void updateName(String oldTitle, WikiPage page) {
+        byName.remove(oldTitle, page);
+        byName.put(page.getTitle(), page);
+    }
+
+    @Override
+    public int getAmountOfPages() {
+        return byName.size();
+    }
+
+    @Override
+    public int nextUniqueId() {
+        return idCounter.nextUniqueId();
+    }
+
+    @Override
+    public void clearNeighbours(int uniqueId) {
+        int[] old;
+        Lock lock = stripe(uniqueId);
+        lock.lock();
+        try {
+            old = linksOf(uniqueId);
+            if(old[OUT] == 0)
+                return;
+
+            int in = old[IN];
+            int[] updated = NONE;
+            if(in > 0) {
+                updated = new int[HEADER + in];
+                updated[IN] = in;
+                System.arraycopy(old, HEADER + old[OUT], updated, HEADER, in);
+            }
+            links.set(uniqueId, updated);
+        } finally {
+            lock.unlock();
+        }
+
+        edges.addAndGet(-old[OUT]);
+        for(int i = HEADER; i < HEADER + old[OUT]; i++) {
+            removeIn(old[i], uniqueId);
+        }
+    }
+
+    @Override
+    public Collection<WikiPage> getAndClearUnconnected(UUID uniqueId) {
+        List<WikiPage> unconnected = this.unconnected.remove(uniqueId);
+        if(unconnected==null)
+            return new ArrayList<>();
+
+        return unconnected;
+    }
+
+    @Override
+    public Collection<WikiPage> getUnconnected(UUID uniqueId) {
+        List<WikiPage> unconnected = this.unconnected.get(uniqueId);
+        if(unconnected==null)
+            return new ArrayList<>();
+
+        return unconnected;
+    }
+
+    //each list is replaced whole by an immutable copy, so a reader never sees one half written
+    @Override
+    public void saveUnconnected(Collection<CrawlableLink> links) {
+        for(CrawlableLink link : links) {
+            this.unconnected.put(link.getUniqueId(), List.copyOf(link.getUnconnected()));
+        }
+    }
+
+    @Override
+    public GraphSnapshot snapshot() {
+        GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+        int max = maxId.get();
+        for(int id = 0; id <= max; id++) {
+            WikiPage page = byId.get(id);
+            if(page == null)
+                continue;
+
+            builder.addPage(page);
+            int source = id;
+            forEachNeighbour(page, id, target -> builder.addEdge(source, target));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return maxId.get() + 1;
+    }
+
+    @Override
+    public int getAmountOfEdges() {
+        return edges.get();
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return byId.get(id) != null;
+    }
+
+    @Override
+    public boolean isRemoved(int id) {
+        return removed.get(id);
+    }
+
+    @Override
+    public void setRemoved(int uniqueId, boolean removed) {
+        this.removed.set(uniqueId, removed);
+    }
+
+    @Override
+    public int getDegree(int id) {
+        WikiPage page = getPage(id);
+        if(page==null)
+            return 0;
+
+        return getDegree(page);
+    }
+
+    @Override
+    public int getDegree(WikiPage page) {
+        int[] list = linksOf(page.getUniqueId());
+        int degree = list[OUT];
+        for(WikiPage neighbour : page.getCachedNeighbours()) {
+            if(!containsOut(list, neighbour.getUniqueId()))
+                degree++;
+        }
+        return degree;
+    }
+
+    @Override
+    public void forEachNeighbour(int id, IntConsumer action) {
+        WikiPage page = getPage(id);
+        if(page==null)
+            return;
+
+        forEachNeighbour(page, id, action);
+    }
+
+    //links that have not been saved yet are still held by the page, they are visited as well
+    private void forEachNeighbour(WikiPage page, int id, IntConsumer action) {
+        int[] list = linksOf(id);
+        for(int i = HEADER; i < HEADER + list[OUT]; i++) {
+            action.accept(list[i]);
+        }
+        for(WikiPage neighbour : page.getCachedNeighbours()) {
+            if(!containsOut(list, neighbour.getUniqueId()))
+                action.accept(neighbour.getUniqueId());
+        }
+    }
+
+    @Override
+    public void forEachNeighbour(WikiPage page, Consumer<WikiPage> action) {
+        int[] list = linksOf(page.getUniqueId());
+        for(int i = HEADER; i < HEADER + list[OUT]; i++) {
+            action.accept(resolve(list[i]));
+        }
+
+        //a page from elsewhere still holds the links it was saved with, they have already been visited
+        for(WikiPage neighbour : page.getCachedNeighbours()) {
+            if(!containsOut(list, neighbour.getUniqueId()))
+                action.accept(neighbour);
+        }
+    }
+
+    @Override
+    public void forEachInLink(int id, IntConsumer action) {
+        anyInLink(id, source -> {
+            action.accept(source);
+            return false;
+        });
+    }
+
+    @Override
+    public boolean anyInLink(int id, IntPredicate predicate) {
+        WikiPage page = getPage(id);
+        if(page==null)
+            return false;
+
+        int[] list = linksOf(id);
+        int start = HEADER + list[OUT];
+        int end = start + (int) COUNTS.getAcquire(list, IN);
+        for(int i = start; i < end; i++) {
+            if(predicate.test(list[i]))
+                return true;
+        }
+
+        for(WikiPage source : page.getCachedInLinks()) {
+            if(predicate.test(source.getUniqueId()))
+                return true;
+        }
+        return false;
+    }
+
+    private int[] linksOf(int id) {
+        int[] list = links.get(id);
+        return list == null ? NONE : list;
+    }
+
+    private WikiPage resolve(int id) {
+        WikiPage page = byId.get(id);
+        return page != null ? page : linkedTo.get(id);
+    }
+
+    private Lock stripe(int id) {
+        return stripes[id & (STRIPES - 1)];
+    }
+
+    private static boolean containsOut(int[] list, int target) {
+        for(int i = HEADER; i < HEADER + list[OUT]; i++) {
+            if(list[i] == target)
+                return true;
+        }
+        return false;
+    }
+}
@@ -1,32 +1,51 @@
 package me.jacob.proj.model.map;
 
 import me.jacob.proj.model.CrawlableLink;
+import me.jacob.proj.model.GraphSnapshot;
+import me.jacob.proj.model.PageGraph;
 import me.jacob.proj.model.PageRepository;
 import me.jacob.proj.model.WikiLink;
 import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.util.ConcurrentBitSet;
 import me.jacob.proj.util.IDCounter;
+import me.jacob.proj.util.IntAdjacency;
+import me.jacob.proj.util.IntObjectMap;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 
-public class HashMapPageRepository implements PageRepository {
+/**
+ * Keeps the pages in memory. The links are held by id alone in an {@link IntAdjacency} and turned
+ * back into pages only when asked for. Once a page that belongs to this repository has been saved
+ * its links are dropped from the page, so every link is stored once.
+ */
+public class HashMapPageRepository implements PageRepository, PageGraph {
 
     private final Map<WikiLink, WikiPage> byLink;
     private final Map<String, WikiPage> byName;
-    private final Map<Integer, WikiPage> byId;
+    private final IntObjectMap<WikiPage> byId;
     private final ReadWriteLock lock;
     private final IDCounter idCounter;
 
-    private final Map<Integer,List<WikiPage>> neighbours = new HashMap<>();
+    private final IntAdjacency adjacency = new IntAdjacency();
+    //pages that have been linked to but not created here yet, so their ids can still be resolved
+    private final IntObjectMap<WikiPage> linkedTo = new IntObjectMap<>();
     private final Map<UUID,List<WikiPage>> unconnected = new ConcurrentHashMap<>();
+    //kept apart from the lock so a search never waits on a writer to check a page
+    private final ConcurrentBitSet removed = new ConcurrentBitSet();
+    //the ids a bottom-up scan checks under one hold of the lock
+    private final static int SCAN_RUN = 4096;
+    private int maxId = -1;
 
     public HashMapPageRepository(IDCounter idCounter) {
         this.byLink = new HashMap<>();
         this.byName = new HashMap<>();
-        this.byId = new HashMap<>();
+        this.byId = new IntObjectMap<>();
         this.lock = new ReentrantReadWriteLock();
         this.idCounter = idCounter;
     }
@@ -65,7 +84,8 @@ public class HashMapPageRepository implements PageRepository {
     public Collection<WikiPage> getAllPages() {
         try {
             lock.readLock().lock();
-            return Collections.unmodifiableCollection(byName.values());
+            //a copy, the map may change once the lock is let go
+            return new ArrayList<>(byName.values());
         } finally {
             lock.readLock().unlock();
         }
@@ -92,13 +112,21 @@ public class HashMapPageRepository implements PageRepository {
     public Collection<WikiPage> getNeighbours(int id) {
         try {
             lock.readLock().lock();
-            List<WikiPage> n = this.neighbours.get(id);
-            if (n == null) {
-                n = new ArrayList<>();
-                neighbours.put(id, n);
-            }
-            return n;
+            List<WikiPage> out = new ArrayList<>(adjacency.getOutDegree(id));
+            adjacency.forEachOut(id, target -> out.add(resolve(target)));
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
+    @Override
+    public Collection<WikiPage> getInLinks(int id) {
+        try {
+            lock.readLock().lock();
+            List<WikiPage> in = new ArrayList<>(adjacency.getInDegree(id));
+            adjacency.forEachIn(id, source -> in.add(byId.get(source)));
+            return in;
         } finally {
             lock.readLock().unlock();
         }
@@ -118,7 +146,43 @@ public class HashMapPageRepository implements PageRepository {
         byLink.put(page.getLink(), page);
         byName.put(page.getTitle(), page);
         byId.put(page.getUniqueId(), page);
-        neighbours.put(page.getUniqueId(),new ArrayList<>());
+        linkedTo.remove(page.getUniqueId());
+        maxId = Math.max(maxId, page.getUniqueId());
+        removed.set(page.getUniqueId(), page.isRemoved());
+        index(page);
+    }
+
+    //adds the links the page holds to the ones already saved, the in links of every neighbour follow
+    private void index(WikiPage page) {
+        int id = page.getUniqueId();
+        List<WikiPage> cached = new ArrayList<>(page.getCachedNeighbours());
+        if(cached.isEmpty())
+            return;
+
+        int[] targets = new int[adjacency.getOutDegree(id) + cached.size()];
+        int saved = adjacency.copyOut(id, targets);
+        int count = saved;
+        for(WikiPage neighbour : cached) {
+            int target = neighbour.getUniqueId();
+            if(saved > 0 && adjacency.containsOut(id, target))
+                continue;
+
+            targets[count++] = target;
+            if(!byId.containsKey(target))
+                linkedTo.put(target, neighbour);
+        }
+
+        if(count > saved)
+            adjacency.setOut(id, targets, count);
+
+        //the staging repository of a bulk create hands its pages on, they keep their links for the next one
+        if(page.belongsTo(this))
+            page.releaseCached(cached);
+    }
+
+    private WikiPage resolve(int id) {
+        WikiPage page = byId.get(id);
+        return page != null ? page : linkedTo.get(id);
     }
 
     @Override
@@ -135,7 +199,16 @@ public class HashMapPageRepository implements PageRepository {
 
     @Override
     public void savePage(WikiPage page, boolean updateLinks) {
+        if(!updateLinks)
+            return;
 
+        try {
+            lock.writeLock().lock();
+            if(byId.containsKey(page.getUniqueId()))
+                index(page);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -168,7 +241,7 @@ public class HashMapPageRepository implements PageRepository {
     public void clearNeighbours(int uniqueId) {
         try {
             lock.writeLock().lock();
-            neighbours.remove(uniqueId);
+            adjacency.clearOut(uniqueId);
         } finally {
             lock.writeLock().unlock();
         }
@@ -201,6 +274,185 @@ public class HashMapPageRepository implements PageRepository {
         }
     }
 
+    @Override
+    public GraphSnapshot snapshot() {
+        try {
+            lock.readLock().lock();
+            GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+            byId.forEachValue(page -> {
+                int id = page.getUniqueId();
+                builder.addPage(page);
+                adjacency.forEachOut(id, target -> builder.addEdge(id,target));
+                for(WikiPage neighbour : page.getCachedNeighbours()) {
+                    if(!adjacency.containsOut(id,neighbour.getUniqueId()))
+                        builder.addEdge(id,neighbour.getUniqueId());
+                }
+            });
+            return builder.build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        try {
+            lock.readLock().lock();
+            return maxId + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getAmountOfEdges() {
+        try {
+            lock.readLock().lock();
+            return adjacency.getEdges();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(int id) {
+        try {
+            lock.readLock().lock();
+            return byId.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isRemoved(int id) {
+        return removed.get(id);
+    }
+
+    @Override
+    public void setRemoved(int uniqueId, boolean removed) {
+        this.removed.set(uniqueId, removed);
+    }
+
+    @Override
+    public int getDegree(int id) {
+        WikiPage page = getPage(id);
+        if(page==null)
+            return 0;
+
+        return getDegree(page);
+    }
+
+    @Override
+    public int getDegree(WikiPage page) {
+        try {
+            lock.readLock().lock();
+            int id = page.getUniqueId();
+            int degree = adjacency.getOutDegree(id);
+            for(WikiPage neighbour : page.getCachedNeighbours()) {
+                if(!adjacency.containsOut(id,neighbour.getUniqueId()))
+                    degree++;
+            }
+            return degree;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //links that have not been saved yet are still held by the page, they are visited as well
+    @Override
+    public void forEachNeighbour(int id, IntConsumer action) {
+        try {
+            lock.readLock().lock();
+            WikiPage page = byId.get(id);
+            if(page==null)
+                return;
+
+            adjacency.forEachOut(id, action);
+            for(WikiPage neighbour : page.getCachedNeighbours()) {
+                if(!adjacency.containsOut(id,neighbour.getUniqueId()))
+                    action.accept(neighbour.getUniqueId());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachNeighbour(WikiPage page, Consumer<WikiPage> action) {
+        try {
+            lock.readLock().lock();
+            int id = page.getUniqueId();
+            adjacency.forEachOut(id, target -> action.accept(resolve(target)));
+
+            //a page from elsewhere still holds the links it was saved with, they have already been visited
+            for(WikiPage neighbour : page.getCachedNeighbours()) {
+                if(!adjacency.containsOut(id,neighbour.getUniqueId()))
+                    action.accept(neighbour);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachInLink(int id, IntConsumer action) {
+        anyInLink(id, source -> {
+            action.accept(source);
+            return false;
+        });
+    }
+
+    @Override
+    public boolean anyInLink(int id, IntPredicate predicate) {
+        WikiPage page = getPage(id);
+        if(page==null)
+            return false;
+
+        try {
+            lock.readLock().lock();
+            if(adjacency.anyIn(id, predicate))
+                return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        for(WikiPage source : page.getCachedInLinks()) {
+            if(predicate.test(source.getUniqueId()))
+                return true;
+        }
+        return false;
+    }
+
+    //the lock is taken once for a run of ids, and let go between runs so a writer never waits out a whole layer
+    @Override
+    public void forEachLinkedFrom(int limit, IntPredicate candidates, IntPredicate sources, IntConsumer action) {
+        for(int from = 0; from < limit; from += SCAN_RUN) {
+            int to = Math.min(limit, from + SCAN_RUN);
+            try {
+                lock.readLock().lock();
+                for(int id = from; id < to; id++) {
+                    if(!candidates.test(id) || removed.get(id))
+                        continue;
+
+                    WikiPage page = byId.get(id);
+                    if(page != null && (adjacency.anyIn(id, sources) || anyCachedInLink(page, sources)))
+                        action.accept(id);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    private static boolean anyCachedInLink(WikiPage page, IntPredicate predicate) {
+        for(WikiPage source : page.getCachedInLinks()) {
+            if(predicate.test(source.getUniqueId()))
+                return true;
+        }
+        return false;
+    }
+
     public Set<WikiPage> clearAndDo(Consumer<Set<WikiPage>> action) {
         try {
             lock.writeLock().lock();
@@ -210,7 +462,9 @@ public class HashMapPageRepository implements PageRepository {
             byName.clear();
             byLink.clear();
             byId.clear();
-            neighbours.clear();
+            linkedTo.clear();
+            adjacency.clear();
+            maxId = -1;
             return existing;
         } finally {
             lock.writeLock().unlock();
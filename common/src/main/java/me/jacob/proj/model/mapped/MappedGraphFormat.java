@@ -0,0 +1,77 @@
+package me.jacob.proj.model.mapped;
+
+/**
+ * The layout of a graph snapshot file. After a fixed header the file holds, in order:
+ * <ul>
+ *     <li>the page table, one record per id: flags then the offsets of the title, link path,
+ *     description and article type in the string section</li>
+ *     <li>the links out of every page as offsets into the list of targets, then the targets</li>
+ *     <li>the links into every page as offsets into the list of sources, then the sources</li>
+ *     <li>the title index and the link index, open addressing tables of id + 1 with 0 for a free
+ *     slot, hashed by {@link #hash(String)}</li>
+ *     <li>the strings, each an int length then that many bytes of UTF-8, a length of -1 is null</li>
+ * </ul>
+ * Every section but the last is a whole number of ints so the int sections stay aligned. All
+ * numbers are big endian.
+ */
+final class MappedGraphFormat {
+
+    final static int MAGIC = 0x57494B47;
+    final static int VERSION = 1;
+
+    //magic, version, size, pages, edges, index capacity, string bytes
+    final static int HEADER_BYTES = 4 * 6 + 8;
+
+    final static int RECORD_BYTES = 4 * 5;
+    final static int FLAGS = 0;
+    final static int TITLE = 4;
+    final static int LINK = 8;
+    final static int DESCRIPTION = 12;
+    final static int ARTICLE_TYPE = 16;
+
+    final static int PRESENT = 1;
+    final static int REMOVED = 1 << 1;
+    final static int REDIRECT = 1 << 2;
+
+    final static int PAGE_TABLE = 0;
+    final static int OUT_OFFSETS = 1;
+    final static int TARGETS = 2;
+    final static int IN_OFFSETS = 3;
+    final static int SOURCES = 4;
+    final static int TITLE_INDEX = 5;
+    final static int LINK_INDEX = 6;
+    final static int STRINGS = 7;
+    final static int SECTIONS = 8;
+
+    private MappedGraphFormat() {
+    }
+
+    //the length in bytes of every section
+    static long[] sectionLengths(int size, int edges, int capacity, long stringBytes) {
+        long[] lengths = new long[SECTIONS];
+        lengths[PAGE_TABLE] = (long) size * RECORD_BYTES;
+        lengths[OUT_OFFSETS] = (size + 1L) * 4;
+        lengths[TARGETS] = edges * 4L;
+        lengths[IN_OFFSETS] = (size + 1L) * 4;
+        lengths[SOURCES] = edges * 4L;
+        lengths[TITLE_INDEX] = capacity * 4L;
+        lengths[LINK_INDEX] = capacity * 4L;
+        lengths[STRINGS] = stringBytes;
+        return lengths;
+    }
+
+    //room for twice the pages, so probes stay short
+    static int indexCapacity(int pages) {
+        int capacity = 16;
+        while (capacity < pages * 2L) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    //the hash of the string is part of the format, it must never change between versions of the code
+    static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,162 @@
+package me.jacob.proj.model.mapped;
+
+import me.jacob.proj.model.GraphSnapshot;
+import me.jacob.proj.model.WikiPage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static me.jacob.proj.model.mapped.MappedGraphFormat.*;
+
+/**
+ * Writes a {@link GraphSnapshot} in the format {@link MappedPageRepository} maps, see
+ * {@link MappedGraphFormat}. The file is written next to the target and moved over it once it is
+ * complete, so a reader never maps half a file.
+ */
+public class MappedGraphWriter {
+
+    private MappedGraphWriter() {
+    }
+
+    public static void write(GraphSnapshot snapshot, Path file) throws IOException {
+        int size = snapshot.size();
+        int edges = snapshot.getAmountOfEdges();
+        int pages = 0;
+        //the strings are laid out in id order, the title, link, description and article type of each page
+        long stringBytes = 0;
+        for(int id = 0; id < size; id++) {
+            WikiPage page = snapshot.getPage(id);
+            if(page == null)
+                continue;
+
+            pages++;
+            stringBytes += length(page.getTitle()) + length(page.getLink().getRelative())
+                    + length(page.getDescription()) + length(page.getArticleType());
+        }
+
+        int capacity = indexCapacity(pages);
+        for(long length : sectionLengths(size,edges,capacity,stringBytes)) {
+            //each section is mapped as one buffer
+            if(length > Integer.MAX_VALUE)
+                throw new IOException("the graph is too large for the snapshot format");
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream,1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(pages);
+            out.writeInt(edges);
+            out.writeInt(capacity);
+            out.writeLong(stringBytes);
+
+            writePageTable(snapshot,out);
+            writeRows(size,out,snapshot::getOffset,snapshot::getTarget);
+            writeRows(size,out,snapshot::getInOffset,snapshot::getSource);
+            writeIndex(snapshot,capacity,out,true);
+            writeIndex(snapshot,capacity,out,false);
+
+            for(int id = 0; id < size; id++) {
+                WikiPage page = snapshot.getPage(id);
+                if(page == null)
+                    continue;
+
+                writeString(page.getTitle(),out);
+                writeString(page.getLink().getRelative(),out);
+                writeString(page.getDescription(),out);
+                writeString(page.getArticleType(),out);
+            }
+        }
+        Files.move(temporary,file,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writePageTable(GraphSnapshot snapshot, DataOutputStream out) throws IOException {
+        int offset = 0;
+        for(int id = 0; id < snapshot.size(); id++) {
+            WikiPage page = snapshot.getPage(id);
+            if(page == null) {
+                for(int i = 0; i < RECORD_BYTES / 4; i++) {
+                    out.writeInt(0);
+                }
+                continue;
+            }
+
+            int flags = PRESENT;
+            if(snapshot.isRemoved(id))
+                flags |= REMOVED;
+            if(page.isRedirect())
+                flags |= REDIRECT;
+            out.writeInt(flags);
+
+            //the offsets match the order the strings are written in
+            out.writeInt(offset);
+            offset += length(page.getTitle());
+            out.writeInt(offset);
+            offset += length(page.getLink().getRelative());
+            out.writeInt(offset);
+            offset += length(page.getDescription());
+            out.writeInt(offset);
+            offset += length(page.getArticleType());
+        }
+    }
+
+    private static void writeRows(int size, DataOutputStream out, Lookup offsets, Lookup values) throws IOException {
+        for(int id = 0; id <= size; id++) {
+            out.writeInt(offsets.get(id));
+        }
+        for(int i = 0; i < offsets.get(size); i++) {
+            out.writeInt(values.get(i));
+        }
+    }
+
+    private static void writeIndex(GraphSnapshot snapshot, int capacity, DataOutputStream out, boolean byTitle) throws IOException {
+        int[] slots = new int[capacity];
+        int mask = capacity - 1;
+        for(int id = 0; id < snapshot.size(); id++) {
+            WikiPage page = snapshot.getPage(id);
+            if(page == null)
+                continue;
+
+            String key = byTitle ? page.getTitle() : page.getLink().getRelative();
+            if(key == null)
+                continue;
+
+            int slot = hash(key) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+
+        for(int slot : slots) {
+            out.writeInt(slot);
+        }
+    }
+
+    private static long length(String string) {
+        return 4 + (string == null ? 0 : string.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static void writeString(String string, DataOutputStream out) throws IOException {
+        if(string == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private interface Lookup {
+        int get(int index);
+    }
+}
@@ -0,0 +1,385 @@
+package me.jacob.proj.model.mapped;
+
+import me.jacob.proj.model.CrawlableLink;
+import me.jacob.proj.model.GraphSnapshot;
+import me.jacob.proj.model.PageGraph;
+import me.jacob.proj.model.PageRepository;
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.util.ConcurrentIdTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+import static me.jacob.proj.model.mapped.MappedGraphFormat.*;
+
+/**
+ * A read only repository served straight from a snapshot file written by {@link MappedGraphWriter}.
+ * Opening it maps the file and reads the header, nothing else, so it starts in the same time
+ * whatever the size of the graph. Links are read from the mapped arrays by searches, a
+ * {@link WikiPage} is only built the first time its id is asked for and is then kept so the same
+ * page is always handed out. Lookups by title and by link probe the hash indexes in the file.
+ * <p>
+ * Anything that would change the graph throws {@link UnsupportedOperationException}.
+ */
+public class MappedPageRepository implements PageRepository, PageGraph {
+
+    private final Path file;
+    private final int size;
+    private final int pages;
+    private final int edges;
+    private final int capacity;
+
+    private final ByteBuffer pageTable;
+    private final IntBuffer outOffsets;
+    private final IntBuffer targets;
+    private final IntBuffer inOffsets;
+    private final IntBuffer sources;
+    private final IntBuffer titleIndex;
+    private final IntBuffer linkIndex;
+    private final ByteBuffer strings;
+
+    private final ConcurrentIdTable<WikiPage> materialized;
+
+    private MappedPageRepository(Path file, int size, int pages, int edges, int capacity, ByteBuffer[] sections) {
+        this.file = file;
+        this.size = size;
+        this.pages = pages;
+        this.edges = edges;
+        this.capacity = capacity;
+        this.pageTable = sections[PAGE_TABLE];
+        this.outOffsets = sections[OUT_OFFSETS].asIntBuffer();
+        this.targets = sections[TARGETS].asIntBuffer();
+        this.inOffsets = sections[IN_OFFSETS].asIntBuffer();
+        this.sources = sections[SOURCES].asIntBuffer();
+        this.titleIndex = sections[TITLE_INDEX].asIntBuffer();
+        this.linkIndex = sections[LINK_INDEX].asIntBuffer();
+        this.strings = sections[STRINGS];
+        this.materialized = new ConcurrentIdTable<>();
+    }
+
+    public static MappedPageRepository open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if(channel.size() < HEADER_BYTES)
+                throw new IOException("not a graph snapshot: "+file);
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,0,HEADER_BYTES);
+            if(header.getInt() != MAGIC)
+                throw new IOException("not a graph snapshot: "+file);
+
+            int version = header.getInt();
+            if(version != VERSION)
+                throw new IOException("unsupported graph snapshot version "+version+", expected "+VERSION);
+
+            int size = header.getInt();
+            int pages = header.getInt();
+            int edges = header.getInt();
+            int capacity = header.getInt();
+            long stringBytes = header.getLong();
+
+            long[] lengths = sectionLengths(size,edges,capacity,stringBytes);
+            long position = HEADER_BYTES;
+            long total = position;
+            for(long length : lengths) {
+                total += length;
+            }
+            if(channel.size() < total)
+                throw new IOException("graph snapshot is truncated: "+file);
+
+            //the mappings outlive the channel, pages are only read in from the file as they are touched
+            ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+            for(int section = 0; section < SECTIONS; section++) {
+                sections[section] = channel.map(FileChannel.MapMode.READ_ONLY,position,lengths[section]);
+                position += lengths[section];
+            }
+            return new MappedPageRepository(file,size,pages,edges,capacity,sections);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public WikiPage getPage(String title) {
+        return getPage(find(titleIndex,TITLE,title));
+    }
+
+    @Override
+    public WikiPage getPage(WikiLink link) {
+        return getPage(find(linkIndex,LINK,link.getRelative()));
+    }
+
+    @Override
+    public WikiPage getPage(int id) {
+        if(!contains(id))
+            return null;
+
+        WikiPage page = materialized.get(id);
+        if(page != null)
+            return page;
+
+        return materialized.setIfAbsent(id,materialize(id));
+    }
+
+    @Override
+    public Collection<WikiPage> getAllPages() {
+        List<WikiPage> all = new ArrayList<>(pages);
+        for(int id = 0; id < size; id++) {
+            WikiPage page = getPage(id);
+            if(page != null)
+                all.add(page);
+        }
+        return all;
+    }
+
+    @Override
+    public Collection<WikiPage> getAll(Collection<WikiLink> links) {
+        List<WikiPage> found = new ArrayList<>();
+        for(WikiLink link : links) {
+            WikiPage page = getPage(link);
+            if(page != null)
+                found.add(page);
+        }
+        return found;
+    }
+
+    @Override
+    public Collection<WikiPage> getNeighbours(int id) {
+        List<WikiPage> neighbours = new ArrayList<>(getDegree(id));
+        forEachNeighbour(id, target -> neighbours.add(getPage(target)));
+        return neighbours;
+    }
+
+    @Override
+    public Collection<WikiPage> getInLinks(int id) {
+        List<WikiPage> inLinks = new ArrayList<>();
+        forEachInLink(id, source -> inLinks.add(getPage(source)));
+        return inLinks;
+    }
+
+    @Override
+    public void forEachNeighbour(WikiPage page, Consumer<WikiPage> action) {
+        forEachNeighbour(page.getUniqueId(), target -> action.accept(getPage(target)));
+    }
+
+    @Override
+    public int getDegree(WikiPage page) {
+        return getDegree(page.getUniqueId());
+    }
+
+    @Override
+    public int getAmountOfPages() {
+        return pages;
+    }
+
+    @Override
+    public boolean isRemoved(int uniqueId) {
+        return (flags(uniqueId) & REMOVED) != 0;
+    }
+
+    @Override
+    public Collection<WikiPage> getAndClearUnconnected(UUID uniqueId) {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public Collection<WikiPage> getUnconnected(UUID uniqueId) {
+        return new ArrayList<>();
+    }
+
+    //a copy of the whole graph on the heap, the searches do not need it as they read the mapped file
+    @Override
+    public GraphSnapshot snapshot() {
+        GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+        for(int id = 0; id < size; id++) {
+            WikiPage page = getPage(id);
+            if(page == null)
+                continue;
+
+            builder.addPage(page);
+            int source = id;
+            forEachNeighbour(id, target -> builder.addEdge(source,target));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void createPage(WikiPage page) {
+        throw readOnly();
+    }
+
+    @Override
+    public void createPages(Collection<WikiPage> pages) {
+        //publishing an empty bulk create changes nothing
+        if(pages != null && !pages.isEmpty())
+            throw readOnly();
+    }
+
+    @Override
+    public void savePage(WikiPage page, boolean updateLinks) {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateName(String oldTitle, WikiPage page) {
+        throw readOnly();
+    }
+
+    @Override
+    public int nextUniqueId() {
+        throw readOnly();
+    }
+
+    @Override
+    public void clearNeighbours(int uniqueId) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setRemoved(int uniqueId, boolean removed) {
+        throw readOnly();
+    }
+
+    @Override
+    public void saveUnconnected(Collection<CrawlableLink> links) {
+        if(!links.isEmpty())
+            throw readOnly();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getAmountOfEdges() {
+        return edges;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return (flags(id) & PRESENT) != 0;
+    }
+
+    @Override
+    public int getDegree(int id) {
+        if(id < 0 || id >= size)
+            return 0;
+
+        return outOffsets.get(id + 1) - outOffsets.get(id);
+    }
+
+    @Override
+    public void forEachNeighbour(int id, IntConsumer action) {
+        if(id < 0 || id >= size)
+            return;
+
+        int last = outOffsets.get(id + 1);
+        for(int i = outOffsets.get(id); i < last; i++) {
+            action.accept(targets.get(i));
+        }
+    }
+
+    @Override
+    public void forEachInLink(int id, IntConsumer action) {
+        anyInLink(id, source -> {
+            action.accept(source);
+            return false;
+        });
+    }
+
+    @Override
+    public boolean anyInLink(int id, IntPredicate predicate) {
+        if(id < 0 || id >= size)
+            return false;
+
+        int last = inOffsets.get(id + 1);
+        for(int i = inOffsets.get(id); i < last; i++) {
+            if(predicate.test(sources.get(i)))
+                return true;
+        }
+        return false;
+    }
+
+    private int flags(int id) {
+        if(id < 0 || id >= size)
+            return 0;
+
+        return pageTable.getInt(id * RECORD_BYTES + FLAGS);
+    }
+
+    private WikiPage materialize(int id) {
+        int record = id * RECORD_BYTES;
+        int flags = pageTable.getInt(record + FLAGS);
+        WikiPage page = new WikiPage(readString(pageTable.getInt(record + TITLE)),
+                new WikiLink(readString(pageTable.getInt(record + LINK))),this);
+        page.setUniqueId(id);
+        String description = readString(pageTable.getInt(record + DESCRIPTION));
+        String articleType = readString(pageTable.getInt(record + ARTICLE_TYPE));
+        page.update(state -> state.withDescription(description)
+                .withArticleType(articleType)
+                .withRedirect((flags & REDIRECT) != 0)
+                .withRemoved((flags & REMOVED) != 0));
+        return page;
+    }
+
+    //the id of the page whose string at the field of its record is the key, or -1
+    private int find(IntBuffer index, int field, String key) {
+        if(key == null)
+            return -1;
+
+        byte[] wanted = key.getBytes(StandardCharsets.UTF_8);
+        int mask = capacity - 1;
+        int slot = hash(key) & mask;
+        int entry;
+        while ((entry = index.get(slot)) != 0) {
+            int id = entry - 1;
+            if(stringEquals(pageTable.getInt(id * RECORD_BYTES + field),wanted))
+                return id;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    //compares the bytes in place, nothing is decoded
+    private boolean stringEquals(int offset, byte[] wanted) {
+        if(strings.getInt(offset) != wanted.length)
+            return false;
+
+        int start = offset + 4;
+        for(int i = 0; i < wanted.length; i++) {
+            if(strings.get(start + i) != wanted[i])
+                return false;
+        }
+        return true;
+    }
+
+    private String readString(int offset) {
+        int length = strings.getInt(offset);
+        if(length < 0)
+            return null;
+
+        byte[] bytes = new byte[length];
+        strings.get(offset + 4,bytes);
+        return new String(bytes,StandardCharsets.UTF_8);
+    }
+
+    private UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("the graph snapshot "+file+" is read only");
+    }
+
+    @Override
+    public String toString() {
+        return "MappedPageRepository{file=" + file + ", pages=" + pages + ", edges=" + edges + '}';
+    }
+}
@@ -1,21 +1,26 @@
 package me.jacob.proj.model.neo4j;
 
 import me.jacob.proj.model.CrawlableLink;
+import me.jacob.proj.model.GraphSnapshot;
 import me.jacob.proj.model.PageRepository;
 import me.jacob.proj.model.WikiLink;
 import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.util.ConcurrentBitSet;
 import org.neo4j.driver.Record;
 import org.neo4j.driver.*;
 import org.neo4j.driver.types.Node;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class Neo4jPageRepository implements PageRepository {
 
     private final Driver driver;
     private final Neo4jWikiLinkRepository linkRepo = new Neo4jWikiLinkRepository();
     private final AtomicInteger count;
+    //the removed flag of every page this repository has read or written, saves a round trip per check
+    private final ConcurrentBitSet removed = new ConcurrentBitSet();
 
     public Neo4jPageRepository(Driver driver) {
         this.driver = driver;
@@ -124,6 +129,15 @@ public class Neo4jPageRepository implements PageRepository {
         }
     }
 
+    public Collection<WikiPage> getPages(Collection<Integer> ids) {
+        try(Session session = driver.session()) {
+            Map<String,Object> params = new HashMap<>();
+            params.put("ids",new ArrayList<>(ids));
+            Query query = new Query("UNWIND $ids AS id MATCH (link:WIKILINK)-[:URL]->(page:WIKIPAGE {id:id}) RETURN link,page",params);
+            return getPages(session,query);
+        }
+    }
+
     @Override
     public Collection<WikiPage> getNeighbours(int id) {
         try(Session session = driver.session()) {
@@ -134,6 +148,38 @@ public class Neo4jPageRepository implements PageRepository {
         }
     }
 
+    @Override
+    public Collection<WikiPage> getInLinks(int id) {
+        try(Session session = driver.session()) {
+            Map<String,Object> parameters = new HashMap<>();
+            parameters.put("id",id);
+            Query query = new Query("MATCH (page:WIKIPAGE) -[:HYPERLINKS]-> (base:WIKIPAGE {id:$id}),(link:WIKILINK) -[:URL]->(page)  RETURN page,link",parameters);
+            return getPages(session,query);
+        }
+    }
+
+    //the saved links are a round trip either way, only the unsaved ones are checked against them
+    @Override
+    public void forEachNeighbour(WikiPage page, Consumer<WikiPage> action) {
+        Set<Integer> saved = new HashSet<>();
+        for(WikiPage neighbour : getNeighbours(page.getUniqueId())) {
+            saved.add(neighbour.getUniqueId());
+            action.accept(neighbour);
+        }
+
+        for(WikiPage neighbour : page.getCachedNeighbours()) {
+            if(!saved.contains(neighbour.getUniqueId()))
+                action.accept(neighbour);
+        }
+    }
+
+    @Override
+    public int getDegree(WikiPage page) {
+        int[] degree = new int[1];
+        forEachNeighbour(page, neighbour -> degree[0]++);
+        return degree[0];
+    }
+
     private WikiPage getFirst(Session session, Query query) {
         List<WikiPage> pages = getPages(session,query);
         if(pages.size()==0)
@@ -169,6 +215,7 @@ public class Neo4jPageRepository implements PageRepository {
         wikipage.setRedirect(wikipageNode.get("redirect").asBoolean());
         wikipage.setArticleType(wikipageNode.get("articleType").asString());
         wikipage.setRemoved(wikipageNode.get("isRemoved").asBoolean());
+        removed.set(wikipage.getUniqueId(),wikipage.isRemoved());
         return wikipage;
     }
 
@@ -181,6 +228,7 @@ public class Neo4jPageRepository implements PageRepository {
                 tx.commit();
             }
         }
+        removed.set(page.getUniqueId(),page.isRemoved());
     }
 
     @Override
@@ -194,6 +242,9 @@ public class Neo4jPageRepository implements PageRepository {
                 tx.commit();
             }
         }
+        for(WikiPage page : pages) {
+            removed.set(page.getUniqueId(),page.isRemoved());
+        }
     }
 
     private void writeMany(SimpleQueryRunner tx, Collection<WikiPage> pages, boolean writeNeighbours, boolean writeLinks) {
@@ -275,6 +326,7 @@ public class Neo4jPageRepository implements PageRepository {
                 tx.commit();
             }
         }
+        removed.set(page.getUniqueId(),page.isRemoved());
     }
 
     private void updateNeighbours(SimpleQueryRunner tx, Collection<WikiPage> pages) {
@@ -335,6 +387,16 @@ public class Neo4jPageRepository implements PageRepository {
         }
     }
 
+    @Override
+    public boolean isRemoved(int uniqueId) {
+        return removed.get(uniqueId);
+    }
+
+    @Override
+    public void setRemoved(int uniqueId, boolean removed) {
+        this.removed.set(uniqueId,removed);
+    }
+
     @Override
     public Collection<WikiPage> getAndClearUnconnected(UUID uniqueId) {
         try(Session session = driver.session()) {
@@ -389,4 +451,28 @@ public class Neo4jPageRepository implements PageRepository {
             }
         }
     }
+
+    public Driver getDriver() {
+        return driver;
+    }
+
+    @Override
+    public GraphSnapshot snapshot() {
+        GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+        for(WikiPage page : getAllPages()) {
+            builder.addPage(page);
+        }
+
+        //fetch every link in a single query rather than one query per page
+        try(Session session = driver.session()) {
+            Query query = new Query("MATCH (page:WIKIPAGE) -[:HYPERLINKS]-> (neighbour:WIKIPAGE) RETURN page.id AS source, neighbour.id AS target");
+            Result rs = session.run(query);
+            while (rs.hasNext()) {
+                Record record = rs.next();
+                builder.addEdge(record.get("source").asInt(),record.get("target").asInt());
+            }
+        }
+
+        return builder.build();
+    }
 }
@@ -1,98 +1,115 @@
 package me.jacob.proj.service;
 
+import me.jacob.proj.model.PageRepository;
 import me.jacob.proj.model.WikiPage;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 public class BFSShortestPathStrategy implements ShortestPathStrategy {
 
+    //where removed pages are looked up, null to ask the pages themselves
+    private final PageRepository repository;
+
+    public BFSShortestPathStrategy() {
+        this(null);
+    }
+
+    //the repository's removed index is checked for every link, which never locks a page
+    public BFSShortestPathStrategy(PageRepository repository) {
+        this.repository = repository;
+    }
+
     @Override
-    public List<List<WikiPage>> getShortestPaths(WikiPage start, WikiPage end) {
-        /*
-         * TODO
-         *   - Cache results and evict on update.
-         */
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end) {
+        return getShortestPaths(start,end,SearchBudget.unlimited());
+    }
 
-        List<List<WikiPage>> result = new ArrayList<>();
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end, SearchBudget budget) {
+        return getShortestPaths(start,Collections.singletonList(end),budget).get(0);
+    }
 
+    @Override
+    public List<ShortestPaths> getShortestPaths(WikiPage start, List<WikiPage> ends) {
+        return getShortestPaths(start,ends,SearchBudget.unlimited());
+    }
+
+    //one search from the start answers every end, it runs until the layer holding the last end is done
+    @Override
+    public List<ShortestPaths> getShortestPaths(WikiPage start, List<WikiPage> ends, SearchBudget budget) {
+        Set<WikiPage> remaining = new HashSet<>(ends);
         //deal with edge case when we are travelling to and from the same node
-        if(start.equals(end)) {
-            List<WikiPage> path = new ArrayList<>();
-            path.add(end);
-            result.add(path);
-            return result;
+        remaining.remove(start);
+        //removed pages are never reached, there is no point searching for them
+        remaining.removeIf(this::isRemoved);
+
+        SearchBudget.Meter meter = budget.start();
+        Search search = new Search();
+        if(!remaining.isEmpty())
+            search(start,remaining,search,meter);
+
+        List<ShortestPaths> result = new ArrayList<>(ends.size());
+        for(WikiPage end : ends) {
+            result.add(toPaths(start,end,search,meter));
         }
+        return result;
+    }
 
+    private void search(WikiPage start, Set<WikiPage> remaining, Search search, SearchBudget.Meter meter) {
         //init BFS, layer order traversal
-        Queue<Node> queue = new ArrayDeque<>();
-        Node startNode = new Node(start,true);
-        Map<WikiPage,Node> nodeMap = new HashMap<>();
-        queue.add(startNode);
-
-        int layer = 0;
-        boolean found = false;
+        search.queue.add(new Node(start,true));
+        search.remaining = remaining;
 
-        while (!queue.isEmpty() && !found) {
+        while (!search.queue.isEmpty() && !search.found) {
             //get the amount of nodes in the layer
-            int size = queue.size();
+            int size = search.queue.size();
 
             //loop through all of the nodes in the layer
             for(int i=0; i<size;i++) {
-                Node node = queue.poll();
-                for(WikiPage neighbour : node.page.getNeighbours()) {
-                    if(neighbour.isRemoved())
-                        continue;
-                    //we want the node to add itself to the list for all of its neighbours if either
-                    //the node is unvisited or if it has been visited, it was added in this layer!
-                    Node neighbourNode = getOrMake(neighbour,nodeMap);
-                    if(!neighbourNode.visited) {
-                        //mark that we have visited and which layer we visited on
-                        queue.add(neighbourNode);
-                        neighbourNode.prev.add(node);
-                        neighbourNode.visited = true;
-                        neighbourNode.visitLayer = layer;
-                    } else if (neighbourNode.visitLayer == layer) {
-                        //if we already visited the node in this layer add to the junction
-                        neighbourNode.prev.add(node);
-                    }
-
-                    if(neighbourNode.page.equals(end))
-                        found = true;
-                }
+                //the layer is left half done, nothing found in it can be trusted
+                if(!meter.expand())
+                    return;
+
+                //the neighbours are visited in place, nothing is copied per page expanded
+                search.current = search.queue.poll();
+                search.current.page.forEachNeighbour(search);
             }
 
-            layer++;
+            search.completed++;
         }
+    }
 
-        Node finalNode = nodeMap.get(end);
-        if(finalNode==null)
-            return new ArrayList<>();
+    private ShortestPaths toPaths(WikiPage start, WikiPage end, Search search, SearchBudget.Meter meter) {
+        if(start.equals(end))
+            return ShortestPaths.self(end);
 
-        //use backtracking to convert the node into usable shortest paths!
-        convertToPaths(finalNode,result,new ArrayList<>());
+        Node finalNode = search.nodeMap.get(end);
+        //the end is only known for sure if the layer it was found in was finished
+        boolean complete = finalNode != null && finalNode.visitLayer < search.completed;
+        if(!complete && meter.isCutOff() && !isRemoved(end)) {
+            //every page up to the last finished layer was seen so the end must be further away
+            return ShortestPaths.cutOff(start,end,meter.getStatus(),search.completed + 1,meter.getExpanded());
+        }
 
-        return result;
+        if(!complete)
+            return ShortestPaths.none(start,end,meter.getExpanded());
+
+        //the paths are walked back from the final node, every walk stops at the start of the line
+        PathDag dag = new PredecessorDag<>(finalNode,
+                node -> node.start ? Collections.<Node>emptyList() : node.prev,
+                node -> node.page,
+                true);
+
+        return ShortestPaths.of(start,end,finalNode.visitLayer + 1,dag,meter.getExpanded());
     }
 
-    private void convertToPaths(Node node, List<List<WikiPage>> result, List<WikiPage> currPath) {
-        currPath.add(node.page);
-        if(node.start) {
-            //termination condition, we have reached the start of the line
-            List<WikiPage> path = new ArrayList<>();
-            //reverse the generated path (we went backwards) and add the start node to the front
-            for(int i=currPath.size()-1;i>=0;i--) {
-                path.add(currPath.get(i));
-            }
-            //add the shortest path
-            result.add(path);
-            return;
-        }
+    private boolean isRemoved(WikiPage page) {
+        return repository != null ? repository.isRemoved(page.getUniqueId()) : page.isRemoved();
+    }
 
-        for(Node page : node.prev) {
-            //add the page, go one depth down and then backtrack
-            convertToPaths(page,result,currPath);
-            currPath.remove(currPath.size()-1);
-        }
+    public PageRepository getRepository() {
+        return repository;
     }
 
     private Node getOrMake(WikiPage page, Map<WikiPage,Node> nodeMap) {
@@ -104,6 +121,42 @@ public class BFSShortestPathStrategy implements ShortestPathStrategy {
         return node;
     }
 
+    //the state of one search, it is also the visitor handed every neighbour of the page being expanded
+    private class Search implements Consumer<WikiPage> {
+
+        private final Map<WikiPage,Node> nodeMap = new HashMap<>();
+        private final Queue<Node> queue = new ArrayDeque<>();
+        private Set<WikiPage> remaining;
+        private Node current;
+        private boolean found = false;
+        //the amount of layers fully searched, also the layer being searched
+        private int completed = 0;
+
+        @Override
+        public void accept(WikiPage neighbour) {
+            if(isRemoved(neighbour))
+                return;
+
+            int layer = completed;
+            //we want the node to add itself to the list for all of its neighbours if either
+            //the node is unvisited or if it has been visited, it was added in this layer!
+            Node neighbourNode = getOrMake(neighbour,nodeMap);
+            if(!neighbourNode.visited) {
+                //mark that we have visited and which layer we visited on
+                queue.add(neighbourNode);
+                neighbourNode.prev.add(current);
+                neighbourNode.visited = true;
+                neighbourNode.visitLayer = layer;
+            } else if (neighbourNode.visitLayer == layer) {
+                //if we already visited the node in this layer add to the junction
+                neighbourNode.prev.add(current);
+            }
+
+            if(remaining.remove(neighbourNode.page) && remaining.isEmpty())
+                found = true;
+        }
+    }
+
     private class Node {
 
         private WikiPage page;
@@ -0,0 +1,210 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.PageRepository;
+import me.jacob.proj.model.WikiPage;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+public class BidirectionalBFSShortestPathStrategy implements ShortestPathStrategy {
+
+    //where removed pages are looked up, null to ask the pages themselves
+    private final PageRepository repository;
+    private final BFSShortestPathStrategy forwardSearch;
+
+    public BidirectionalBFSShortestPathStrategy() {
+        this(null);
+    }
+
+    //the repository's removed index is checked for every link, which never locks a page
+    public BidirectionalBFSShortestPathStrategy(PageRepository repository) {
+        this.repository = repository;
+        this.forwardSearch = new BFSShortestPathStrategy(repository);
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end) {
+        return getShortestPaths(start,end,SearchBudget.unlimited());
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end, SearchBudget budget) {
+        //deal with edge case when we are travelling to and from the same node
+        if(start.equals(end))
+            return ShortestPaths.self(end);
+
+        //a removed page can never be travelled to
+        if(isRemoved(end))
+            return ShortestPaths.none(start,end,0);
+
+        SearchBudget.Meter meter = budget.start();
+
+        //init both searches, the forward search follows the links out of a page while the
+        //backward search follows the links into a page
+        Map<Integer,Node> forward = new HashMap<>();
+        Map<Integer,Node> backward = new HashMap<>();
+        Node startNode = new Node(start,0);
+        Node endNode = new Node(end,0);
+        forward.put(start.getUniqueId(),startNode);
+        backward.put(end.getUniqueId(),endNode);
+
+        List<Node> forwardLayer = new ArrayList<>();
+        List<Node> backwardLayer = new ArrayList<>();
+        forwardLayer.add(startNode);
+        backwardLayer.add(endNode);
+
+        List<Integer> meeting = new ArrayList<>();
+        //the depth each search has fully explored
+        int forwardDepth = 0;
+        int backwardDepth = 0;
+        while (!forwardLayer.isEmpty() && !backwardLayer.isEmpty() && meeting.isEmpty()) {
+            //always grow the smaller of the two frontiers, this is what keeps the search small
+            if(forwardLayer.size() <= backwardLayer.size()) {
+                forwardLayer = expand(forwardLayer,forward,backward,meeting,true,start,meter);
+                forwardDepth++;
+            } else {
+                backwardLayer = expand(backwardLayer,backward,forward,meeting,false,start,meter);
+                backwardDepth++;
+            }
+
+            //the searches didn't meet within the depths they finished, one of which is a layer short of
+            //the depth counted, so any path has at least the counted depths of links
+            if(forwardLayer == null || backwardLayer == null)
+                return ShortestPaths.cutOff(start,end,meter.getStatus(),forwardDepth + backwardDepth,meter.getExpanded());
+        }
+
+        if(meeting.isEmpty())
+            return ShortestPaths.none(start,end,meter.getExpanded());
+
+        //every shortest path crosses exactly one of the meeting pages, so joining the halves
+        //at each meeting page gives every shortest path exactly once
+        List<PathDag> heads = new ArrayList<>();
+        List<PathDag> tails = new ArrayList<>();
+        int distance = 0;
+        for(int id : meeting) {
+            Node head = forward.get(id);
+            Node tail = backward.get(id);
+            heads.add(new PredecessorDag<>(head, node -> node.prev, node -> node.page, true));
+            //the root of the backward search is the end, so its paths are read the other way
+            tails.add(new PredecessorDag<>(tail, node -> node.prev, node -> node.page, false));
+            distance = head.depth + tail.depth;
+        }
+
+        return ShortestPaths.of(start,end,distance,new JoinedPathDag(heads,tails),meter.getExpanded());
+    }
+
+    //the backward search only helps with a single end, with several ends one forward search answers them all
+    @Override
+    public List<ShortestPaths> getShortestPaths(WikiPage start, List<WikiPage> ends) {
+        return getShortestPaths(start,ends,SearchBudget.unlimited());
+    }
+
+    @Override
+    public List<ShortestPaths> getShortestPaths(WikiPage start, List<WikiPage> ends, SearchBudget budget) {
+        if(ends.size() == 1)
+            return Collections.singletonList(getShortestPaths(start,ends.get(0),budget));
+
+        return forwardSearch.getShortestPaths(start,ends,budget);
+    }
+
+    private List<Node> expand(List<Node> layer, Map<Integer,Node> visited, Map<Integer,Node> other,
+                              List<Integer> meeting, boolean forwards, WikiPage start, SearchBudget.Meter meter) {
+        Expansion expansion = new Expansion(visited,forwards,start);
+        List<Node> next = expansion.next;
+        for(Node node : layer) {
+            //a half expanded layer can't be used to look for meeting pages
+            if(!meter.expand())
+                return null;
+
+            expansion.node = node;
+            if(forwards) {
+                //visited in place, the out links are never copied
+                node.page.forEachNeighbour(expansion);
+            } else {
+                node.page.getInLinks().forEach(expansion);
+            }
+        }
+
+        //the layer is complete, find the pages the other search has already reached. Only the
+        //ones that give the shortest total distance are on a shortest path.
+        int shortest = Integer.MAX_VALUE;
+        for(Node node : next) {
+            Node otherNode = other.get(node.page.getUniqueId());
+            if(otherNode!=null)
+                shortest = Math.min(shortest,node.depth + otherNode.depth);
+        }
+
+        if(shortest!=Integer.MAX_VALUE) {
+            for(Node node : next) {
+                Node otherNode = other.get(node.page.getUniqueId());
+                if(otherNode!=null && node.depth + otherNode.depth == shortest)
+                    meeting.add(node.page.getUniqueId());
+            }
+        }
+
+        return next;
+    }
+
+    private boolean isRemoved(WikiPage page) {
+        return repository != null ? repository.isRemoved(page.getUniqueId()) : page.isRemoved();
+    }
+
+    public PageRepository getRepository() {
+        return repository;
+    }
+
+    //adds the pages one link on from the node being expanded to the next layer
+    private class Expansion implements Consumer<WikiPage> {
+
+        private final Map<Integer,Node> visited;
+        private final boolean forwards;
+        private final WikiPage start;
+        private final List<Node> next;
+        private Node node;
+
+        private Expansion(Map<Integer,Node> visited, boolean forwards, WikiPage start) {
+            this.visited = visited;
+            this.forwards = forwards;
+            this.start = start;
+            this.next = new ArrayList<>();
+        }
+
+        @Override
+        public void accept(WikiPage neighbour) {
+            //the start page may be travelled from even if it has been removed
+            if(isRemoved(neighbour) && (forwards || !neighbour.equals(start)))
+                return;
+
+            Node neighbourNode = visited.get(neighbour.getUniqueId());
+            if(neighbourNode==null) {
+                neighbourNode = new Node(neighbour,node.depth + 1);
+                visited.put(neighbour.getUniqueId(),neighbourNode);
+                next.add(neighbourNode);
+            }
+
+            //if we already visited the node in this layer add to the junction
+            if(neighbourNode.depth == node.depth + 1)
+                neighbourNode.prev.add(node);
+        }
+    }
+
+    private static class Node {
+
+        private final WikiPage page;
+        private final List<Node> prev;
+        private final int depth;
+
+        public Node(WikiPage page, int depth) {
+            this.page = page;
+            this.depth = depth;
+            this.prev = new ArrayList<>();
+        }
+
+        @Override
+        public String toString() {
+            return "Node{" +
+                    "page=" + page.getTitle() +
+                    '}';
+        }
+    }
+}
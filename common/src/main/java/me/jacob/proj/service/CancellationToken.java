@@ -0,0 +1,46 @@
+package me.jacob.proj.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lets a caller stop a running search from another thread. A search checks the token as it goes and
+ * returns a cut off result soon after it has been cancelled. A search that can't check as it goes,
+ * a query running in a database, registers an action to stop it instead.
+ */
+public class CancellationToken {
+
+    private volatile boolean cancelled;
+    private final List<Runnable> actions;
+
+    public CancellationToken() {
+        this.cancelled = false;
+        this.actions = new CopyOnWriteArrayList<>();
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for(Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    //runs the action once on the thread that cancels, or at once if that already happened. Run the
+    //returned runnable to remove the action when the search is over
+    public Runnable onCancel(Runnable action) {
+        AtomicBoolean ran = new AtomicBoolean();
+        Runnable once = () -> {
+            if(ran.compareAndSet(false,true))
+                action.run();
+        };
+        actions.add(once);
+        if(cancelled)
+            once.run();
+        return () -> actions.remove(once);
+    }
+}
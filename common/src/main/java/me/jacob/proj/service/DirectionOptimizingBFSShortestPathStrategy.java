@@ -0,0 +1,204 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.PageGraph;
+import me.jacob.proj.model.WikiPage;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * BFS that switches between top-down and bottom-up layers, after Beamer, Asanovic and Patterson.
+ * A top-down layer follows the links out of every frontier page. Once the frontier holds enough of
+ * the graph most of those links lead to pages that were already reached, so instead every page not
+ * yet reached scans its in-links and stops at the first one from the frontier. The search goes back
+ * to top-down once the frontier shrinks again.
+ * <p>
+ * A bottom-up layer only finds one parent per page, so the layer of each page is recorded and the
+ * predecessors are worked out afterwards from the pages one layer back that link to it.
+ * <p>
+ * The budget is checked between layers, a layer counts as the pages in its frontier whichever way
+ * it is searched.
+ */
+public class DirectionOptimizingBFSShortestPathStrategy implements ShortestPathStrategy {
+
+    //go bottom-up once the links out of the frontier are more than 1/ALPHA of the links left to check
+    private final static int ALPHA = 14;
+    //go back to top-down once the frontier holds fewer than 1/BETA of the pages
+    private final static int BETA = 24;
+
+    private final PageGraph graph;
+
+    public DirectionOptimizingBFSShortestPathStrategy(PageGraph graph) {
+        this.graph = graph;
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end) {
+        return getShortestPaths(start,end,SearchBudget.unlimited());
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end, SearchBudget budget) {
+        int source = start.getUniqueId();
+        int target = end.getUniqueId();
+        int size = graph.size();
+        if(source >= size || target >= size || !graph.contains(source) || !graph.contains(target))
+            return ShortestPaths.none(start,end);
+
+        //deal with edge case when we are travelling to and from the same node
+        if(source == target)
+            return ShortestPaths.self(end);
+
+        if(graph.isRemoved(target))
+            return ShortestPaths.none(start,end);
+
+        Search search = new Search(size);
+        search.layers[source] = 0;
+        search.frontier[0] = source;
+        search.frontierSize = 1;
+        search.frontierEdges = graph.getDegree(source);
+        long unexplored = graph.getAmountOfEdges() - search.frontierEdges;
+
+        SearchBudget.Meter meter = budget.start();
+        boolean bottomUp = false;
+        int previousSize = 0;
+        while (search.frontierSize > 0 && search.layers[target] < 0) {
+            //every layer up to the last one is done and the target isn't in them
+            if(!meter.expand(search.frontierSize))
+                return ShortestPaths.cutOff(start,end,meter.getStatus(),search.layer + 1,meter.getExpanded());
+
+            if(!bottomUp && search.frontierEdges > unexplored / ALPHA) {
+                bottomUp = true;
+            } else if(bottomUp && search.frontierSize < size / BETA && search.frontierSize < previousSize) {
+                //only go back once the frontier is both small and shrinking
+                bottomUp = false;
+            }
+
+            previousSize = search.frontierSize;
+            if(bottomUp) {
+                search.bottomUp();
+            } else {
+                search.topDown();
+            }
+            unexplored -= search.frontierEdges;
+        }
+
+        if(search.layers[target] < 0)
+            return ShortestPaths.none(start,end,meter.getExpanded());
+
+        Map<Integer,List<Integer>> predecessors = collectPredecessors(target, search.layers);
+        PathDag dag = new PredecessorDag<>(target, predecessors::get, graph::getPage, true);
+        return ShortestPaths.of(start,end,search.layers[target],dag,meter.getExpanded());
+    }
+
+    private Map<Integer,List<Integer>> collectPredecessors(int target, int[] layers) {
+        Map<Integer,List<Integer>> predecessors = new HashMap<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(target);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            if(predecessors.containsKey(node))
+                continue;
+
+            //the graph may report the same link more than once
+            Set<Integer> prev = new LinkedHashSet<>();
+            int layer = layers[node];
+            if(layer > 0) {
+                graph.forEachInLink(node, source -> {
+                    if(source < layers.length && layers[source] == layer - 1)
+                        prev.add(source);
+                });
+            }
+            predecessors.put(node,new ArrayList<>(prev));
+            for(int source : prev) {
+                stack.push(source);
+            }
+        }
+        return predecessors;
+    }
+
+    public PageGraph getGraph() {
+        return graph;
+    }
+
+    //the state of one query, it is both the visitor of a top-down layer and the parent test of a
+    //bottom-up layer so that no lambda is created per page
+    private class Search implements IntConsumer, IntPredicate {
+
+        private final int[] layers;
+        private final BitSet inFrontier;
+        private int[] frontier;
+        private int frontierSize;
+        private long frontierEdges;
+        private int[] next;
+        private int nextSize;
+        private int layer;
+
+        private Search(int size) {
+            this.layers = new int[size];
+            this.inFrontier = new BitSet(size);
+            this.frontier = new int[size];
+            this.next = new int[size];
+            this.layer = 0;
+            Arrays.fill(layers,-1);
+        }
+
+        private void topDown() {
+            layer++;
+            nextSize = 0;
+            for(int i = 0; i < frontierSize; i++) {
+                graph.forEachNeighbour(frontier[i],this);
+            }
+            swap();
+        }
+
+        private void bottomUp() {
+            layer++;
+            nextSize = 0;
+            inFrontier.clear();
+            for(int i = 0; i < frontierSize; i++) {
+                inFrontier.set(frontier[i]);
+            }
+
+            graph.forEachLinkedFrom(layers.length,this::isUnreached,this,this::reach);
+            swap();
+        }
+
+        //top-down, a link out of the frontier
+        @Override
+        public void accept(int neighbour) {
+            if(neighbour >= layers.length || layers[neighbour] >= 0 || graph.isRemoved(neighbour))
+                return;
+
+            reach(neighbour);
+        }
+
+        //bottom-up, is the page linking here part of the frontier
+        @Override
+        public boolean test(int source) {
+            return source < layers.length && inFrontier.get(source);
+        }
+
+        //bottom-up, a page that no layer has reached yet
+        private boolean isUnreached(int id) {
+            return layers[id] < 0;
+        }
+
+        private void reach(int id) {
+            layers[id] = layer;
+            next[nextSize++] = id;
+        }
+
+        private void swap() {
+            int[] expanded = frontier;
+            frontier = next;
+            next = expanded;
+            frontierSize = nextSize;
+            frontierEdges = 0;
+            for(int i = 0; i < frontierSize; i++) {
+                frontierEdges += graph.getDegree(frontier[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package me.jacob.proj.service;
+
+/**
+ * Bounds on the amount of links on a shortest path from one page to another. The true distance is
+ * never less than the lower bound and never more than the upper bound.
+ */
+public class DistanceEstimate {
+
+    //the upper bound when no path is known
+    public final static int UNKNOWN = Integer.MAX_VALUE;
+
+    private final int lower;
+    private final int upper;
+    private final boolean unreachable;
+
+    private DistanceEstimate(int lower, int upper, boolean unreachable) {
+        this.lower = lower;
+        this.upper = upper;
+        this.unreachable = unreachable;
+    }
+
+    public static DistanceEstimate of(int lower, int upper) {
+        return new DistanceEstimate(lower,upper,false);
+    }
+
+    //nothing is known about the pages
+    public static DistanceEstimate unknown(boolean samePage) {
+        return samePage ? exact(0) : of(1,UNKNOWN);
+    }
+
+    public static DistanceEstimate exact(int distance) {
+        return new DistanceEstimate(distance,distance,false);
+    }
+
+    //it has been proven that there is no path between the pages
+    public static DistanceEstimate unreachable() {
+        return new DistanceEstimate(UNKNOWN,UNKNOWN,true);
+    }
+
+    public int getLower() {
+        return lower;
+    }
+
+    public int getUpper() {
+        return upper;
+    }
+
+    public boolean isUpperKnown() {
+        return upper != UNKNOWN;
+    }
+
+    public boolean isExact() {
+        return !unreachable && lower == upper;
+    }
+
+    public boolean isUnreachable() {
+        return unreachable;
+    }
+
+    @Override
+    public String toString() {
+        if(unreachable)
+            return "DistanceEstimate{unreachable}";
+
+        return "DistanceEstimate{" +
+                "lower=" + lower +
+                ", upper=" + (isUpperKnown() ? String.valueOf(upper) : "unknown") +
+                '}';
+    }
+}
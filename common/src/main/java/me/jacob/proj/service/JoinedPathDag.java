@@ -0,0 +1,87 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.WikiPage;
+
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * The shortest paths of a search that met in the middle. Every path crosses exactly one meeting
+ * page, the paths through a meeting page are each head to the page joined with each tail from it.
+ */
+public class JoinedPathDag implements PathDag {
+
+    //heads run from the start to the meeting page, tails from the meeting page to the end
+    private final List<PathDag> heads;
+    private final List<PathDag> tails;
+
+    public JoinedPathDag(List<PathDag> heads, List<PathDag> tails) {
+        if(heads.size() != tails.size())
+            throw new IllegalArgumentException("every meeting page needs a head and a tail");
+
+        this.heads = heads;
+        this.tails = tails;
+    }
+
+    @Override
+    public BigInteger countPaths() {
+        BigInteger count = BigInteger.ZERO;
+        for(int i=0;i<heads.size();i++) {
+            count = count.add(heads.get(i).countPaths().multiply(tails.get(i).countPaths()));
+        }
+        return count;
+    }
+
+    @Override
+    public Iterator<List<WikiPage>> paths() {
+        return new Iterator<>() {
+
+            private int meeting = 0;
+            private Iterator<List<WikiPage>> headIterator = null;
+            private Iterator<List<WikiPage>> tailIterator = null;
+            private List<WikiPage> head = null;
+
+            @Override
+            public boolean hasNext() {
+                while (tailIterator == null || !tailIterator.hasNext()) {
+                    if(headIterator != null && headIterator.hasNext()) {
+                        head = headIterator.next();
+                        tailIterator = tails.get(meeting).paths();
+                    } else {
+                        if(headIterator != null)
+                            meeting++;
+
+                        if(meeting >= heads.size())
+                            return false;
+
+                        headIterator = heads.get(meeting).paths();
+                        tailIterator = null;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public List<WikiPage> next() {
+                if(!hasNext())
+                    throw new NoSuchElementException();
+
+                List<WikiPage> tail = tailIterator.next();
+                List<WikiPage> path = new ArrayList<>(head.size() + tail.size() - 1);
+                path.addAll(head);
+                //the head and the tail share the meeting page
+                path.addAll(tail.subList(1,tail.size()));
+                return path;
+            }
+        };
+    }
+
+    @Override
+    public boolean contains(int uniqueId) {
+        for(int i=0;i<heads.size();i++) {
+            if(heads.get(i).contains(uniqueId) || tails.get(i).contains(uniqueId))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,186 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.GraphSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A distance oracle over a {@link GraphSnapshot} built from a handful of landmark pages. For every
+ * landmark L the distance from L to each page and from each page to L is stored. The triangle
+ * inequality then bounds the distance between any two pages a and b:
+ * <pre>
+ *     d(a,L) - d(b,L) &lt;= d(a,b)
+ *     d(L,b) - d(L,a) &lt;= d(a,b)
+ *     d(a,b) &lt;= d(a,L) + d(L,b)
+ * </pre>
+ * Distances are held as unsigned bytes, one per page and landmark in each direction. The bounds are
+ * only valid for the snapshot the index was built from.
+ */
+public class LandmarkIndex {
+
+    //the largest distance a byte can hold, 0xFF marks a page that can't be reached
+    private final static int MAX_DISTANCE = 0xFE;
+    private final static int UNREACHABLE = 0xFF;
+
+    private final GraphSnapshot snapshot;
+    private final int[] landmarks;
+    //from[l][v] = d(landmark l, v), to[l][v] = d(v, landmark l)
+    private final byte[][] from;
+    private final byte[][] to;
+
+    private LandmarkIndex(GraphSnapshot snapshot, int[] landmarks, byte[][] from, byte[][] to) {
+        this.snapshot = snapshot;
+        this.landmarks = landmarks;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Picks the landmarks with the most links in and out, the pages most shortest paths run close to.
+     * A landmark that is further than {@link #MAX_DISTANCE} from a page it can reach is left out.
+     */
+    public static LandmarkIndex build(GraphSnapshot snapshot, int landmarks) {
+        List<Integer> picked = pickLandmarks(snapshot,landmarks);
+        List<Integer> kept = new ArrayList<>();
+        List<byte[]> from = new ArrayList<>();
+        List<byte[]> to = new ArrayList<>();
+        for(int landmark : picked) {
+            byte[] forward = distances(snapshot,landmark,true);
+            byte[] backward = distances(snapshot,landmark,false);
+            if(forward==null || backward==null)
+                continue;
+
+            kept.add(landmark);
+            from.add(forward);
+            to.add(backward);
+        }
+
+        int[] ids = new int[kept.size()];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = kept.get(i);
+        }
+        return new LandmarkIndex(snapshot,ids,from.toArray(new byte[0][]),to.toArray(new byte[0][]));
+    }
+
+    private static List<Integer> pickLandmarks(GraphSnapshot snapshot, int landmarks) {
+        PriorityQueue<Integer> best = new PriorityQueue<>((a, b) -> Integer.compare(degree(snapshot,a),degree(snapshot,b)));
+        for(int id = 0; id < snapshot.size(); id++) {
+            if(!snapshot.contains(id) || snapshot.isRemoved(id))
+                continue;
+
+            best.add(id);
+            if(best.size() > landmarks)
+                best.poll();
+        }
+        return new ArrayList<>(best);
+    }
+
+    private static int degree(GraphSnapshot snapshot, int id) {
+        return snapshot.getDegree(id) + snapshot.getInDegree(id);
+    }
+
+    //BFS from the landmark, forwards along the links or backwards against them
+    private static byte[] distances(GraphSnapshot snapshot, int landmark, boolean forwards) {
+        byte[] distances = new byte[snapshot.size()];
+        Arrays.fill(distances,(byte) UNREACHABLE);
+        int[] queue = new int[snapshot.size()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = landmark;
+        distances[landmark] = 0;
+        while (head < tail) {
+            int node = queue[head++];
+            int distance = distances[node] & 0xFF;
+            //a removed page may start a path but never be travelled through
+            if(node != landmark && snapshot.isRemoved(node))
+                continue;
+
+            if(distance == MAX_DISTANCE)
+                return null;
+
+            int first = forwards ? snapshot.getOffset(node) : snapshot.getInOffset(node);
+            int last = forwards ? snapshot.getOffset(node + 1) : snapshot.getInOffset(node + 1);
+            for(int i = first; i < last; i++) {
+                int neighbour = forwards ? snapshot.getTarget(i) : snapshot.getSource(i);
+                if((distances[neighbour] & 0xFF) != UNREACHABLE)
+                    continue;
+
+                //going forwards a removed page can't be the end of a path either
+                if(forwards && snapshot.isRemoved(neighbour))
+                    continue;
+
+                distances[neighbour] = (byte) (distance + 1);
+                queue[tail++] = neighbour;
+            }
+        }
+        return distances;
+    }
+
+    public DistanceEstimate estimate(int a, int b) {
+        if(a == b)
+            return DistanceEstimate.exact(0);
+
+        if(!snapshot.contains(a) || !snapshot.contains(b))
+            return DistanceEstimate.unknown(false);
+
+        int lower = lowerBound(a,b);
+        if(lower == Integer.MAX_VALUE)
+            return DistanceEstimate.unreachable();
+
+        int upper = DistanceEstimate.UNKNOWN;
+        for(int l = 0; l < landmarks.length; l++) {
+            int aTo = to[l][a] & 0xFF;
+            int fromB = from[l][b] & 0xFF;
+            if(aTo != UNREACHABLE && fromB != UNREACHABLE)
+                upper = Math.min(upper,aTo + fromB);
+        }
+
+        return DistanceEstimate.of(lower,upper);
+    }
+
+    //the least amount of links from a to b, Integer.MAX_VALUE if b can't be reached from a. This is
+    //called for every page a landmark search reaches so it allocates nothing
+    public int lowerBound(int a, int b) {
+        if(a == b)
+            return 0;
+
+        if(!snapshot.contains(a) || !snapshot.contains(b))
+            return 1;
+
+        if(snapshot.isRemoved(b))
+            return Integer.MAX_VALUE;
+
+        int lower = 1;
+        for(int l = 0; l < landmarks.length; l++) {
+            int fromA = from[l][a] & 0xFF;
+            int fromB = from[l][b] & 0xFF;
+            int aTo = to[l][a] & 0xFF;
+            int bTo = to[l][b] & 0xFF;
+            //if a could reach b then b would be reachable from anything that reaches a, and anything
+            //b reaches would be reachable from a
+            if((fromA != UNREACHABLE && fromB == UNREACHABLE) || (aTo == UNREACHABLE && bTo != UNREACHABLE))
+                return Integer.MAX_VALUE;
+
+            if(aTo != UNREACHABLE && bTo != UNREACHABLE)
+                lower = Math.max(lower,aTo - bTo);
+            if(fromA != UNREACHABLE && fromB != UNREACHABLE)
+                lower = Math.max(lower,fromB - fromA);
+        }
+        return lower;
+    }
+
+    public GraphSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public int[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    public int getAmountOfLandmarks() {
+        return landmarks.length;
+    }
+}
@@ -0,0 +1,91 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.GraphSnapshot;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a {@link LandmarkIndex} up to date on a background thread while the graph grows. Changes to
+ * the graph only request a rebuild, requests that arrive while a rebuild is waiting or running are
+ * folded into the next one and rebuilds are never closer together than the minimum interval. Readers
+ * always see the last finished index.
+ */
+public class LandmarkIndexer {
+
+    private final Supplier<GraphSnapshot> snapshots;
+    private final int landmarks;
+    private final long minInterval;
+    private final ScheduledExecutorService executor;
+
+    private volatile LandmarkIndex index;
+    private boolean scheduled;
+    private long lastBuild;
+    private int builds;
+
+    public LandmarkIndexer(Supplier<GraphSnapshot> snapshots, int landmarks, long minInterval, TimeUnit unit) {
+        this.snapshots = snapshots;
+        this.landmarks = landmarks;
+        this.minInterval = unit.toMillis(minInterval);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable,"Landmark-Indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduled = false;
+        this.lastBuild = 0;
+        this.builds = 0;
+    }
+
+    public synchronized void requestRebuild() {
+        if(scheduled || executor.isShutdown())
+            return;
+
+        scheduled = true;
+        long delay = Math.max(0,lastBuild + minInterval - System.currentTimeMillis());
+        executor.schedule(this::rebuild,delay,TimeUnit.MILLISECONDS);
+    }
+
+    //builds the index on the calling thread
+    public LandmarkIndex rebuildNow() {
+        synchronized (this) {
+            //a change after this point must schedule a new build
+            scheduled = false;
+        }
+
+        LandmarkIndex index = LandmarkIndex.build(snapshots.get(),landmarks);
+        synchronized (this) {
+            this.index = index;
+            this.lastBuild = System.currentTimeMillis();
+            this.builds++;
+        }
+        return index;
+    }
+
+    private void rebuild() {
+        try {
+            rebuildNow();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    //the last index built, null if none has finished yet
+    public LandmarkIndex getIndex() {
+        return index;
+    }
+
+    public int getLandmarks() {
+        return landmarks;
+    }
+
+    public synchronized int getBuilds() {
+        return builds;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,122 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.GraphSnapshot;
+import me.jacob.proj.model.WikiPage;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BFS over a {@link GraphSnapshot} that uses a {@link LandmarkIndex} as an A* heuristic. The index
+ * gives an upper bound U on the distance before the search starts, a page v reached after g links
+ * is never expanded if g plus the lower bound from v to the end is more than U. Every page on a
+ * shortest path has g + d(v,end) = d(start,end) &lt;= U, so no shortest path is ever pruned. Pairs
+ * the index proves can't be connected are answered without searching at all.
+ */
+public class LandmarkShortestPathStrategy implements ShortestPathStrategy {
+
+    private final GraphSnapshot snapshot;
+    private final LandmarkIndex index;
+    private final ThreadLocal<Scratch> scratch;
+
+    public LandmarkShortestPathStrategy(GraphSnapshot snapshot, int landmarks) {
+        this(LandmarkIndex.build(snapshot,landmarks));
+    }
+
+    public LandmarkShortestPathStrategy(LandmarkIndex index) {
+        this.snapshot = index.getSnapshot();
+        this.index = index;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(snapshot.size()));
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end) {
+        return getShortestPaths(start,end,SearchBudget.unlimited());
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end, SearchBudget budget) {
+        int source = start.getUniqueId();
+        int target = end.getUniqueId();
+        //the pages were created after the snapshot was taken
+        if(!snapshot.contains(source) || !snapshot.contains(target))
+            return ShortestPaths.none(start,end);
+
+        //deal with edge case when we are travelling to and from the same node
+        if(source == target)
+            return ShortestPaths.self(snapshot.getPage(target));
+
+        DistanceEstimate estimate = index.estimate(source,target);
+        if(estimate.isUnreachable())
+            return ShortestPaths.none(start,end);
+
+        long upper = estimate.getUpper();
+        SearchBudget.Meter meter = budget.start();
+        Scratch scratch = this.scratch.get();
+        int[] dist = scratch.dist;
+        int[] queue = scratch.queue;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        dist[source] = 0;
+
+        try {
+            while (head < tail && dist[target] < 0) {
+                int node = queue[head];
+                //the pages are expanded in order of distance, every page nearer than this one was
+                //reached, and the pruned pages are on no shortest path
+                if(!meter.expand()) {
+                    int lower = Math.max(dist[node] + 1,estimate.getLower());
+                    return ShortestPaths.cutOff(start,end,meter.getStatus(),lower,meter.getExpanded());
+                }
+
+                head++;
+                int next = dist[node] + 1;
+                int last = snapshot.getOffset(node + 1);
+                for (int i = snapshot.getOffset(node); i < last; i++) {
+                    int neighbour = snapshot.getTarget(i);
+                    if (dist[neighbour] >= 0 || snapshot.isRemoved(neighbour))
+                        continue;
+
+                    //the page is too far from the end to be on a shortest path
+                    if (next + (long) index.lowerBound(neighbour,target) > upper)
+                        continue;
+
+                    dist[neighbour] = next;
+                    queue[tail++] = neighbour;
+                }
+            }
+
+            if (dist[target] < 0)
+                return ShortestPaths.none(start,end,meter.getExpanded());
+
+            //a page left on a shortest path was reached by its true distance, so the predecessors are
+            //found the same way as for a full search
+            Map<Integer,List<Integer>> predecessors = SnapshotShortestPathStrategy.collectPredecessors(snapshot,target,dist);
+            PathDag dag = new PredecessorDag<>(target, predecessors::get, snapshot::getPage, true);
+            return ShortestPaths.of(snapshot.getPage(source), snapshot.getPage(target), dist[target], dag, meter.getExpanded());
+        } finally {
+            //only reset what we touched so the next query does not pay for the whole graph
+            for (int i = 0; i < tail; i++) {
+                dist[queue[i]] = -1;
+            }
+        }
+    }
+
+    public LandmarkIndex getIndex() {
+        return index;
+    }
+
+    private static class Scratch {
+
+        private final int[] dist;
+        private final int[] queue;
+
+        private Scratch(int size) {
+            this.dist = new int[size];
+            this.queue = new int[size];
+            Arrays.fill(dist,-1);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.model.neo4j.Neo4jPageRepository;
+import org.neo4j.driver.*;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.exceptions.Neo4jException;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the search inside Neo4j with allShortestPaths over the HYPERLINKS relationships, a query is
+ * a single round trip for the paths and one more to load the pages on them. Walking the graph from
+ * here with {@link BFSShortestPathStrategy} would cost one query for every page expanded.
+ * <p>
+ * As with the other strategies a removed page can start a path but never be travelled through. Only
+ * what has been written to the database is searched, pages still waiting in a bulk create are not.
+ * <p>
+ * A budget's timeout is the transaction's timeout, the database ends the query once it has run out.
+ * Cancelling the token terminates the query's transaction, found by the tag it carries in its
+ * metadata. The database doesn't report the pages it expanded, so a limit on them isn't applied.
+ */
+public class Neo4jShortestPathStrategy implements ShortestPathStrategy {
+
+    //the removed check ranges over the whole of nodes(p), the planner only applies an all() over the
+    //nodes or relationships of the path while it searches. Over a slice such as nodes(p)[1..] it finds
+    //the shortest paths first and filters them after, searching again exhaustively if none pass
+    private final static String PATHS_QUERY = "MATCH (start:WIKIPAGE {id:$start}) " +
+            "UNWIND $ends AS endId " +
+            "MATCH (end:WIKIPAGE {id:endId}) " +
+            "MATCH p = allShortestPaths((start)-[:HYPERLINKS*]->(end)) " +
+            "WHERE all(n IN nodes(p) WHERE n = start OR NOT n.isRemoved) " +
+            "RETURN endId, [n IN nodes(p) | n.id] AS ids";
+    private final static String FIND_QUERY = "SHOW TRANSACTIONS YIELD transactionId, metaData " +
+            "WHERE metaData.pathQuery = $tag RETURN transactionId";
+    private final static String TERMINATE_QUERY = "TERMINATE TRANSACTIONS $ids";
+
+    private final Neo4jPageRepository repository;
+
+    public Neo4jShortestPathStrategy(Neo4jPageRepository repository) {
+        this.repository = repository;
+    }
+
+    public static void main(String[] args) {
+        //expects a local neo4j with some pages crawled into it
+        Driver driver = GraphDatabase.driver("bolt://localhost:7687",AuthTokens.basic("neo4j","password"));
+        Neo4jPageRepository pageRepo = new Neo4jPageRepository(driver);
+        Neo4jShortestPathStrategy strategy = new Neo4jShortestPathStrategy(pageRepo);
+        BFSShortestPathStrategy reference = new BFSShortestPathStrategy();
+
+        String start = args.length > 0 ? args[0] : "/wiki/Black_hole";
+        String end = args.length > 1 ? args[1] : "/wiki/Ultra-high-energy_cosmic_ray";
+        WikiPage a = pageRepo.getPage(new WikiLink(start));
+        WikiPage b = pageRepo.getPage(new WikiLink(end));
+        if(a==null || b==null) {
+            System.out.println("Both pages must be in the database");
+            driver.close();
+            return;
+        }
+
+        long time = System.nanoTime();
+        ShortestPaths paths = strategy.getShortestPaths(a,b);
+        System.out.println("Neo4j: "+paths+" in "+(System.nanoTime() - time) / 1_000_000+"ms");
+
+        time = System.nanoTime();
+        ShortestPaths expected = reference.getShortestPaths(a,b);
+        System.out.println("BFS: "+expected+" in "+(System.nanoTime() - time) / 1_000_000+"ms");
+        System.out.println("Same paths: "+toIds(paths).equals(toIds(expected)));
+        driver.close();
+    }
+
+    private static Set<List<Integer>> toIds(ShortestPaths paths) {
+        Set<List<Integer>> ids = new HashSet<>();
+        for(List<WikiPage> path : paths) {
+            List<Integer> pathIds = new ArrayList<>();
+            for(WikiPage page : path) {
+                pathIds.add(page.getUniqueId());
+            }
+            ids.add(pathIds);
+        }
+        return ids;
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end) {
+        return getShortestPaths(start,end,SearchBudget.unlimited());
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end, SearchBudget budget) {
+        return getShortestPaths(start,Collections.singletonList(end),budget).get(0);
+    }
+
+    @Override
+    public List<ShortestPaths> getShortestPaths(WikiPage start, List<WikiPage> ends) {
+        return getShortestPaths(start,ends,SearchBudget.unlimited());
+    }
+
+    //every end is answered by the same query, which runs under the whole budget
+    @Override
+    public List<ShortestPaths> getShortestPaths(WikiPage start, List<WikiPage> ends, SearchBudget budget) {
+        //neo4j won't search for a path from a page to itself
+        Set<Integer> endIds = new LinkedHashSet<>();
+        for(WikiPage end : ends) {
+            if(end.getUniqueId() != start.getUniqueId())
+                endIds.add(end.getUniqueId());
+        }
+
+        //the links into each page that lie on a shortest path, grouped by the end of the path
+        Map<Integer,Map<Integer,Set<Integer>>> predecessors = new HashMap<>();
+        Map<Integer,Integer> distances = new HashMap<>();
+        Set<Integer> onPaths = new HashSet<>();
+        SearchBudget.Meter meter = budget.start();
+        if(!endIds.isEmpty() && !meter.isCutOff()) {
+            //the tag finds the transaction to terminate if the token is cancelled
+            String tag = UUID.randomUUID().toString();
+            TransactionConfig.Builder config = TransactionConfig.builder()
+                    .withMetadata(Collections.singletonMap("pathQuery",tag));
+            //zero would mean the database's own timeout
+            if(budget.getTimeout() >= 0)
+                config.withTimeout(Duration.ofMillis(Math.max(1,budget.getTimeout() / 1_000_000)));
+
+            CancellationToken token = budget.getToken();
+            Runnable stopWatching = token == null ? null : token.onCancel(() -> CompletableFuture.runAsync(() -> terminate(tag)));
+            try (Session session = repository.getDriver().session()) {
+                Map<String, Object> params = new HashMap<>();
+                params.put("start", start.getUniqueId());
+                params.put("ends", new ArrayList<>(endIds));
+                Result rs = session.run(new Query(PATHS_QUERY, params),config.build());
+                while (rs.hasNext()) {
+                    Record record = rs.next();
+                    int endId = record.get("endId").asInt();
+                    List<Object> ids = record.get("ids").asList();
+                    Map<Integer, Set<Integer>> dag = predecessors.computeIfAbsent(endId, k -> new HashMap<>());
+                    for (int i = 0; i < ids.size(); i++) {
+                        int id = ((Number) ids.get(i)).intValue();
+                        onPaths.add(id);
+                        Set<Integer> prev = dag.computeIfAbsent(id, k -> new LinkedHashSet<>());
+                        if (i > 0)
+                            prev.add(((Number) ids.get(i - 1)).intValue());
+                    }
+                    distances.put(endId, ids.size() - 1);
+                }
+            } catch (Neo4jException e) {
+                SearchStatus status = cutOffBy(e,budget);
+                if(status == null)
+                    throw e;
+
+                //the query was ended part way through, even the paths it returned may not be all of them
+                List<ShortestPaths> result = new ArrayList<>(ends.size());
+                for(WikiPage end : ends) {
+                    result.add(end.getUniqueId() == start.getUniqueId() ? ShortestPaths.self(end)
+                            : ShortestPaths.cutOff(start,end,status,1,-1));
+                }
+                return result;
+            } finally {
+                if(stopWatching != null)
+                    stopWatching.run();
+            }
+        }
+
+        Map<Integer,WikiPage> pages = new HashMap<>();
+        if(!onPaths.isEmpty()) {
+            for(WikiPage page : repository.getPages(onPaths)) {
+                pages.put(page.getUniqueId(),page);
+            }
+        }
+
+        List<ShortestPaths> result = new ArrayList<>(ends.size());
+        for(WikiPage end : ends) {
+            if(meter.isCutOff() && end.getUniqueId() != start.getUniqueId()) {
+                result.add(ShortestPaths.cutOff(start,end,meter.getStatus(),1,-1));
+            } else {
+                result.add(toPaths(start,end,predecessors.get(end.getUniqueId()),distances.get(end.getUniqueId()),pages));
+            }
+        }
+        return result;
+    }
+
+    //why the query was ended, null if it failed for some other reason
+    private static SearchStatus cutOffBy(Neo4jException e, SearchBudget budget) {
+        CancellationToken token = budget.getToken();
+        if(token != null && token.isCancelled())
+            return SearchStatus.CANCELLED;
+
+        if(budget.getTimeout() >= 0 && e.code() != null && e.code().contains("TransactionTimedOut"))
+            return SearchStatus.DEADLINE;
+        return null;
+    }
+
+    //ends the transaction running the query with the tag, it may not have started or be over already
+    private void terminate(String tag) {
+        try (Session session = repository.getDriver().session()) {
+            List<String> ids = new ArrayList<>();
+            Result rs = session.run(FIND_QUERY,Collections.singletonMap("tag",tag));
+            while (rs.hasNext()) {
+                ids.add(rs.next().get("transactionId").asString());
+            }
+
+            if(!ids.isEmpty())
+                session.run(TERMINATE_QUERY,Collections.singletonMap("ids",ids)).consume();
+        } catch (Neo4jException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private ShortestPaths toPaths(WikiPage start, WikiPage end, Map<Integer,Set<Integer>> dag, Integer distance, Map<Integer,WikiPage> pages) {
+        //deal with edge case when we are travelling to and from the same node
+        if(start.getUniqueId() == end.getUniqueId())
+            return ShortestPaths.self(end);
+
+        if(dag==null)
+            return ShortestPaths.none(start,end);
+
+        PathDag paths = new PredecessorDag<>(end.getUniqueId(),
+                id -> dag.getOrDefault(id,Collections.emptySet()),
+                pages::get,
+                true);
+        return ShortestPaths.of(start,end,distance,paths);
+    }
+
+    public Neo4jPageRepository getRepository() {
+        return repository;
+    }
+}
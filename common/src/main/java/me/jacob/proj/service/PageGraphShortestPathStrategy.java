@@ -0,0 +1,199 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.PageGraph;
+import me.jacob.proj.model.WikiPage;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * BFS over any {@link PageGraph} that only touches int arrays kept per thread, like
+ * {@link SnapshotShortestPathStrategy} does for a snapshot. The arrays grow with the graph and only
+ * the entries a search touched are reset, so a short search costs little however large the graph.
+ */
+public class PageGraphShortestPathStrategy implements ShortestPathStrategy {
+
+    private final PageGraph graph;
+    private final ThreadLocal<Scratch> scratch;
+
+    public PageGraphShortestPathStrategy(PageGraph graph) {
+        this.graph = graph;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(0));
+    }
+
+    //for subclasses that pick the graph for each query, they override the search with a budget for many ends
+    protected PageGraphShortestPathStrategy() {
+        this(null);
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end) {
+        return getShortestPaths(start,end,SearchBudget.unlimited());
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end, SearchBudget budget) {
+        return getShortestPaths(start,Collections.singletonList(end),budget).get(0);
+    }
+
+    @Override
+    public List<ShortestPaths> getShortestPaths(WikiPage start, List<WikiPage> ends) {
+        return getShortestPaths(start,ends,SearchBudget.unlimited());
+    }
+
+    //one search from the start answers every end, it stops as soon as the last end is reached
+    @Override
+    public List<ShortestPaths> getShortestPaths(WikiPage start, List<WikiPage> ends, SearchBudget budget) {
+        return search(graph,start,ends,budget);
+    }
+
+    protected List<ShortestPaths> search(PageGraph graph, WikiPage start, List<WikiPage> ends, SearchBudget budget) {
+        int source = start.getUniqueId();
+        BitSet wanted = new BitSet();
+        //the pages may have been created after the graph was read
+        if(graph.contains(source)) {
+            for(WikiPage end : ends) {
+                int target = end.getUniqueId();
+                if(target != source && graph.contains(target) && !graph.isRemoved(target))
+                    wanted.set(target);
+            }
+        }
+
+        List<ShortestPaths> result = new ArrayList<>(ends.size());
+        if(wanted.isEmpty()) {
+            for(WikiPage end : ends) {
+                //deal with edge case when we are travelling to and from the same node
+                if(graph.contains(source) && end.getUniqueId() == source) {
+                    result.add(ShortestPaths.self(graph.getPage(source)));
+                } else {
+                    result.add(ShortestPaths.none(start,end,0));
+                }
+            }
+            return result;
+        }
+
+        SearchBudget.Meter meter = budget.start();
+        Scratch scratch = this.scratch.get();
+        if(scratch.dist.length < graph.size()) {
+            //room for the graph to grow a little before the next query has to replace it
+            scratch = new Scratch(graph.size() + (graph.size() >> 2));
+            this.scratch.set(scratch);
+        }
+        scratch.start(graph,source,wanted);
+        int[] dist = scratch.dist;
+        //the distance of the last page expanded, every page up to it has been reached
+        int reached = 0;
+
+        try {
+            //every page a layer before an end has been reached by the time the end is reached, so
+            //the search can stop as soon as the last end is found
+            while (scratch.head < scratch.tail && scratch.remaining > 0 && meter.expand()) {
+                int node = scratch.queue[scratch.head++];
+                reached = dist[node];
+                scratch.layer = reached + 1;
+                graph.forEachNeighbour(node,scratch);
+            }
+
+            for(WikiPage end : ends) {
+                //an end that was reached before the search was cut off is still exact
+                int target = end.getUniqueId();
+                if(meter.isCutOff() && wanted.get(target) && dist[target] < 0) {
+                    result.add(ShortestPaths.cutOff(start,end,meter.getStatus(),reached + 1,meter.getExpanded()));
+                } else {
+                    result.add(toPaths(graph,start,end,dist,meter.getExpanded()));
+                }
+            }
+            return result;
+        } finally {
+            scratch.reset();
+        }
+    }
+
+    private ShortestPaths toPaths(PageGraph graph, WikiPage start, WikiPage end, int[] dist, long expanded) {
+        int source = start.getUniqueId();
+        int target = end.getUniqueId();
+        if(source == target)
+            return ShortestPaths.self(graph.getPage(target));
+
+        if(!graph.contains(target) || dist[target] < 0)
+            return ShortestPaths.none(start,end,expanded);
+
+        //the scratch buffers are reused, so the predecessors are copied out of them
+        Map<Integer,List<Integer>> predecessors = new HashMap<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(target);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            if(predecessors.containsKey(node))
+                continue;
+
+            List<Integer> prev = new ArrayList<>();
+            int layer = dist[node];
+            if(layer > 0) {
+                graph.forEachInLink(node, from -> {
+                    if(from < dist.length && dist[from] == layer - 1) {
+                        prev.add(from);
+                        stack.push(from);
+                    }
+                });
+            }
+            predecessors.put(node,prev);
+        }
+
+        PathDag dag = new PredecessorDag<>(target, predecessors::get, graph::getPage, true);
+        return ShortestPaths.of(graph.getPage(source), graph.getPage(target), dist[target], dag, expanded);
+    }
+
+    public PageGraph getGraph() {
+        return graph;
+    }
+
+    //the buffers of one thread's searches, it also visits the links out of the page being expanded
+    private static class Scratch implements IntConsumer {
+
+        private final int[] dist;
+        private final int[] queue;
+        private PageGraph graph;
+        private BitSet wanted;
+        private int head;
+        private int tail;
+        private int layer;
+        private int remaining;
+
+        private Scratch(int size) {
+            this.dist = new int[size];
+            this.queue = new int[size];
+            Arrays.fill(dist,-1);
+        }
+
+        private void start(PageGraph graph, int source, BitSet wanted) {
+            this.graph = graph;
+            this.wanted = wanted;
+            this.remaining = wanted.cardinality();
+            this.head = 0;
+            this.tail = 0;
+            queue[tail++] = source;
+            dist[source] = 0;
+        }
+
+        @Override
+        public void accept(int neighbour) {
+            if(neighbour >= dist.length || dist[neighbour] >= 0 || graph.isRemoved(neighbour))
+                return;
+
+            dist[neighbour] = layer;
+            queue[tail++] = neighbour;
+            if(wanted.get(neighbour))
+                remaining--;
+        }
+
+        //only reset what was touched so the next query does not pay for the whole graph
+        private void reset() {
+            for(int i = 0; i < tail; i++) {
+                dist[queue[i]] = -1;
+            }
+            graph = null;
+            wanted = null;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.GraphSnapshot;
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.util.AtomicBitSet;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Level synchronous BFS over a {@link GraphSnapshot} where every layer is expanded in parallel on a
+ * fork/join pool. The frontier and the visited set are atomic bit sets over the page ids, a page is
+ * claimed by whichever thread sets its visited bit first. The layer a page was reached on is kept
+ * for every page, the predecessors of a page are the pages one layer before it that link to it.
+ * <p>
+ * Each query allocates buffers the size of the snapshot, so this pays off on large graphs where the
+ * layers are wide. Small graphs are better served by {@link SnapshotShortestPathStrategy}.
+ * <p>
+ * The budget is checked between layers, a layer counts as the pages in its frontier.
+ */
+public class ParallelBFSShortestPathStrategy implements ShortestPathStrategy {
+
+    //a task with fewer frontier words than this expands them on its own thread
+    private final static int SEQUENTIAL_WORDS = 16;
+
+    private final GraphSnapshot snapshot;
+    private final ForkJoinPool pool;
+
+    public ParallelBFSShortestPathStrategy(GraphSnapshot snapshot) {
+        this(snapshot,ForkJoinPool.commonPool());
+    }
+
+    public ParallelBFSShortestPathStrategy(GraphSnapshot snapshot, ForkJoinPool pool) {
+        this.snapshot = snapshot;
+        this.pool = pool;
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end) {
+        return getShortestPaths(start,end,SearchBudget.unlimited());
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end, SearchBudget budget) {
+        int source = start.getUniqueId();
+        int target = end.getUniqueId();
+        //the pages were created after the snapshot was taken
+        if(!snapshot.contains(source) || !snapshot.contains(target))
+            return ShortestPaths.none(start,end);
+
+        //deal with edge case when we are travelling to and from the same node
+        if(source == target)
+            return ShortestPaths.self(snapshot.getPage(target));
+
+        if(snapshot.isRemoved(target))
+            return ShortestPaths.none(start,end);
+
+        int size = snapshot.size();
+        AtomicBitSet visited = new AtomicBitSet(size);
+        AtomicBitSet frontier = new AtomicBitSet(size);
+        AtomicBitSet next = new AtomicBitSet(size);
+        int[] layers = new int[size];
+        Arrays.fill(layers,-1);
+
+        visited.set(source);
+        frontier.set(source);
+        layers[source] = 0;
+
+        //the whole layer is finished before the next one starts, so once the target has been
+        //reached every one of its predecessors has been too
+        SearchBudget.Meter meter = budget.start();
+        int layer = 0;
+        int reached = 1;
+        while (reached > 0 && layers[target] < 0) {
+            //every layer up to this one is done and the target isn't in them
+            if(!meter.expand(reached))
+                return ShortestPaths.cutOff(start,end,meter.getStatus(),layer + 1,meter.getExpanded());
+
+            layer++;
+            reached = pool.invoke(new ExpandTask(frontier,next,visited,layers,layer,0,frontier.getWordCount()));
+
+            AtomicBitSet expanded = frontier;
+            frontier = next;
+            next = expanded;
+            next.clear();
+        }
+
+        if(layers[target] < 0)
+            return ShortestPaths.none(start,end,meter.getExpanded());
+
+        Map<Integer,List<Integer>> predecessors = SnapshotShortestPathStrategy.collectPredecessors(snapshot,target,layers);
+        PathDag dag = new PredecessorDag<>(target, predecessors::get, snapshot::getPage, true);
+        return ShortestPaths.of(snapshot.getPage(source), snapshot.getPage(target), layers[target], dag, meter.getExpanded());
+    }
+
+    public GraphSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    //expands the frontier pages held in words [from,to) and returns how many new pages were reached
+    private class ExpandTask extends RecursiveTask<Integer> {
+
+        private final static long serialVersionUID = 1L;
+
+        private final AtomicBitSet frontier;
+        private final AtomicBitSet next;
+        private final AtomicBitSet visited;
+        private final int[] layers;
+        private final int layer;
+        private final int from;
+        private final int to;
+
+        private ExpandTask(AtomicBitSet frontier, AtomicBitSet next, AtomicBitSet visited, int[] layers, int layer, int from, int to) {
+            this.frontier = frontier;
+            this.next = next;
+            this.visited = visited;
+            this.layers = layers;
+            this.layer = layer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if(to - from > SEQUENTIAL_WORDS) {
+                int middle = (from + to) >>> 1;
+                ExpandTask left = new ExpandTask(frontier,next,visited,layers,layer,from,middle);
+                ExpandTask right = new ExpandTask(frontier,next,visited,layers,layer,middle,to);
+                left.fork();
+                int reached = right.compute();
+                return reached + left.join();
+            }
+
+            int reached = 0;
+            for(int word = from; word < to; word++) {
+                long bits = frontier.getWord(word);
+                while (bits != 0) {
+                    int node = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+
+                    int last = snapshot.getOffset(node + 1);
+                    for(int i = snapshot.getOffset(node); i < last; i++) {
+                        int neighbour = snapshot.getTarget(i);
+                        if(visited.get(neighbour) || snapshot.isRemoved(neighbour))
+                            continue;
+
+                        //only the thread that claims the page records it
+                        if(visited.set(neighbour)) {
+                            layers[neighbour] = layer;
+                            next.set(neighbour);
+                            reached++;
+                        }
+                    }
+                }
+            }
+            return reached;
+        }
+    }
+}
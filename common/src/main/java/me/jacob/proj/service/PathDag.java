@@ -0,0 +1,23 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.WikiPage;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The shortest paths found by a search, held as a directed acyclic graph rather than as a list of
+ * paths. The amount of paths can be counted and the paths walked one at a time without ever
+ * holding them all.
+ */
+public interface PathDag {
+
+    BigInteger countPaths();
+
+    //lazily walks every path, each path runs from the start to the end
+    Iterator<List<WikiPage>> paths();
+
+    //whether any of the paths travel through the page
+    boolean contains(int uniqueId);
+}
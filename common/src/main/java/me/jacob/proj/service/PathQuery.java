@@ -0,0 +1,46 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.WikiPage;
+
+import java.util.Objects;
+
+//one request for the shortest paths from the start page to the end page
+public class PathQuery {
+
+    private final WikiPage start;
+    private final WikiPage end;
+
+    public PathQuery(WikiPage start, WikiPage end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public WikiPage getStart() {
+        return start;
+    }
+
+    public WikiPage getEnd() {
+        return end;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PathQuery pathQuery = (PathQuery) o;
+        return Objects.equals(start, pathQuery.start) && Objects.equals(end, pathQuery.end);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return "PathQuery{" +
+                "start=" + start +
+                ", end=" + end +
+                '}';
+    }
+}
@@ -0,0 +1,364 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.util.LatencyRecorder;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Runs shortest path queries on a pool of its own so they can't take over the CPU from the crawler.
+ * A query is admitted only if there is a free thread or room in the queue. When there isn't the
+ * query is either rejected straight away or the caller waits for room, depending on how the service
+ * was built.
+ * <p>
+ * Cancelling a returned future cancels the search through its {@link CancellationToken}, unless the
+ * budget came with a token of its own, in which case cancelling is left to the caller.
+ */
+public class PathQueryService {
+
+    private final Wikipedia wikipedia;
+    private final int threads;
+    private final int queueCapacity;
+    private final boolean waitWhenFull;
+    private final SearchBudget defaultBudget;
+
+    private final ThreadPoolExecutor executor;
+    //one permit for every query that can be running or queued
+    private final Semaphore admission;
+
+    //--- Stats Divider --/
+    private final AtomicInteger queued;
+    private final AtomicInteger active;
+    private final AtomicLong completed;
+    private final AtomicLong rejected;
+    private final AtomicLong failed;
+    private final LatencyRecorder latency;
+    private final LatencyRecorder waitTime;
+
+    private PathQueryService(Builder builder) {
+        this.wikipedia = builder.wikipedia;
+        this.threads = builder.threads;
+        this.queueCapacity = builder.queueCapacity;
+        this.waitWhenFull = builder.waitWhenFull;
+        this.defaultBudget = builder.defaultBudget;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable,"Path-Query-"+threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.admission = new Semaphore(threads + queueCapacity);
+
+        this.queued = new AtomicInteger();
+        this.active = new AtomicInteger();
+        this.completed = new AtomicLong();
+        this.rejected = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.latency = new LatencyRecorder(builder.latencyWindow);
+        this.waitTime = new LatencyRecorder(builder.latencyWindow);
+    }
+
+    public CompletableFuture<ShortestPaths> submit(WikiPage start, WikiPage end) {
+        return submit(start,end,defaultBudget);
+    }
+
+    public CompletableFuture<ShortestPaths> submit(WikiPage start, WikiPage end, SearchBudget budget) {
+        return submit(budget, b -> wikipedia.getShortestPaths(start,end,b));
+    }
+
+    public CompletableFuture<List<ShortestPaths>> submitAll(List<PathQuery> queries) {
+        return submitAll(queries,defaultBudget);
+    }
+
+    /**
+     * A batch is admitted as one query however many queries it holds, so it takes one permit and
+     * one thread. Queries that share a start page are answered by one search and the groups are
+     * searched one after another, each with the whole budget. The answers are in the same order as
+     * the queries. Cancelling the batch stops the group being searched and the rest are skipped.
+     */
+    public CompletableFuture<List<ShortestPaths>> submitAll(List<PathQuery> queries, SearchBudget budget) {
+        return submit(budget, b -> answerAll(queries,b));
+    }
+
+    private List<ShortestPaths> answerAll(List<PathQuery> queries, SearchBudget budget) {
+        Map<WikiPage,List<Integer>> groups = new LinkedHashMap<>();
+        for(int i = 0; i < queries.size(); i++) {
+            groups.computeIfAbsent(queries.get(i).getStart(), k -> new ArrayList<>()).add(i);
+        }
+
+        ShortestPaths[] result = new ShortestPaths[queries.size()];
+        CancellationToken token = budget.getToken();
+        for(List<Integer> group : groups.values()) {
+            if(token != null && token.isCancelled())
+                throw new CancellationException("Path query batch was cancelled");
+
+            List<PathQuery> groupQueries = new ArrayList<>(group.size());
+            for(int index : group) {
+                groupQueries.add(queries.get(index));
+            }
+
+            List<ShortestPaths> answers = wikipedia.getShortestPaths(groupQueries,budget);
+            for(int i = 0; i < group.size(); i++) {
+                result[group.get(i)] = answers.get(i);
+            }
+        }
+        return Arrays.asList(result);
+    }
+
+    private <T> CompletableFuture<T> submit(SearchBudget budget, Function<SearchBudget,T> query) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if(!admit()) {
+            rejected.incrementAndGet();
+            future.completeExceptionally(new RejectedExecutionException("Path query service is saturated, "+
+                    threads+" running and "+queueCapacity+" queued"));
+            return future;
+        }
+
+        CancellationToken token = budget.getToken();
+        if(token == null) {
+            CancellationToken owned = new CancellationToken();
+            budget = budget.withToken(owned);
+            //the search notices at its next budget check
+            future.whenComplete((answer, e) -> {
+                if(future.isCancelled())
+                    owned.cancel();
+            });
+        }
+
+        queued.incrementAndGet();
+        QueryTask<T> task = new QueryTask<>(future,budget,query);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            //the service has been shut down
+            queued.decrementAndGet();
+            admission.release();
+            rejected.incrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private boolean admit() {
+        if(!waitWhenFull)
+            return admission.tryAcquire();
+
+        try {
+            admission.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    //queries that have not started are failed, the ones already running are left to finish, they are
+    //not interrupted since a query blocked on a database would be aborted part way through
+    public void shutdown() {
+        executor.shutdown();
+        List<Runnable> waiting = new ArrayList<>();
+        executor.getQueue().drainTo(waiting);
+        for(Runnable runnable : waiting) {
+            QueryTask<?> task = (QueryTask<?>) runnable;
+            queued.decrementAndGet();
+            admission.release();
+            task.future.completeExceptionally(new CancellationException("Path query service was shut down"));
+        }
+    }
+
+    public boolean isShutDown() {
+        return executor.isShutdown();
+    }
+
+    public Wikipedia getWikipedia() {
+        return wikipedia;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public boolean isWaitWhenFull() {
+        return waitWhenFull;
+    }
+
+    public SearchBudget getDefaultBudget() {
+        return defaultBudget;
+    }
+
+    //the amount of admitted queries waiting for a thread
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    //from submission until the answer is ready, the time spent queued included
+    public LatencyRecorder getLatency() {
+        return latency;
+    }
+
+    //from submission until a thread picks the query up
+    public LatencyRecorder getWaitTime() {
+        return waitTime;
+    }
+
+    @Override
+    public String toString() {
+        return "PathQueryService{" +
+                "threads=" + threads +
+                ", queueDepth=" + getQueueDepth() + "/" + queueCapacity +
+                ", active=" + getActive() +
+                ", completed=" + getCompleted() +
+                ", rejected=" + getRejected() +
+                ", failed=" + getFailed() +
+                ", latency={" + latency + "}" +
+                ", wait={" + waitTime + "}" +
+                '}';
+    }
+
+    private class QueryTask<T> implements Runnable {
+
+        private final CompletableFuture<T> future;
+        private final SearchBudget budget;
+        private final Function<SearchBudget,T> query;
+        private final long submitted;
+
+        private QueryTask(CompletableFuture<T> future, SearchBudget budget, Function<SearchBudget,T> query) {
+            this.future = future;
+            this.budget = budget;
+            this.query = query;
+            this.submitted = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            queued.decrementAndGet();
+            try {
+                //cancelled while it was waiting
+                if(future.isDone())
+                    return;
+
+                waitTime.record(System.nanoTime() - submitted);
+                active.incrementAndGet();
+                try {
+                    future.complete(query.apply(budget));
+                    completed.incrementAndGet();
+                } catch (Throwable e) {
+                    failed.incrementAndGet();
+                    future.completeExceptionally(e);
+                } finally {
+                    active.decrementAndGet();
+                }
+                latency.record(System.nanoTime() - submitted);
+            } finally {
+                admission.release();
+            }
+        }
+    }
+
+    public static class Builder {
+        private final Wikipedia wikipedia;
+        private int threads;
+        private int queueCapacity;
+        private boolean waitWhenFull;
+        private SearchBudget defaultBudget;
+        private int latencyWindow;
+
+        public Builder(Wikipedia wikipedia) {
+            this.wikipedia = wikipedia;
+
+            //leave the other half of the cores to the crawler
+            this.threads = Math.max(1,Runtime.getRuntime().availableProcessors() / 2);
+            this.queueCapacity = 64;
+            this.waitWhenFull = false;
+            this.defaultBudget = SearchBudget.unlimited();
+            this.latencyWindow = 1024;
+        }
+
+        public Wikipedia getWikipedia() {
+            return wikipedia;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public Builder setThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public Builder setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public boolean isWaitWhenFull() {
+            return waitWhenFull;
+        }
+
+        //true to make the caller wait for room when the queue is full, false to reject the query
+        public Builder setWaitWhenFull(boolean waitWhenFull) {
+            this.waitWhenFull = waitWhenFull;
+            return this;
+        }
+
+        public SearchBudget getDefaultBudget() {
+            return defaultBudget;
+        }
+
+        public Builder setDefaultBudget(SearchBudget defaultBudget) {
+            this.defaultBudget = defaultBudget;
+            return this;
+        }
+
+        public int getLatencyWindow() {
+            return latencyWindow;
+        }
+
+        //the amount of recent queries the percentiles are worked out from
+        public Builder setLatencyWindow(int latencyWindow) {
+            this.latencyWindow = latencyWindow;
+            return this;
+        }
+
+        public PathQueryService build() {
+            if(threads <= 0)
+                throw new IllegalArgumentException("threads must be positive");
+
+            if(queueCapacity < 0)
+                throw new IllegalArgumentException("queue capacity must not be negative");
+
+            return new PathQueryService(this);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.WikiPage;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The predecessor graph left behind by a BFS. Following the predecessors back from the target
+ * always ends at the root of the search, every such walk is a shortest path. The root is the node
+ * with no predecessors.
+ *
+ * @param <N> the node type used by the search
+ */
+public class PredecessorDag<N> implements PathDag {
+
+    private final N target;
+    private final Function<N,? extends Collection<N>> prev;
+    private final Function<N,WikiPage> toPage;
+    private final boolean rootFirst;
+
+    /**
+     * @param rootFirst true if the paths should run from the root to the target, this is the case for
+     *                  a forward search. A backward search has the end of the path as its root.
+     */
+    public PredecessorDag(N target, Function<N,? extends Collection<N>> prev, Function<N,WikiPage> toPage, boolean rootFirst) {
+        this.target = target;
+        this.prev = prev;
+        this.toPage = toPage;
+        this.rootFirst = rootFirst;
+    }
+
+    @Override
+    public BigInteger countPaths() {
+        //paths(node) = sum of paths(p) over the predecessors p of the node, worked out bottom up
+        //with an explicit stack so long paths can't overflow the call stack
+        Map<N,BigInteger> counts = new HashMap<>();
+        Deque<N> stack = new ArrayDeque<>();
+        stack.push(target);
+        while (!stack.isEmpty()) {
+            N node = stack.peek();
+            if(counts.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+
+            Collection<N> predecessors = prev.apply(node);
+            BigInteger count = predecessors.isEmpty() ? BigInteger.ONE : BigInteger.ZERO;
+            boolean ready = true;
+            for(N predecessor : predecessors) {
+                BigInteger found = counts.get(predecessor);
+                if(found==null) {
+                    stack.push(predecessor);
+                    ready = false;
+                } else if(ready) {
+                    count = count.add(found);
+                }
+            }
+
+            if(ready) {
+                counts.put(node,count);
+                stack.pop();
+            }
+        }
+
+        return counts.get(target);
+    }
+
+    @Override
+    public Iterator<List<WikiPage>> paths() {
+        return new PathIterator();
+    }
+
+    @Override
+    public boolean contains(int uniqueId) {
+        Set<N> visited = new HashSet<>();
+        Deque<N> stack = new ArrayDeque<>();
+        stack.push(target);
+        visited.add(target);
+        while (!stack.isEmpty()) {
+            N node = stack.pop();
+            if(toPage.apply(node).getUniqueId() == uniqueId)
+                return true;
+
+            for(N predecessor : prev.apply(node)) {
+                if(visited.add(predecessor))
+                    stack.push(predecessor);
+            }
+        }
+        return false;
+    }
+
+    //depth first walk of the predecessors that stops every time the root is reached
+    private class PathIterator implements Iterator<List<WikiPage>> {
+
+        //the current path, the root is on top
+        private final Deque<N> nodes;
+        //the remaining predecessors of every node on the path but the root
+        private final Deque<Iterator<? extends N>> branches;
+        private List<WikiPage> next;
+
+        private PathIterator() {
+            this.nodes = new ArrayDeque<>();
+            this.branches = new ArrayDeque<>();
+            descend(target);
+        }
+
+        private void descend(N node) {
+            while (true) {
+                nodes.push(node);
+                Iterator<? extends N> predecessors = prev.apply(node).iterator();
+                if(!predecessors.hasNext()) {
+                    next = toPath();
+                    return;
+                }
+
+                branches.push(predecessors);
+                node = predecessors.next();
+            }
+        }
+
+        private void advance() {
+            next = null;
+            nodes.pop();
+            //backtrack until a node has a predecessor left to try
+            while (!branches.isEmpty()) {
+                Iterator<? extends N> predecessors = branches.peek();
+                if(predecessors.hasNext()) {
+                    descend(predecessors.next());
+                    return;
+                }
+
+                branches.pop();
+                nodes.pop();
+            }
+        }
+
+        private List<WikiPage> toPath() {
+            List<WikiPage> path = new ArrayList<>(nodes.size());
+            Iterator<N> iterator = rootFirst ? nodes.iterator() : nodes.descendingIterator();
+            while (iterator.hasNext()) {
+                path.add(toPage.apply(iterator.next()));
+            }
+            return path;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public List<WikiPage> next() {
+            if(next==null)
+                throw new NoSuchElementException();
+
+            List<WikiPage> path = next;
+            advance();
+            return path;
+        }
+    }
+}
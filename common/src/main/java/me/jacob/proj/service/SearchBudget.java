@@ -0,0 +1,162 @@
+package me.jacob.proj.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The limits a shortest path search runs under: a time limit, a limit on the amount of pages
+ * expanded and a token the caller can cancel the search with. A budget can be shared between
+ * searches, every search measures its own use of it through a {@link Meter}.
+ */
+public class SearchBudget {
+
+    //the amount of expansions between checks of the clock and the token
+    private final static int CHECK_INTERVAL = 64;
+    private final static SearchBudget UNLIMITED = new SearchBudget(-1,-1,null);
+
+    private final long timeout;
+    private final long maxExpansions;
+    private final CancellationToken token;
+
+    private SearchBudget(long timeout, long maxExpansions, CancellationToken token) {
+        this.timeout = timeout;
+        this.maxExpansions = maxExpansions;
+        this.token = token;
+    }
+
+    public static SearchBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    public static SearchBudget of(long timeout, TimeUnit unit) {
+        return UNLIMITED.withTimeout(timeout,unit);
+    }
+
+    public SearchBudget withTimeout(long timeout, TimeUnit unit) {
+        return new SearchBudget(unit.toNanos(timeout),maxExpansions,token);
+    }
+
+    public SearchBudget withMaxExpansions(long maxExpansions) {
+        return new SearchBudget(timeout,maxExpansions,token);
+    }
+
+    public SearchBudget withToken(CancellationToken token) {
+        return new SearchBudget(timeout,maxExpansions,token);
+    }
+
+    public boolean isUnlimited() {
+        return timeout < 0 && maxExpansions < 0 && token == null;
+    }
+
+    //the timeout in nanoseconds or -1 if there is none
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public long getMaxExpansions() {
+        return maxExpansions;
+    }
+
+    public CancellationToken getToken() {
+        return token;
+    }
+
+    //the clock starts when the meter is made
+    public Meter start() {
+        return new Meter();
+    }
+
+    @Override
+    public String toString() {
+        return "SearchBudget{" +
+                "timeout=" + (timeout < 0 ? "none" : TimeUnit.NANOSECONDS.toMillis(timeout) + "ms") +
+                ", maxExpansions=" + (maxExpansions < 0 ? "none" : String.valueOf(maxExpansions)) +
+                ", cancellable=" + (token != null) +
+                '}';
+    }
+
+    //one search's use of the budget, it is not thread safe
+    public class Meter {
+
+        private final long deadline;
+        private long expanded;
+        private SearchStatus status;
+
+        private Meter() {
+            this.deadline = timeout < 0 ? Long.MAX_VALUE : System.nanoTime() + timeout;
+            this.expanded = 0;
+            this.status = SearchStatus.COMPLETE;
+            if(token != null && token.isCancelled())
+                status = SearchStatus.CANCELLED;
+        }
+
+        //counts one more page expanded, false once the budget has run out
+        public boolean expand() {
+            if(status != SearchStatus.COMPLETE)
+                return false;
+
+            expanded++;
+            if(maxExpansions >= 0 && expanded > maxExpansions) {
+                status = SearchStatus.EXPANSION_LIMIT;
+            } else if(expanded % CHECK_INTERVAL == 0) {
+                check();
+            }
+            return status == SearchStatus.COMPLETE;
+        }
+
+        //counts a whole layer of pages before it is expanded, for searches that check the budget
+        //between layers. A layer that would go over the limit is not counted
+        public boolean expand(long pages) {
+            if(status != SearchStatus.COMPLETE)
+                return false;
+
+            if(maxExpansions >= 0 && expanded + pages > maxExpansions) {
+                status = SearchStatus.EXPANSION_LIMIT;
+            } else {
+                expanded += pages;
+                check();
+            }
+            return status == SearchStatus.COMPLETE;
+        }
+
+        //what is left of the budget, for a search run as part of this one, charge it the result after
+        public SearchBudget remaining() {
+            long left = timeout < 0 ? -1 : Math.max(0,deadline - System.nanoTime());
+            long expansions = maxExpansions < 0 ? -1 : Math.max(0,maxExpansions - expanded);
+            return new SearchBudget(left,expansions,token);
+        }
+
+        //counts the pages a search run on the remaining budget expanded, and takes on its cut off
+        public void charge(ShortestPaths paths) {
+            expanded += Math.max(0,paths.getExpanded());
+            if(status != SearchStatus.COMPLETE)
+                return;
+
+            if(paths.getStatus().isCutOff()) {
+                status = paths.getStatus();
+            } else {
+                check();
+            }
+        }
+
+        private void check() {
+            if(token != null && token.isCancelled()) {
+                status = SearchStatus.CANCELLED;
+            } else if(timeout >= 0 && System.nanoTime() - deadline > 0) {
+                status = SearchStatus.DEADLINE;
+            }
+        }
+
+        public boolean isCutOff() {
+            return status.isCutOff();
+        }
+
+        public SearchStatus getStatus() {
+            return status;
+        }
+
+        //the pages expanded within the budget
+        public long getExpanded() {
+            return maxExpansions >= 0 ? Math.min(expanded,maxExpansions) : expanded;
+        }
+    }
+}
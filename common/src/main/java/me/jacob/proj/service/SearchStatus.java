@@ -0,0 +1,18 @@
+package me.jacob.proj.service;
+
+//how a shortest path search ended
+public enum SearchStatus {
+
+    //the search ran to the end, either the paths were found or there are none
+    COMPLETE,
+    //the time budget ran out
+    DEADLINE,
+    //the search expanded as many pages as it was allowed to
+    EXPANSION_LIMIT,
+    //the caller cancelled the search
+    CANCELLED;
+
+    public boolean isCutOff() {
+        return this != COMPLETE;
+    }
+}
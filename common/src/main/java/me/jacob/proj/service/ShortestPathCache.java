@@ -0,0 +1,130 @@
+package me.jacob.proj.service;
+
+import java.util.*;
+
+/**
+ * A bounded, least recently used cache of shortest path answers keyed by the unique ids of the
+ * start and end page. Every invalidation moves the cache to a new version. An answer is only stored
+ * if the version has not moved since the query started, so an answer worked out while the graph
+ * was changing is never cached.
+ */
+public class ShortestPathCache {
+
+    private final int capacity;
+    private final Map<Long,ShortestPaths> entries;
+    private long version;
+
+    //--- Stats Divider --/
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    public ShortestPathCache(int capacity) {
+        if(capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative");
+
+        this.capacity = capacity;
+        this.version = 0;
+        this.entries = new LinkedHashMap<>(16,0.75f,true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ShortestPaths> eldest) {
+                if(size() > ShortestPathCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized ShortestPaths get(int start, int end) {
+        ShortestPaths paths = entries.get(key(start,end));
+        if(paths==null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return paths;
+    }
+
+    //the version should be read before the query is run
+    public synchronized ShortestPaths put(int start, int end, ShortestPaths paths, long version) {
+        //a cut off search says nothing final, the next query may have more budget
+        if(version == this.version && capacity > 0 && !paths.isCutOff())
+            entries.put(key(start,end),paths);
+
+        return paths;
+    }
+
+    //the links of the graph have changed, any answer could be wrong
+    public synchronized void invalidateAll() {
+        version++;
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    //the page has been removed, only answers that travel through the page can be affected
+    public synchronized void invalidate(int uniqueId) {
+        version++;
+        Iterator<ShortestPaths> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if(iterator.next().travelsThrough(uniqueId)) {
+                iterator.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    private long key(int start, int end) {
+        return ((long) start << 32) | (end & 0xFFFFFFFFL);
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    public synchronized double getHitRatio() {
+        long total = hits + misses;
+        if(total==0)
+            return 0;
+
+        return ((double) hits) / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ShortestPathCache{" +
+                "size=" + entries.size() +
+                ", capacity=" + capacity +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", invalidations=" + invalidations +
+                '}';
+    }
+}
@@ -2,9 +2,53 @@ package me.jacob.proj.service;
 
 import me.jacob.proj.model.WikiPage;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public interface ShortestPathStrategy {
 
-    List<List<WikiPage>> getShortestPaths(WikiPage start, WikiPage end);
+    ShortestPaths getShortestPaths(WikiPage start, WikiPage end);
+
+    //strategies that can stop part way through a search should override this, by default only a
+    //search cancelled before it starts is cut off
+    default ShortestPaths getShortestPaths(WikiPage start, WikiPage end, SearchBudget budget) {
+        SearchBudget.Meter meter = budget.start();
+        if(meter.isCutOff())
+            return ShortestPaths.cutOff(start,end,meter.getStatus(),start.equals(end) ? 0 : 1,0);
+
+        return getShortestPaths(start,end);
+    }
+
+    //the amount of links on a shortest path or -1 if there is none, strategies backed by a distance
+    //index can answer this without finding the paths
+    default int getDistance(WikiPage start, WikiPage end) {
+        return getShortestPaths(start,end).getDistance();
+    }
+
+    //the answers are in the same order as the ends. Strategies that can reach every end with one
+    //search from the start should override this
+    default List<ShortestPaths> getShortestPaths(WikiPage start, List<WikiPage> ends) {
+        List<ShortestPaths> result = new ArrayList<>(ends.size());
+        for(WikiPage end : ends) {
+            result.add(getShortestPaths(start,end));
+        }
+        return result;
+    }
+
+    //the whole batch runs under the one budget, each end is searched for with what the ends before it left
+    default List<ShortestPaths> getShortestPaths(WikiPage start, List<WikiPage> ends, SearchBudget budget) {
+        SearchBudget.Meter meter = budget.start();
+        List<ShortestPaths> result = new ArrayList<>(ends.size());
+        for(WikiPage end : ends) {
+            if(meter.isCutOff()) {
+                result.add(ShortestPaths.cutOff(start,end,meter.getStatus(),start.equals(end) ? 0 : 1,0));
+                continue;
+            }
+
+            ShortestPaths paths = getShortestPaths(start,end,meter.remaining());
+            meter.charge(paths);
+            result.add(paths);
+        }
+        return result;
+    }
 }
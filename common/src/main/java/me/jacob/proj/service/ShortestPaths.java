@@ -0,0 +1,153 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.WikiPage;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The answer to a shortest path query. The distance and the amount of shortest paths are known
+ * without listing the paths, the paths themselves are only built as they are iterated.
+ * <p>
+ * A search that ran out of its {@link SearchBudget} is cut off. It has no paths, only a lower bound
+ * on the distance from the part of the graph it did search.
+ */
+public class ShortestPaths implements Iterable<List<WikiPage>> {
+
+    private final WikiPage start;
+    private final WikiPage end;
+    private final int distance;
+    private final PathDag dag;
+    private final SearchStatus status;
+    private final int lowerBound;
+    private final long expanded;
+    private BigInteger pathCount;
+
+    private ShortestPaths(WikiPage start, WikiPage end, int distance, PathDag dag, SearchStatus status, int lowerBound, long expanded) {
+        this.start = start;
+        this.end = end;
+        this.distance = distance;
+        this.dag = dag;
+        this.status = status;
+        this.lowerBound = lowerBound;
+        this.expanded = expanded;
+    }
+
+    public static ShortestPaths of(WikiPage start, WikiPage end, int distance, PathDag dag) {
+        return of(start,end,distance,dag,-1);
+    }
+
+    public static ShortestPaths of(WikiPage start, WikiPage end, int distance, PathDag dag, long expanded) {
+        return new ShortestPaths(start,end,distance,dag,SearchStatus.COMPLETE,distance,expanded);
+    }
+
+    //no path exists from the start to the end
+    public static ShortestPaths none(WikiPage start, WikiPage end) {
+        return none(start,end,-1);
+    }
+
+    public static ShortestPaths none(WikiPage start, WikiPage end, long expanded) {
+        return new ShortestPaths(start,end,-1,null,SearchStatus.COMPLETE,-1,expanded);
+    }
+
+    //travelling to and from the same page
+    public static ShortestPaths self(WikiPage page) {
+        PathDag dag = new PredecessorDag<>(page, p -> Collections.emptyList(), p -> p, true);
+        return of(page,page,0,dag,0);
+    }
+
+    //the search ran out of budget, any path is at least lowerBound links long
+    public static ShortestPaths cutOff(WikiPage start, WikiPage end, SearchStatus status, int lowerBound, long expanded) {
+        return new ShortestPaths(start,end,-1,null,status,lowerBound,expanded);
+    }
+
+    public WikiPage getStart() {
+        return start;
+    }
+
+    public WikiPage getEnd() {
+        return end;
+    }
+
+    public boolean exists() {
+        return dag != null;
+    }
+
+    //the amount of links on a shortest path or -1 if there is no path or the search was cut off
+    public int getDistance() {
+        return distance;
+    }
+
+    public SearchStatus getStatus() {
+        return status;
+    }
+
+    public boolean isCutOff() {
+        return status.isCutOff();
+    }
+
+    //the least the distance can be, this is the distance itself for a complete search with a path
+    public int getLowerBound() {
+        return lowerBound;
+    }
+
+    //the amount of pages the search expanded, -1 if the strategy doesn't count them
+    public long getExpanded() {
+        return expanded;
+    }
+
+    public synchronized BigInteger getPathCount() {
+        if(pathCount==null)
+            pathCount = dag == null ? BigInteger.ZERO : dag.countPaths();
+
+        return pathCount;
+    }
+
+    @Override
+    public Iterator<List<WikiPage>> iterator() {
+        if(dag==null)
+            return Collections.emptyIterator();
+
+        return dag.paths();
+    }
+
+    public Stream<List<WikiPage>> stream() {
+        return StreamSupport.stream(spliterator(),false);
+    }
+
+    //the first paths, at most limit of them
+    public List<List<WikiPage>> getPaths(int limit) {
+        List<List<WikiPage>> paths = new ArrayList<>();
+        Iterator<List<WikiPage>> iterator = iterator();
+        while (iterator.hasNext() && paths.size() < limit) {
+            paths.add(iterator.next());
+        }
+        return paths;
+    }
+
+    public boolean travelsThrough(int uniqueId) {
+        return dag != null && dag.contains(uniqueId);
+    }
+
+    @Override
+    public String toString() {
+        if(isCutOff()) {
+            return "ShortestPaths{" +
+                    "start=" + start +
+                    ", end=" + end +
+                    ", status=" + status +
+                    ", lowerBound=" + lowerBound +
+                    ", expanded=" + expanded +
+                    '}';
+        }
+
+        return "ShortestPaths{" +
+                "start=" + start +
+                ", end=" + end +
+                ", distance=" + distance +
+                ", paths=" + getPaths(10) +
+                '}';
+    }
+}
@@ -0,0 +1,169 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.GraphSnapshot;
+import me.jacob.proj.model.WikiPage;
+
+import java.util.*;
+
+/**
+ * Runs BFS over a {@link GraphSnapshot}. The search only touches int arrays, nothing is allocated
+ * per link visited. The distance array doubles as the predecessor record, a page u comes before v
+ * on a shortest path if u links to v and u is exactly one layer closer to the start.
+ */
+public class SnapshotShortestPathStrategy implements ShortestPathStrategy {
+
+    private final GraphSnapshot snapshot;
+    private final ThreadLocal<Scratch> scratch;
+
+    public SnapshotShortestPathStrategy(GraphSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(snapshot.size()));
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end) {
+        return getShortestPaths(start,end,SearchBudget.unlimited());
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end, SearchBudget budget) {
+        return getShortestPaths(start,Collections.singletonList(end),budget).get(0);
+    }
+
+    @Override
+    public List<ShortestPaths> getShortestPaths(WikiPage start, List<WikiPage> ends) {
+        return getShortestPaths(start,ends,SearchBudget.unlimited());
+    }
+
+    //one search from the start answers every end, it stops as soon as the last end is reached
+    @Override
+    public List<ShortestPaths> getShortestPaths(WikiPage start, List<WikiPage> ends, SearchBudget budget) {
+        int source = start.getUniqueId();
+        BitSet wanted = new BitSet();
+        //the pages may have been created after the snapshot was taken
+        if(snapshot.contains(source)) {
+            for(WikiPage end : ends) {
+                int target = end.getUniqueId();
+                if(target != source && snapshot.contains(target) && !snapshot.isRemoved(target))
+                    wanted.set(target);
+            }
+        }
+        int remaining = wanted.cardinality();
+
+        List<ShortestPaths> result = new ArrayList<>(ends.size());
+        if(remaining == 0) {
+            for(WikiPage end : ends) {
+                //deal with edge case when we are travelling to and from the same node
+                if(snapshot.contains(source) && end.getUniqueId() == source) {
+                    result.add(ShortestPaths.self(snapshot.getPage(source)));
+                } else {
+                    result.add(ShortestPaths.none(start,end,0));
+                }
+            }
+            return result;
+        }
+
+        SearchBudget.Meter meter = budget.start();
+
+        Scratch scratch = this.scratch.get();
+        int[] dist = scratch.dist;
+        int[] queue = scratch.queue;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        dist[source] = 0;
+        //the distance of the last page expanded, every page up to it has been reached
+        int reached = 0;
+
+        try {
+            //every page a layer before an end has been reached by the time the end is reached, so
+            //the search can stop as soon as the last end is found
+            while (head < tail && remaining > 0 && meter.expand()) {
+                int node = queue[head++];
+                reached = dist[node];
+                int last = snapshot.getOffset(node + 1);
+                for (int i = snapshot.getOffset(node); i < last; i++) {
+                    int neighbour = snapshot.getTarget(i);
+                    if (dist[neighbour] >= 0 || snapshot.isRemoved(neighbour))
+                        continue;
+
+                    dist[neighbour] = dist[node] + 1;
+                    queue[tail++] = neighbour;
+                    if(wanted.get(neighbour))
+                        remaining--;
+                }
+            }
+
+            for(WikiPage end : ends) {
+                //an end that was reached before the search was cut off is still exact
+                int target = end.getUniqueId();
+                if(meter.isCutOff() && wanted.get(target) && dist[target] < 0) {
+                    result.add(ShortestPaths.cutOff(start,end,meter.getStatus(),reached + 1,meter.getExpanded()));
+                } else {
+                    result.add(toPaths(start,end,dist,meter.getExpanded()));
+                }
+            }
+            return result;
+        } finally {
+            //only reset what we touched so the next query does not pay for the whole graph
+            for (int i = 0; i < tail; i++) {
+                dist[queue[i]] = -1;
+            }
+        }
+    }
+
+    private ShortestPaths toPaths(WikiPage start, WikiPage end, int[] dist, long expanded) {
+        int source = start.getUniqueId();
+        int target = end.getUniqueId();
+        if(source == target)
+            return ShortestPaths.self(snapshot.getPage(target));
+
+        if(!snapshot.contains(target) || dist[target] < 0)
+            return ShortestPaths.none(start,end,expanded);
+
+        //the scratch buffers are reused, so the predecessors are copied out of them
+        Map<Integer,List<Integer>> predecessors = collectPredecessors(snapshot, target, dist);
+        PathDag dag = new PredecessorDag<>(target, predecessors::get, snapshot::getPage, true);
+        return ShortestPaths.of(snapshot.getPage(source), snapshot.getPage(target), dist[target], dag, expanded);
+    }
+
+    //keeps only the part of a finished search that lies on a shortest path to the target
+    static Map<Integer,List<Integer>> collectPredecessors(GraphSnapshot snapshot, int target, int[] dist) {
+        Map<Integer,List<Integer>> predecessors = new HashMap<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(target);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            if(predecessors.containsKey(node))
+                continue;
+
+            List<Integer> prev = new ArrayList<>();
+            int last = snapshot.getInOffset(node + 1);
+            for(int i = snapshot.getInOffset(node); dist[node] > 0 && i < last; i++) {
+                int source = snapshot.getSource(i);
+                if(dist[source] == dist[node] - 1) {
+                    prev.add(source);
+                    stack.push(source);
+                }
+            }
+            predecessors.put(node,prev);
+        }
+        return predecessors;
+    }
+
+    public GraphSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private static class Scratch {
+
+        private final int[] dist;
+        private final int[] queue;
+
+        private Scratch(int size) {
+            this.dist = new int[size];
+            this.queue = new int[size];
+            Arrays.fill(dist,-1);
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.GraphSnapshot;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * An exact distance index over a {@link GraphSnapshot} built with pruned landmark labeling (Akiba,
+ * Iwata and Yoshida). Every page keeps two labels, a list of hubs it can reach with their distances
+ * and a list of hubs that reach it. For any two pages a shortest path passes through a hub found in
+ * both the out label of the start and the in label of the end, so a query is a merge of two sorted
+ * arrays.
+ * <p>
+ * Hubs are processed from the most linked page down. The BFS from each hub stops at every page the
+ * labels built so far already answer correctly, which is what keeps the labels small. This relies
+ * on a few pages lying on most shortest paths as they do on wikipedia, on a graph with links picked
+ * uniformly at random the labels grow to hundreds of hubs per page.
+ * <p>
+ * Removed pages are left out of the labels, a path may start at a removed page but never travel
+ * through it. Distances are held as unsigned bytes so no shortest path may be longer than
+ * {@link #MAX_DISTANCE} links.
+ */
+public class TwoHopIndex {
+
+    public final static int UNREACHABLE = -1;
+    public final static int MAX_DISTANCE = 0xFE;
+
+    //the file name used when the index is stored next to a repository
+    public final static String FILE_NAME = "two-hop.idx";
+    private final static int MAGIC = 0x32484F50;
+    //2 added the fingerprint of the graph
+    private final static int FORMAT_VERSION = 2;
+    private final static long FNV_OFFSET = 0xCBF29CE484222325L;
+    private final static long FNV_PRIME = 0x100000001B3L;
+
+    private final GraphSnapshot snapshot;
+    //the labels of page v are hubs[offsets[v]] to hubs[offsets[v+1]-1], sorted by hub rank
+    private final int[] outOffsets;
+    private final int[] outHubs;
+    private final byte[] outDistances;
+    private final int[] inOffsets;
+    private final int[] inHubs;
+    private final byte[] inDistances;
+
+    private TwoHopIndex(GraphSnapshot snapshot, int[] outOffsets, int[] outHubs, byte[] outDistances,
+                        int[] inOffsets, int[] inHubs, byte[] inDistances) {
+        this.snapshot = snapshot;
+        this.outOffsets = outOffsets;
+        this.outHubs = outHubs;
+        this.outDistances = outDistances;
+        this.inOffsets = inOffsets;
+        this.inHubs = inHubs;
+        this.inDistances = inDistances;
+    }
+
+    public static TwoHopIndex build(GraphSnapshot snapshot) {
+        return new Builder(snapshot).build();
+    }
+
+    //the exact amount of links on a shortest path from a to b, UNREACHABLE if there is none
+    public int distance(int a, int b) {
+        if(!snapshot.contains(a) || !snapshot.contains(b))
+            return UNREACHABLE;
+
+        //deal with edge case when we are travelling to and from the same node
+        if(a == b)
+            return 0;
+
+        if(snapshot.isRemoved(b))
+            return UNREACHABLE;
+
+        if(!snapshot.isRemoved(a))
+            return query(a,b);
+
+        //a removed page is only ever the first page of a path
+        int best = Integer.MAX_VALUE;
+        int last = snapshot.getOffset(a + 1);
+        for(int i = snapshot.getOffset(a); i < last; i++) {
+            int neighbour = snapshot.getTarget(i);
+            if(snapshot.isRemoved(neighbour))
+                continue;
+
+            int distance = neighbour == b ? 0 : query(neighbour,b);
+            if(distance != UNREACHABLE)
+                best = Math.min(best,distance + 1);
+        }
+        return best == Integer.MAX_VALUE ? UNREACHABLE : best;
+    }
+
+    private int query(int a, int b) {
+        int i = outOffsets[a];
+        int iEnd = outOffsets[a + 1];
+        int j = inOffsets[b];
+        int jEnd = inOffsets[b + 1];
+        int best = Integer.MAX_VALUE;
+        while (i < iEnd && j < jEnd) {
+            int hubA = outHubs[i];
+            int hubB = inHubs[j];
+            if(hubA == hubB) {
+                best = Math.min(best,(outDistances[i] & 0xFF) + (inDistances[j] & 0xFF));
+                i++;
+                j++;
+            } else if(hubA < hubB) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return best == Integer.MAX_VALUE ? UNREACHABLE : best;
+    }
+
+    public GraphSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    //the amount of hub entries over every label
+    public long getLabelEntries() {
+        return (long) outHubs.length + inHubs.length;
+    }
+
+    public double getAverageLabelSize() {
+        int pages = Math.max(1,snapshot.size());
+        return getLabelEntries() / (2.0 * pages);
+    }
+
+    public void save(Path file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(snapshot.size());
+            out.writeInt(snapshot.getAmountOfEdges());
+            out.writeLong(fingerprint(snapshot));
+            writeLabels(out,outOffsets,outHubs,outDistances);
+            writeLabels(out,inOffsets,inHubs,inDistances);
+        }
+    }
+
+    /**
+     * Loads an index saved for the given snapshot. The file records the size of the graph it was
+     * built from and a fingerprint of its links and removed pages, an index built from a graph that
+     * has since changed in any of them is rejected and must be rebuilt.
+     */
+    public static TwoHopIndex load(Path file, GraphSnapshot snapshot) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+            if(in.readInt() != MAGIC)
+                throw new IOException("Not a two hop index '"+file+"'");
+
+            int version = in.readInt();
+            if(version != FORMAT_VERSION)
+                throw new IOException("Unsupported two hop index version "+version);
+
+            int size = in.readInt();
+            int edges = in.readInt();
+            long fingerprint = in.readLong();
+            if(size != snapshot.size() || edges != snapshot.getAmountOfEdges() || fingerprint != fingerprint(snapshot))
+                throw new IOException("The two hop index was built from a different graph");
+
+            int[] outOffsets = readInts(in,size + 1);
+            int[] outHubs = readInts(in,outOffsets[size]);
+            byte[] outDistances = readBytes(in,outOffsets[size]);
+            int[] inOffsets = readInts(in,size + 1);
+            int[] inHubs = readInts(in,inOffsets[size]);
+            byte[] inDistances = readBytes(in,inOffsets[size]);
+            return new TwoHopIndex(snapshot,outOffsets,outHubs,outDistances,inOffsets,inHubs,inDistances);
+        }
+    }
+
+    /**
+     * A 64 bit FNV-1a hash of the pages, links and removed flags of the graph. The counts alone
+     * don't change when a page is removed or restored, or relinked to as many other pages.
+     */
+    static long fingerprint(GraphSnapshot snapshot) {
+        long hash = FNV_OFFSET;
+        int size = snapshot.size();
+        for(int id = 0; id < size; id++) {
+            int flags = (snapshot.contains(id) ? 1 : 0) | (snapshot.isRemoved(id) ? 2 : 0);
+            hash = mix(hash,flags);
+            hash = mix(hash,snapshot.getOffset(id));
+        }
+        hash = mix(hash,snapshot.getOffset(size));
+        for(int i = 0; i < snapshot.getAmountOfEdges(); i++) {
+            hash = mix(hash,snapshot.getTarget(i));
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        for(int shift = 24; shift >= 0; shift -= 8) {
+            hash ^= (value >>> shift) & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static void writeLabels(DataOutputStream out, int[] offsets, int[] hubs, byte[] distances) throws IOException {
+        for(int offset : offsets) {
+            out.writeInt(offset);
+        }
+        for(int hub : hubs) {
+            out.writeInt(hub);
+        }
+        out.write(distances);
+    }
+
+    private static int[] readInts(DataInputStream in, int length) throws IOException {
+        int[] values = new int[length];
+        for(int i = 0; i < length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        byte[] values = new byte[length];
+        in.readFully(values);
+        return values;
+    }
+
+    private static class Builder {
+
+        private final GraphSnapshot snapshot;
+        private final int size;
+        //labels while they are being built, hub ranks only ever grow so they stay sorted
+        private final int[][] outHubs;
+        private final byte[][] outDistances;
+        private final int[] outSizes;
+        private final int[][] inHubs;
+        private final byte[][] inDistances;
+        private final int[] inSizes;
+
+        //the distances of the current hub's label indexed by hub rank
+        private final int[] hubDistances;
+        private final int[] dist;
+        private final int[] queue;
+
+        private Builder(GraphSnapshot snapshot) {
+            this.snapshot = snapshot;
+            this.size = snapshot.size();
+            this.outHubs = new int[size][];
+            this.outDistances = new byte[size][];
+            this.outSizes = new int[size];
+            this.inHubs = new int[size][];
+            this.inDistances = new byte[size][];
+            this.inSizes = new int[size];
+            this.hubDistances = new int[size];
+            this.dist = new int[size];
+            this.queue = new int[size];
+            Arrays.fill(hubDistances,Integer.MAX_VALUE);
+            Arrays.fill(dist,-1);
+        }
+
+        private TwoHopIndex build() {
+            int[] order = order();
+            for(int rank = 0; rank < order.length; rank++) {
+                //the labels that reach the hub answer for the pages the hub reaches and the other way around
+                prunedSearch(order[rank],rank,true);
+                prunedSearch(order[rank],rank,false);
+            }
+
+            int[] outOffsets = new int[size + 1];
+            int[] inOffsets = new int[size + 1];
+            for(int id = 0; id < size; id++) {
+                outOffsets[id + 1] = outOffsets[id] + outSizes[id];
+                inOffsets[id + 1] = inOffsets[id] + inSizes[id];
+            }
+
+            int[] outHubs = new int[outOffsets[size]];
+            byte[] outDistances = new byte[outOffsets[size]];
+            int[] inHubs = new int[inOffsets[size]];
+            byte[] inDistances = new byte[inOffsets[size]];
+            for(int id = 0; id < size; id++) {
+                if(outSizes[id] > 0) {
+                    System.arraycopy(this.outHubs[id],0,outHubs,outOffsets[id],outSizes[id]);
+                    System.arraycopy(this.outDistances[id],0,outDistances,outOffsets[id],outSizes[id]);
+                }
+                if(inSizes[id] > 0) {
+                    System.arraycopy(this.inHubs[id],0,inHubs,inOffsets[id],inSizes[id]);
+                    System.arraycopy(this.inDistances[id],0,inDistances,inOffsets[id],inSizes[id]);
+                }
+            }
+
+            return new TwoHopIndex(snapshot,outOffsets,outHubs,outDistances,inOffsets,inHubs,inDistances);
+        }
+
+        //the pages that aren't removed, most linked first
+        private int[] order() {
+            int count = 0;
+            for(int id = 0; id < size; id++) {
+                if(snapshot.contains(id) && !snapshot.isRemoved(id))
+                    count++;
+            }
+
+            long[] keys = new long[count];
+            int index = 0;
+            for(int id = 0; id < size; id++) {
+                if(snapshot.contains(id) && !snapshot.isRemoved(id)) {
+                    long degree = snapshot.getDegree(id) + snapshot.getInDegree(id);
+                    //sort by degree descending then id ascending
+                    keys[index++] = ((Long.MAX_VALUE >> 32) - degree) << 32 | id;
+                }
+            }
+            Arrays.sort(keys);
+
+            int[] order = new int[count];
+            for(int i = 0; i < count; i++) {
+                order[i] = (int) keys[i];
+            }
+            return order;
+        }
+
+        /**
+         * Forwards, every page u the hub reaches gets (hub, d(hub,u)) in its in label unless the
+         * labels already give a distance that short. Backwards, every page that reaches the hub gets
+         * (hub, d(u,hub)) in its out label.
+         */
+        private void prunedSearch(int hub, int rank, boolean forwards) {
+            //the hub side of every query made during the search is the hub's own label
+            int[] hubLabel = forwards ? outHubs[hub] : inHubs[hub];
+            byte[] hubLabelDistances = forwards ? outDistances[hub] : inDistances[hub];
+            int hubLabelSize = forwards ? outSizes[hub] : inSizes[hub];
+            for(int i = 0; i < hubLabelSize; i++) {
+                hubDistances[hubLabel[i]] = hubLabelDistances[i] & 0xFF;
+            }
+
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = hub;
+            dist[hub] = 0;
+            try {
+                while (head < tail) {
+                    int node = queue[head++];
+                    int distance = dist[node];
+                    if(isAnswered(node,distance,forwards))
+                        continue;
+
+                    if(distance > MAX_DISTANCE)
+                        throw new IllegalStateException("shortest path longer than "+MAX_DISTANCE+" links");
+
+                    addLabel(node,rank,distance,forwards);
+                    int first = forwards ? snapshot.getOffset(node) : snapshot.getInOffset(node);
+                    int last = forwards ? snapshot.getOffset(node + 1) : snapshot.getInOffset(node + 1);
+                    for(int i = first; i < last; i++) {
+                        int neighbour = forwards ? snapshot.getTarget(i) : snapshot.getSource(i);
+                        if(dist[neighbour] >= 0 || snapshot.isRemoved(neighbour))
+                            continue;
+
+                        dist[neighbour] = distance + 1;
+                        queue[tail++] = neighbour;
+                    }
+                }
+            } finally {
+                for(int i = 0; i < tail; i++) {
+                    dist[queue[i]] = -1;
+                }
+                for(int i = 0; i < hubLabelSize; i++) {
+                    hubDistances[hubLabel[i]] = Integer.MAX_VALUE;
+                }
+            }
+        }
+
+        //true if the labels built so far already give a path from the hub no longer than the distance
+        private boolean isAnswered(int node, int distance, boolean forwards) {
+            int[] hubs = forwards ? inHubs[node] : outHubs[node];
+            byte[] distances = forwards ? inDistances[node] : outDistances[node];
+            int labelSize = forwards ? inSizes[node] : outSizes[node];
+            for(int i = 0; i < labelSize; i++) {
+                int hubDistance = hubDistances[hubs[i]];
+                if(hubDistance != Integer.MAX_VALUE && hubDistance + (distances[i] & 0xFF) <= distance)
+                    return true;
+            }
+            return false;
+        }
+
+        private void addLabel(int node, int rank, int distance, boolean forwards) {
+            int[][] hubs = forwards ? inHubs : outHubs;
+            byte[][] distances = forwards ? inDistances : outDistances;
+            int[] sizes = forwards ? inSizes : outSizes;
+            if(hubs[node] == null) {
+                hubs[node] = new int[4];
+                distances[node] = new byte[4];
+            } else if(sizes[node] == hubs[node].length) {
+                hubs[node] = Arrays.copyOf(hubs[node],sizes[node] * 2);
+                distances[node] = Arrays.copyOf(distances[node],sizes[node] * 2);
+            }
+            hubs[node][sizes[node]] = rank;
+            distances[node][sizes[node]] = (byte) distance;
+            sizes[node]++;
+        }
+    }
+}
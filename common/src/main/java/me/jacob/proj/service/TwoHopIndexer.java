@@ -0,0 +1,160 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.GraphSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a {@link TwoHopIndex} of the graph in a directory, as {@link TwoHopIndex#FILE_NAME}. Opening
+ * loads the saved index if it was built from a graph of the same shape, otherwise it builds one and
+ * saves it. The distances are exact, so unlike the landmark bounds a stale index is no use: a change
+ * to the graph drops the index at once and a rebuild is run in the background, no sooner than the
+ * minimum interval after the last one. Until it finishes there is no index to answer from.
+ */
+public class TwoHopIndexer {
+
+    private final Supplier<GraphSnapshot> snapshots;
+    private final Path directory;
+    private final long minInterval;
+    private final ScheduledExecutorService executor;
+
+    private volatile TwoHopShortestPathStrategy strategy;
+    //counts the changes, an index built from a snapshot older than the last change is thrown away
+    private long changes;
+    private boolean scheduled;
+    private long lastBuild;
+    private int builds;
+    private boolean loaded;
+
+    public TwoHopIndexer(Supplier<GraphSnapshot> snapshots, Path directory, long minInterval, TimeUnit unit) {
+        this.snapshots = snapshots;
+        this.directory = directory;
+        this.minInterval = unit.toMillis(minInterval);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable,"Two-Hop-Indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.changes = 0;
+        this.scheduled = false;
+        this.lastBuild = 0;
+        this.builds = 0;
+        this.loaded = false;
+    }
+
+    //loads the saved index if it fits the graph, otherwise builds and saves one, on the calling thread
+    public TwoHopIndex open() throws IOException {
+        long seen;
+        synchronized (this) {
+            seen = changes;
+        }
+
+        GraphSnapshot snapshot = snapshots.get();
+        Path file = getFile();
+        if(Files.isRegularFile(file)) {
+            try {
+                TwoHopIndex index = TwoHopIndex.load(file,snapshot);
+                synchronized (this) {
+                    loaded = true;
+                }
+                publish(index,seen);
+                return index;
+            } catch (IOException e) {
+                //built from another graph or unreadable, it is built again below
+            }
+        }
+
+        TwoHopIndex index = TwoHopIndex.build(snapshot);
+        save(index);
+        publish(index,seen);
+        return index;
+    }
+
+    //the graph changed, the index is dropped until the rebuild it schedules is done
+    public synchronized void requestRebuild() {
+        changes++;
+        strategy = null;
+        if(scheduled || executor.isShutdown())
+            return;
+
+        scheduled = true;
+        long delay = Math.max(0,lastBuild + minInterval - System.currentTimeMillis());
+        executor.schedule(this::rebuild,delay,TimeUnit.MILLISECONDS);
+    }
+
+    //builds and saves the index on the calling thread, it is only used if the graph didn't change meanwhile
+    public TwoHopIndex rebuildNow() throws IOException {
+        long seen;
+        synchronized (this) {
+            //a change after this point must schedule a new build
+            scheduled = false;
+            seen = changes;
+        }
+
+        TwoHopIndex index = TwoHopIndex.build(snapshots.get());
+        if(publish(index,seen))
+            save(index);
+        return index;
+    }
+
+    private void rebuild() {
+        try {
+            rebuildNow();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized boolean publish(TwoHopIndex index, long seen) {
+        lastBuild = System.currentTimeMillis();
+        builds++;
+        if(seen != changes)
+            return false;
+
+        strategy = new TwoHopShortestPathStrategy(index);
+        return true;
+    }
+
+    //written beside the old file and moved over it, so a crash never leaves half an index to load
+    private void save(TwoHopIndex index) throws IOException {
+        Files.createDirectories(directory);
+        Path file = getFile();
+        Path temporary = directory.resolve(TwoHopIndex.FILE_NAME + ".tmp");
+        index.save(temporary);
+        Files.move(temporary,file,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    //null while there is no index that is up to date with the graph
+    public TwoHopShortestPathStrategy getStrategy() {
+        return strategy;
+    }
+
+    public TwoHopIndex getIndex() {
+        TwoHopShortestPathStrategy strategy = this.strategy;
+        return strategy == null ? null : strategy.getIndex();
+    }
+
+    public Path getFile() {
+        return directory.resolve(TwoHopIndex.FILE_NAME);
+    }
+
+    //whether the index was loaded from the file when opened rather than built
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized int getBuilds() {
+        return builds;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,92 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.GraphSnapshot;
+import me.jacob.proj.model.WikiPage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers path queries from a {@link TwoHopIndex} without running a search. The distance is a
+ * single label merge. The paths are only worked out as they are read, by walking from the start to
+ * the neighbours that are one link closer to the end.
+ * <p>
+ * The answers are for the graph the index was built from. {@link Wikipedia#enableTwoHopIndex} only
+ * asks it while the index is up to date and {@link #covers} both pages.
+ */
+public class TwoHopShortestPathStrategy implements ShortestPathStrategy {
+
+    private final TwoHopIndex index;
+    private final GraphSnapshot snapshot;
+
+    public TwoHopShortestPathStrategy(TwoHopIndex index) {
+        this.index = index;
+        this.snapshot = index.getSnapshot();
+    }
+
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end) {
+        return getShortestPaths(start,end,SearchBudget.unlimited());
+    }
+
+    //the label merge is the whole search, the budget is checked once before it, counting one expansion
+    @Override
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end, SearchBudget budget) {
+        SearchBudget.Meter meter = budget.start();
+        if(!meter.expand())
+            return ShortestPaths.cutOff(start,end,meter.getStatus(),start.equals(end) ? 0 : 1,meter.getExpanded());
+
+        int source = start.getUniqueId();
+        int target = end.getUniqueId();
+        int distance = index.distance(source,target);
+        if(distance == TwoHopIndex.UNREACHABLE)
+            return ShortestPaths.none(start,end,meter.getExpanded());
+
+        if(distance == 0)
+            return ShortestPaths.self(snapshot.getPage(target));
+
+        //the walk runs from the start, the end is the only page with nothing left to walk to
+        Map<Integer,List<Integer>> successors = new ConcurrentHashMap<>();
+        PathDag dag = new PredecessorDag<>(source,
+                node -> successors.computeIfAbsent(node, k -> closer(k,target)),
+                snapshot::getPage,
+                false);
+        return ShortestPaths.of(snapshot.getPage(source),snapshot.getPage(target),distance,dag,meter.getExpanded());
+    }
+
+    @Override
+    public int getDistance(WikiPage start, WikiPage end) {
+        int distance = index.distance(start.getUniqueId(),end.getUniqueId());
+        return distance == TwoHopIndex.UNREACHABLE ? -1 : distance;
+    }
+
+    //the neighbours of the page that are one link closer to the end
+    private List<Integer> closer(int node, int target) {
+        List<Integer> closer = new ArrayList<>();
+        if(node == target)
+            return closer;
+
+        int distance = index.distance(node,target);
+        int last = snapshot.getOffset(node + 1);
+        for(int i = snapshot.getOffset(node); i < last; i++) {
+            int neighbour = snapshot.getTarget(i);
+            if(snapshot.isRemoved(neighbour))
+                continue;
+
+            if(index.distance(neighbour,target) == distance - 1)
+                closer.add(neighbour);
+        }
+        return closer;
+    }
+
+    //a page created after the index was built is not in it, its queries must be searched
+    public boolean covers(WikiPage page) {
+        return snapshot.contains(page.getUniqueId());
+    }
+
+    public TwoHopIndex getIndex() {
+        return index;
+    }
+}
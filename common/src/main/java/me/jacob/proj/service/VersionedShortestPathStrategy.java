@@ -0,0 +1,32 @@
+package me.jacob.proj.service;
+
+import me.jacob.proj.model.GraphVersions;
+import me.jacob.proj.model.WikiPage;
+
+import java.util.List;
+
+/**
+ * Answers every query from one pinned version of the graph, see {@link GraphVersions}. A query never
+ * takes a repository lock and never sees an update that was only partly applied, crawling carries
+ * on publishing new versions while it runs.
+ */
+public class VersionedShortestPathStrategy extends PageGraphShortestPathStrategy {
+
+    private final GraphVersions versions;
+
+    public VersionedShortestPathStrategy(GraphVersions versions) {
+        this.versions = versions;
+    }
+
+    //every end is searched for in the same version, so the answers agree with each other
+    @Override
+    public List<ShortestPaths> getShortestPaths(WikiPage start, List<WikiPage> ends, SearchBudget budget) {
+        try (GraphVersions.ReadView view = versions.pin()) {
+            return search(view.getGraph(),start,ends,budget);
+        }
+    }
+
+    public GraphVersions getVersions() {
+        return versions;
+    }
+}
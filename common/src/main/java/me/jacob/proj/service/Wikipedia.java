@@ -3,11 +3,17 @@ package me.jacob.proj.service;
 import me.jacob.proj.model.*;
 import me.jacob.proj.model.map.HashMapLinkRepository;
 import me.jacob.proj.model.map.HashMapPageRepository;
+import me.jacob.proj.model.mapped.MappedGraphWriter;
+import me.jacob.proj.model.mapped.MappedPageRepository;
+import me.jacob.proj.model.neo4j.Neo4jPageRepository;
 import me.jacob.proj.util.AtomicIntCounter;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 public class Wikipedia {
 
@@ -17,6 +23,12 @@ public class Wikipedia {
     private final HashMapPageRepository bulkCreate;
     private final ConcurrentMap<CrawlableLink,Object> toSave;
 
+    private ShortestPathStrategy strategy;
+    private ShortestPathCache pathCache;
+    private volatile LandmarkIndexer landmarks;
+    private volatile TwoHopIndexer twoHop;
+    private volatile GraphVersions versions;
+
     /**
      * TODO
      *   - Model
@@ -102,22 +114,250 @@ public class Wikipedia {
         this.repository = repository;
         this.bulkCreate = new HashMapPageRepository(repository::nextUniqueId);
         this.toSave = new ConcurrentHashMap<>();
+        this.strategy = defaultStrategy(repository);
+        this.pathCache = new ShortestPathCache(1000);
     }
 
 
-    public List<List<WikiPage>> getShortestPaths(String a, String b) {
+    //a database that can search its own graph does so in one query rather than one per page
+    private static ShortestPathStrategy defaultStrategy(PageRepository repository) {
+        if(repository instanceof Neo4jPageRepository)
+            return new Neo4jShortestPathStrategy((Neo4jPageRepository) repository);
+
+        //a mapped graph is searched where it lies in the file
+        if(repository instanceof MappedPageRepository)
+            return new PageGraphShortestPathStrategy((MappedPageRepository) repository);
+
+        return new BidirectionalBFSShortestPathStrategy(repository);
+    }
+
+    public ShortestPaths getShortestPaths(String a, String b) {
         WikiPage A = getPage(a);
         WikiPage B = getPage(b);
 
         return getShortestPaths(A,B);
     }
 
-    public List<List<WikiPage>> getShortestPaths(WikiPage start, WikiPage end) {
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end) {
+        return getShortestPaths(start,end,SearchBudget.unlimited());
+    }
+
+    //a search that runs out of budget is cut off with a lower bound on the distance instead of paths
+    public ShortestPaths getShortestPaths(WikiPage start, WikiPage end, SearchBudget budget) {
         if(start == null || end == null)
-            return new ArrayList<>();
+            return ShortestPaths.none(start,end);
+
+        ShortestPaths cached = pathCache.get(start.getUniqueId(),end.getUniqueId());
+        if(cached!=null)
+            return cached;
+
+        //read the version before running the query so an answer racing an update is not cached
+        long version = pathCache.getVersion();
+        ShortestPaths paths = strategyFor(start,end).getShortestPaths(start,end,budget);
+        return pathCache.put(start.getUniqueId(),end.getUniqueId(),paths,version);
+    }
+
+    /**
+     * Answers many queries at once. Queries that share a start page are answered together by one
+     * search from that page and the groups are run in parallel. The answers are in the same order as
+     * the queries.
+     */
+    public List<ShortestPaths> getShortestPaths(List<PathQuery> queries) {
+        return getShortestPaths(queries,SearchBudget.unlimited());
+    }
+
+    //every search in the batch gets the whole budget, a cancelled token stops all of them
+    public List<ShortestPaths> getShortestPaths(List<PathQuery> queries, SearchBudget budget) {
+        ShortestPaths[] result = new ShortestPaths[queries.size()];
+        //read the version before running any query so an answer racing an update is not cached
+        long version = pathCache.getVersion();
+        Map<Integer,List<Integer>> groups = new LinkedHashMap<>();
+        for(int i = 0; i < queries.size(); i++) {
+            PathQuery query = queries.get(i);
+            WikiPage start = query.getStart();
+            WikiPage end = query.getEnd();
+            if(start == null || end == null) {
+                result[i] = ShortestPaths.none(start,end);
+                continue;
+            }
+
+            ShortestPaths cached = pathCache.get(start.getUniqueId(),end.getUniqueId());
+            if(cached!=null) {
+                result[i] = cached;
+            } else {
+                groups.computeIfAbsent(start.getUniqueId(), k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        groups.values().parallelStream().forEach(group -> {
+            WikiPage start = queries.get(group.get(0)).getStart();
+            List<WikiPage> ends = new ArrayList<>(group.size());
+            for(int index : group) {
+                ends.add(queries.get(index).getEnd());
+            }
+
+            ShortestPathStrategy strategy = strategyFor(start,ends);
+            List<ShortestPaths> answers = strategy.getShortestPaths(start,ends,budget);
+            for(int i = 0; i < group.size(); i++) {
+                WikiPage end = ends.get(i);
+                result[group.get(i)] = pathCache.put(start.getUniqueId(),end.getUniqueId(),answers.get(i),version);
+            }
+        });
+
+        return Arrays.asList(result);
+    }
+
+    //the exact amount of links on a shortest path or -1 if there is none
+    public int getDistance(WikiPage start, WikiPage end) {
+        if(start == null || end == null)
+            return -1;
+
+        ShortestPaths cached = pathCache.get(start.getUniqueId(),end.getUniqueId());
+        if(cached!=null)
+            return cached.getDistance();
 
-        ShortestPathStrategy strategy = new BFSShortestPathStrategy();
-        return strategy.getShortestPaths(start,end);
+        return strategyFor(start,end).getDistance(start,end);
+    }
+
+    //the two hop index answers while it is up to date with the graph and knows every page asked about
+    private ShortestPathStrategy strategyFor(WikiPage start, WikiPage end) {
+        return strategyFor(start,Collections.singletonList(end));
+    }
+
+    private ShortestPathStrategy strategyFor(WikiPage start, List<WikiPage> ends) {
+        TwoHopIndexer twoHop = this.twoHop;
+        TwoHopShortestPathStrategy indexed = twoHop == null ? null : twoHop.getStrategy();
+        if(indexed == null || !indexed.covers(start))
+            return strategy;
+
+        for(WikiPage end : ends) {
+            if(!indexed.covers(end))
+                return strategy;
+        }
+        return indexed;
+    }
+
+    public DistanceEstimate estimateDistance(String a, String b) {
+        return estimateDistance(getPage(a),getPage(b));
+    }
+
+    /**
+     * Bounds on the distance between two pages from the landmark index, without running a search.
+     * The bounds hold for the graph as it was when the index was last built. Without an index only
+     * the trivial bounds are known.
+     */
+    public DistanceEstimate estimateDistance(WikiPage start, WikiPage end) {
+        if(start == null || end == null)
+            return DistanceEstimate.unreachable();
+
+        LandmarkIndexer landmarks = this.landmarks;
+        LandmarkIndex index = landmarks == null ? null : landmarks.getIndex();
+        if(index==null)
+            return DistanceEstimate.unknown(start.getUniqueId() == end.getUniqueId());
+
+        return index.estimate(start.getUniqueId(),end.getUniqueId());
+    }
+
+    //starts keeping a landmark index, it is rebuilt in the background at most once every interval as the graph changes
+    public LandmarkIndexer enableLandmarks(int landmarks, long minInterval, TimeUnit unit) {
+        disableLandmarks();
+        LandmarkIndexer indexer = new LandmarkIndexer(repository::snapshot,landmarks,minInterval,unit);
+        this.landmarks = indexer;
+        indexer.requestRebuild();
+        return indexer;
+    }
+
+    public void disableLandmarks() {
+        LandmarkIndexer landmarks = this.landmarks;
+        this.landmarks = null;
+        if(landmarks!=null)
+            landmarks.shutdown();
+    }
+
+    public LandmarkIndexer getLandmarks() {
+        return landmarks;
+    }
+
+    public TwoHopIndexer enableTwoHopIndex(Path directory) throws IOException {
+        return enableTwoHopIndex(directory,30,TimeUnit.SECONDS);
+    }
+
+    /**
+     * Answers path queries from a {@link TwoHopIndex} kept in the directory as two-hop.idx. The saved
+     * index is loaded if it was built from a graph of the same shape, otherwise one is built and saved
+     * before this returns. A change to the links drops the index, queries are searched by the strategy
+     * until it has been rebuilt in the background, at most once every interval.
+     */
+    public TwoHopIndexer enableTwoHopIndex(Path directory, long minInterval, TimeUnit unit) throws IOException {
+        disableTwoHopIndex();
+        publishBulkCreate();
+        TwoHopIndexer indexer = new TwoHopIndexer(repository::snapshot,directory,minInterval,unit);
+        //published before it is opened so a change made while the index is built drops it
+        this.twoHop = indexer;
+        //the build fails with an IllegalStateException on a graph with a path too long to index
+        try {
+            indexer.open();
+        } catch (IOException | RuntimeException e) {
+            disableTwoHopIndex();
+            throw e;
+        }
+        pathCache.invalidateAll();
+        return indexer;
+    }
+
+    public void disableTwoHopIndex() {
+        TwoHopIndexer twoHop = this.twoHop;
+        this.twoHop = null;
+        if(twoHop!=null)
+            twoHop.shutdown();
+    }
+
+    public TwoHopIndexer getTwoHopIndexer() {
+        return twoHop;
+    }
+
+    /**
+     * Starts publishing every change to the links as a new version of the graph and answers path
+     * queries from pinned versions, so a query never waits on the crawler or sees an update half way
+     * through. Changes made while it is being enabled may be missed, enable it before crawling.
+     */
+    public GraphVersions enableVersionedReads() {
+        GraphVersions versions = GraphVersions.of(snapshot());
+        this.versions = versions;
+        setStrategy(new VersionedShortestPathStrategy(versions));
+        return versions;
+    }
+
+    public GraphVersions getVersions() {
+        return versions;
+    }
+
+    //a read optimized copy of the graph, pass it to a SnapshotShortestPathStrategy to serve path queries from it
+    public GraphSnapshot snapshot() {
+        publishBulkCreate();
+        return repository.snapshot();
+    }
+
+    //writes the graph to a file that MappedPageRepository can open without reading it in
+    public void writeSnapshot(Path file) throws IOException {
+        MappedGraphWriter.write(snapshot(),file);
+    }
+
+    public ShortestPathStrategy getStrategy() {
+        return strategy;
+    }
+
+    public void setStrategy(ShortestPathStrategy strategy) {
+        this.strategy = strategy;
+        pathCache.invalidateAll();
+    }
+
+    public ShortestPathCache getPathCache() {
+        return pathCache;
+    }
+
+    public void setPathCache(ShortestPathCache pathCache) {
+        this.pathCache = pathCache;
     }
 
     public Collection<WikiLink> bulkCreate(WikiPage page, Collection<WikiLink> linksFound) {
@@ -125,13 +365,18 @@ public class Wikipedia {
         bulkCreate.createPage(page);
         UpdateStatus status = link(page,linksFound);
         this.toSave.put(status.getPageRegLink(),new Object());
+        publishLinks(page,status.linkedFrom);
+        linksChanged();
         return status.getUnindexed();
     }
 
     public void publishBulkCreate() {
-        bulkCreate.clearAndDo(repository::createPages);
+        Set<WikiPage> published = bulkCreate.clearAndDo(repository::createPages);
         linkService.update(toSave.keySet(),true);
         toSave.clear();
+
+        if(!published.isEmpty())
+            linksChanged();
     }
     //we could also return a create status with more detailed information in the future
     public Collection<WikiLink> create(WikiPage page, Collection<WikiLink> linksFound) {
@@ -139,6 +384,8 @@ public class Wikipedia {
         UpdateStatus update = link(page,linksFound);
         repository.createPage(page);
         linkService.update(update.getPageRegLink(),true);
+        publishLinks(page,update.linkedFrom);
+        linksChanged();
         return update.getUnindexed();
     }
 
@@ -152,6 +399,10 @@ public class Wikipedia {
 
         page.setUniqueId(repository.nextUniqueId());
         repository.createPage(page);
+        if(versions != null)
+            publishLinks(page,repository.getInLinks(page.getUniqueId()));
+        //the page comes with its links and the links to it, a path may now run through it
+        linksChanged();
     }
 
     //we could also return an update status with more detailed information in the future.
@@ -165,23 +416,13 @@ public class Wikipedia {
         if(updateTitle(page,title))
             update = true;
 
-        if(!description.equals(page.getDescription())) {
-            page.setDescription(description);
-            update = true;
-        }
-
-        if(isRedirect != page.isRedirect()) {
-            page.setRedirect(isRedirect);
-            update = true;
-        }
-
-        if(!articleType.equals(page.getArticleType())) {
-            page.setArticleType(articleType);
+        //the details are swapped in together so a reader never sees half of them
+        WikiPage.State state = page.getState();
+        if(!description.equals(state.description()) || isRedirect != state.redirect() || !articleType.equals(state.articleType())) {
+            page.update(s -> s.withDescription(description).withRedirect(isRedirect).withArticleType(articleType));
             update = true;
         }
 
-
-
         if(update) {
             CrawlableLink link = status.getPageRegLink();
             if(link!=null) {
@@ -191,6 +432,12 @@ public class Wikipedia {
             repository.savePage(page,status.updateLinks);
         }
 
+        //a change of title or description can't change an answer, only the links can
+        if(status.updateLinks) {
+            publishLinks(page,status.linkedFrom);
+            linksChanged();
+        }
+
         return status.getUnindexed();
     }
 
@@ -205,16 +452,13 @@ public class Wikipedia {
     }
 
     private UpdateStatus updateLinks(WikiPage page, Collection<WikiLink> linksFound) {
-        Collection<WikiPage> neighbours = page.getNeighbours();
-        if(linksFound.size() != neighbours.size()) {
+        if(linksFound.size() != page.getDegree()) {
             page.clearNeighbours();
             return link(page,linksFound);
         }
 
         Set<WikiLink> linksSet = new HashSet<>(linksFound);
-        for(WikiPage p : neighbours) {
-            linksSet.remove(p.getLink());
-        }
+        page.forEachNeighbour(p -> linksSet.remove(p.getLink()));
 
         //the links are not the same, relink
         if(linksSet.size()!=0) {
@@ -267,7 +511,10 @@ public class Wikipedia {
 
         repository.createPages(unconnected);
 
-        return new UpdateStatus(unindexed,pageRegLink,true);
+        UpdateStatus status = new UpdateStatus(unindexed,pageRegLink,true);
+        if(unconnected != null)
+            status.linkedFrom = unconnected;
+        return status;
     }
 
 
@@ -283,8 +530,77 @@ public class Wikipedia {
         if(page==null)
             return;
 
+        boolean wasRemoved = page.isRemoved();
         page.setRemoved(true);
+        repository.setRemoved(page.getUniqueId(),true);
+        repository.savePage(page,false);
+        publishRemoved(page);
+        //removing a page can only take away paths, so only the answers through the page are affected
+        if(!wasRemoved) {
+            pathCache.invalidate(page.getUniqueId());
+            rebuildIndexes();
+        }
+    }
+
+    //the page was found again after being removed, paths may run through it once more
+    public void restore(WikiPage page) {
+        if(page==null || !page.isRemoved())
+            return;
+
+        page.setRemoved(false);
+        repository.setRemoved(page.getUniqueId(),false);
         repository.savePage(page,false);
+        publishRemoved(page);
+        linksChanged();
+    }
+
+    /**
+     * Publishes the links of a page once the update to them is over, read back whole so the version
+     * never holds them cleared. The pages that gained a link to it only get that one link added,
+     * another writer may be part way through relinking them.
+     */
+    private void publishLinks(WikiPage page, Collection<WikiPage> linkedFrom) {
+        GraphVersions versions = this.versions;
+        if(versions == null)
+            return;
+
+        versions.publish(changes -> {
+            //another writer may add a link while they are read, so there is room for more
+            int[][] targets = {new int[page.getDegree() + 1]};
+            int[] count = {0};
+            page.forEachNeighbourId(id -> {
+                if(count[0] == targets[0].length)
+                    targets[0] = Arrays.copyOf(targets[0],count[0] * 2);
+                targets[0][count[0]++] = id;
+            });
+            changes.putPage(page);
+            changes.setLinks(page.getUniqueId(),targets[0],count[0]);
+            for(WikiPage source : linkedFrom) {
+                changes.putPage(source);
+                changes.addLink(source.getUniqueId(),page.getUniqueId());
+            }
+        });
+    }
+
+    private void publishRemoved(WikiPage page) {
+        GraphVersions versions = this.versions;
+        if(versions != null)
+            versions.publish(changes -> changes.putPage(page));
+    }
+
+    private void linksChanged() {
+        pathCache.invalidateAll();
+        rebuildIndexes();
+    }
+
+    private void rebuildIndexes() {
+        LandmarkIndexer landmarks = this.landmarks;
+        if(landmarks!=null)
+            landmarks.requestRebuild();
+
+        TwoHopIndexer twoHop = this.twoHop;
+        if(twoHop!=null)
+            twoHop.requestRebuild();
     }
 
     public WikiPage getPage(String title) {
@@ -330,6 +646,8 @@ public class Wikipedia {
         private final Collection<WikiLink> unindexed;
         private final CrawlableLink pageRegLink;
         private boolean updateLinks;
+        //the pages that were waiting for this one and now link to it
+        private Collection<WikiPage> linkedFrom = Collections.emptyList();
 
         public UpdateStatus(Collection<WikiLink> unindexed, CrawlableLink pageRegLink, boolean updateLinks) {
             this.unindexed = unindexed;
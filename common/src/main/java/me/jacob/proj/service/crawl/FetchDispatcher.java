@@ -0,0 +1,199 @@
+package me.jacob.proj.service.crawl;
+
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.service.crawl.fetch.DocumentFetcher;
+import me.jacob.proj.util.Poisonable;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Takes the place of the {@link WikiProducer}s. One thread takes links from the crawler and starts
+ * a fetch for each on a thread of its own, so the number of fetches in flight is set by a limit on
+ * permits rather than by how many producers there are. Each fetch runs on a virtual thread where the
+ * JVM has them, otherwise on a cached pool of platform threads.
+ * <p>
+ * Starvation and blocked times mean the same as for a producer: waiting for a link to fetch and
+ * waiting to hand a fetched document to the consumers. Waiting for a permit is kept apart, it is the
+ * time the limit held fetches back.
+ */
+public class FetchDispatcher implements Runnable {
+
+    private final WikiCrawler crawler;
+    private final DocumentFetcher fetcher;
+    private final int maxInFlight;
+    private final Semaphore permits;
+    private final ExecutorService fetches;
+    private final boolean virtual;
+    private boolean running;
+
+    //-- Stats Divider --//
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private int peakInFlight = 0;
+    private int fetched = 0;
+    private long totalStarvationTime = 0;
+    private long totalPermitWaitTime = 0;
+
+    private int placed = 0;
+    private long totalBlockedTime = 0;
+
+    public FetchDispatcher(WikiCrawler crawler, DocumentFetcher fetcher, int maxInFlight) {
+        if(maxInFlight <= 0)
+            throw new IllegalArgumentException("at least one fetch must be allowed in flight");
+
+        this.crawler = crawler;
+        this.fetcher = fetcher;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+        this.virtual = virtualThreads != null;
+        this.fetches = virtual ? virtualThreads : Executors.newCachedThreadPool(new FetchThreadFactory());
+        this.running = false;
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if(running)
+                return;
+
+            running = true;
+        }
+
+        debug("Fetching on " + (virtual ? "virtual threads" : "platform threads") + ", up to " + maxInFlight + " at once");
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long beforeTime = System.nanoTime();
+                permits.acquire();
+                long permitTime = System.nanoTime();
+                Poisonable<WikiLink> taken;
+                try {
+                    taken = crawler.nextLink();
+                } catch (InterruptedException e) {
+                    permits.release();
+                    throw e;
+                }
+                long afterTime = System.nanoTime();
+
+                synchronized (this) {
+                    totalPermitWaitTime += (permitTime - beforeTime);
+                    totalStarvationTime += (afterTime - permitTime);
+                    fetched++;
+                }
+
+                if(taken.isPoisoned()) {
+                    permits.release();
+                    debug("Shutting Down");
+                    return;
+                }
+
+                int now = inFlight.incrementAndGet();
+                synchronized (this) {
+                    peakInFlight = Math.max(peakInFlight,now);
+                }
+                fetches.execute(() -> produce(taken.getItem()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            //the fetches still running would wait forever on consumers that have gone
+            fetches.shutdownNow();
+        }
+    }
+
+    private void produce(WikiLink link) {
+        try {
+            FetchResult result = fetcher.fetch(link);
+            long before = System.nanoTime();
+            crawler.addFetched(result);
+            long after = System.nanoTime();
+
+            synchronized (this) {
+                totalBlockedTime += (after - before);
+                placed++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        } finally {
+            inFlight.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    /**
+     * The executor of Java 21 that starts a virtual thread for every task, looked up by reflection so
+     * the code still builds for older releases. Null where there are no virtual threads, or where
+     * they are a preview that was not enabled.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private void debug(String line) {
+        System.out.println("[Dispatcher] " + line);
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public synchronized int getPeakInFlight() {
+        return peakInFlight;
+    }
+
+    public synchronized int getPlaced() {
+        return placed;
+    }
+
+    public synchronized long getTotalBlockedTime() {
+        return totalBlockedTime;
+    }
+
+    public synchronized int getFetched() {
+        return fetched;
+    }
+
+    public synchronized long getTotalStarvationTime() {
+        return totalStarvationTime;
+    }
+
+    public synchronized long getTotalPermitWaitTime() {
+        return totalPermitWaitTime;
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    private static class FetchThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,"Fetcher-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
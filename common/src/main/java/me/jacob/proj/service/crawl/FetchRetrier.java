@@ -0,0 +1,163 @@
+package me.jacob.proj.service.crawl;
+
+import me.jacob.proj.model.WikiLink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives a link whose fetch failed or was throttled back to the fetchers after a wait, rather than
+ * stashing it until the update sweep comes round. The wait doubles with every retry up to a cap, and
+ * is anywhere from half to all of that, so links that failed together don't all come back together.
+ * A link that has had all its retries is stashed as before.
+ * <p>
+ * The link stays counted in the crawler's size while it waits, a crawl isn't over with retries due.
+ */
+public class FetchRetrier implements Runnable {
+
+    private final WikiCrawler crawler;
+    private final int maxRetries;
+    private final long baseDelay;
+    private final long maxDelay;
+
+    private final DelayQueue<Retry> retries;
+    private final Map<WikiLink,Integer> attempts;
+    private boolean running;
+
+    //-- Stats Divider --//
+    private final AtomicInteger retried = new AtomicInteger();
+    private final AtomicInteger gaveUp = new AtomicInteger();
+
+    public FetchRetrier(WikiCrawler crawler, int maxRetries, Duration baseDelay, Duration maxDelay) {
+        if(maxRetries <= 0)
+            throw new IllegalArgumentException("at least one retry must be allowed");
+
+        this.crawler = crawler;
+        this.maxRetries = maxRetries;
+        this.baseDelay = Math.max(1,baseDelay.toNanos());
+        this.maxDelay = Math.max(this.baseDelay,maxDelay.toNanos());
+        this.retries = new DelayQueue<>();
+        this.attempts = new ConcurrentHashMap<>();
+        this.running = false;
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if(running)
+                return;
+
+            running = true;
+        }
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Retry retry = retries.take();
+                if(retry.link == null) {
+                    debug("Shutting Down");
+                    return;
+                }
+
+                retried.incrementAndGet();
+                crawler.requeue(retry.link);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //false if the link has had all its retries, it should be stashed
+    public boolean retry(WikiLink link) {
+        int attempt = attempts.merge(link,1,Integer::sum);
+        if(attempt > maxRetries) {
+            attempts.remove(link);
+            gaveUp.incrementAndGet();
+            return false;
+        }
+
+        long ceiling = attempt > 62 ? maxDelay : Math.min(maxDelay,baseDelay << (attempt - 1));
+        if(ceiling <= 0)
+            ceiling = maxDelay;
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        retries.put(new Retry(link,System.nanoTime() + delay));
+        return true;
+    }
+
+    //the link was fetched or found not to exist, it starts afresh if it fails again
+    public void settled(WikiLink link) {
+        if(!attempts.isEmpty())
+            attempts.remove(link);
+    }
+
+    //the poison is due at once, so it is taken before any retry still waiting
+    public void stop() {
+        retries.put(new Retry(null,Long.MIN_VALUE));
+    }
+
+    //the links still waiting to be retried, taken out of the queue. The poison is left for the thread
+    public List<WikiLink> drain() {
+        List<WikiLink> links = new ArrayList<>();
+        Iterator<Retry> waiting = retries.iterator();
+        while (waiting.hasNext()) {
+            Retry retry = waiting.next();
+            if(retry.link != null) {
+                links.add(retry.link);
+                waiting.remove();
+            }
+        }
+        return links;
+    }
+
+    private void debug(String line) {
+        System.out.println("[Retrier] " + line);
+    }
+
+    public int getPending() {
+        return retries.size();
+    }
+
+    public int getRetried() {
+        return retried.get();
+    }
+
+    public int getGaveUp() {
+        return gaveUp.get();
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    private static class Retry implements Delayed {
+
+        private final WikiLink link;
+        private final long due;
+
+        private Retry(WikiLink link, long due) {
+            this.link = link;
+            this.due = due;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            //the poison's due time would overflow the subtraction
+            if(due == Long.MIN_VALUE)
+                return Long.MIN_VALUE;
+            return unit.convert(due - System.nanoTime(),TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS),other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
@@ -74,6 +74,7 @@ public class WikiConsumer implements Runnable {
                 WikiPage wikiPage = wikipedia.getPage(document.getWikiLink());
                 if(wikiPage!=null) {
                     debug("Updating "+wikiPage.getTitle());
+                    wikipedia.restore(wikiPage);
                     crawler.update(wikiPage,analyzed,analyzer.getLinks());
                 } else {
                     debug("Creating "+analyzed.getTitle());
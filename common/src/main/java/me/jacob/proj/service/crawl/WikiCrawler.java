@@ -4,6 +4,7 @@ import me.jacob.proj.model.CrawlableLink;
 import me.jacob.proj.model.PageRepository;
 import me.jacob.proj.model.WikiLink;
 import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.model.map.ConcurrentPageRepository;
 import me.jacob.proj.model.map.HashMapLinkRepository;
 import me.jacob.proj.model.map.HashMapPageRepository;
 import me.jacob.proj.model.neo4j.Neo4jLinkRepository;
@@ -18,6 +19,7 @@ import me.jacob.proj.service.crawl.fetch.DocumentFetcher;
 import me.jacob.proj.service.crawl.fetch.FileDocumentFetcher;
 import me.jacob.proj.service.crawl.fetch.TestDocumentFetcher;
 import me.jacob.proj.service.crawl.fetch.WebDocumentFetcher;
+import me.jacob.proj.service.crawl.journal.CrawlJournal;
 import me.jacob.proj.util.AtomicIntCounter;
 import me.jacob.proj.util.Poisonable;
 import me.jacob.proj.util.TestPage;
@@ -27,8 +29,10 @@ import org.neo4j.driver.GraphDatabase;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
@@ -49,6 +53,9 @@ public class WikiCrawler {
     private int size = 0;
 
     private final int noOfProducers;
+    private final int maxInFlightFetches;
+    private FetchDispatcher dispatcher;
+    private final FetchRetrier retrier;
     private final int noOfConsumers;
     private final int noOfUpdaters;
 
@@ -70,6 +77,8 @@ public class WikiCrawler {
 
     private final AnalyzerFactory analyzer;
     private final DocumentFetcher fetcher;
+    private final Path snapshotFile;
+    private final CrawlJournal journal;
 
     public static void main(String[] args) throws IOException, InterruptedException {
         //performanceTest();
@@ -192,7 +201,7 @@ public class WikiCrawler {
     }
 
     private static void fileTest() throws MalformedURLException, InterruptedException {
-        PageRepository pageRepo = new HashMapPageRepository(new AtomicIntCounter());
+        PageRepository pageRepo = new ConcurrentPageRepository(new AtomicIntCounter());
         LinkService repository = new LinkService(new HashMapLinkRepository(pageRepo), pageRepo);
         repository.setTimeBetweenUpdates(Duration.of(30, ChronoUnit.SECONDS));
         Wikipedia wikipedia = new Wikipedia(repository, pageRepo);
@@ -296,9 +305,7 @@ public class WikiCrawler {
     private static void verbose(Wikipedia wikipedia) {
         for (WikiPage page : wikipedia.getAllPages()) {
             System.out.println(page.getTitle() + " " + page.getUniqueId());
-            for (WikiPage neighbour : page.getNeighbours()) {
-                System.out.println(" - " + neighbour.getTitle());
-            }
+            page.forEachNeighbour(neighbour -> System.out.println(" - " + neighbour.getTitle()));
         }
 
         try {
@@ -313,6 +320,7 @@ public class WikiCrawler {
         this.linkService = builder.linkService;
 
         this.noOfProducers = builder.producers;
+        this.maxInFlightFetches = builder.maxInFlightFetches;
         this.noOfConsumers = builder.consumers;
         this.noOfUpdaters = builder.updaters;
 
@@ -331,12 +339,17 @@ public class WikiCrawler {
 
         this.fetcher = builder.fetcher;
         this.analyzer = builder.analyzer;
+        this.snapshotFile = builder.snapshotFile;
+        this.journal = builder.journal;
+        this.retrier = builder.maxRetries > 0
+                ? new FetchRetrier(this, builder.maxRetries, builder.retryBaseDelay, builder.retryMaxDelay)
+                : null;
 
         indexed = 0;
         this.isShutDown = false;
         this.awaitLatch = new CountDownLatch(1);
 
-        this.executors = Executors.newFixedThreadPool(noOfProducers + noOfConsumers + noOfUpdaters);
+        this.executors = Executors.newFixedThreadPool(fetchWorkers() + noOfConsumers + noOfUpdaters + (retrier != null ? 1 : 0));
         this.urls = new LinkedBlockingDeque<>();
         this.fetched = new ArrayBlockingQueue<>(builder.documentMaxCapacity);
 
@@ -347,25 +360,88 @@ public class WikiCrawler {
         if (isShutDown)
             throw new IllegalStateException("Wiki Crawler has shut down");
 
+        if (journal != null) {
+            try {
+                if (journal.hasState())
+                    throw new IllegalStateException("the journal in " + journal.getDirectory() + " holds a crawl, resume it or clear the journal");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            journal.attach(wikipedia, linkService);
+            journal.startCheckpoints();
+        }
+
         size = 1;
+        startWorkers();
+        putLink(startURL);
+    }
+
+    /**
+     * Recovers the crawl in the journal into the repositories, which should be empty, then carries
+     * on crawling from the links that were left in the frontier.
+     */
+    public void resume() throws IOException, InterruptedException {
+        if (isShutDown)
+            throw new IllegalStateException("Wiki Crawler has shut down");
+        if (journal == null)
+            throw new IllegalStateException("there is no journal to resume from");
+
+        journal.attach(wikipedia, linkService);
+        List<WikiLink> frontier = journal.recover();
+        journal.startCheckpoints();
+        debug("Resuming with " + frontier.size() + " links left to crawl");
+
+        synchronized (this) {
+            size = frontier.size();
+        }
+        startWorkers();
+        for (WikiLink link : frontier) {
+            linkService.getOrMake(link).setRegistered(true);
+            putLink(link);
+        }
+
+        //the crawl was already over, nothing will shrink the size to trigger it
+        if (frontier.isEmpty()) {
+            synchronized (this) {
+                size = 1;
+                shrinkSize();
+            }
+        }
+    }
 
+    private void startWorkers() {
         for (int i = 0; i < noOfConsumers; i++) {
             WikiConsumer consumer = new WikiConsumer(i, wikipedia, this, analyzer.get());
             this.consumers.add(consumer);
             this.executors.submit(consumer);
         }
 
+        if (retrier != null)
+            this.executors.submit(retrier);
+
+        if (maxInFlightFetches > 0) {
+            this.dispatcher = new FetchDispatcher(this, fetcher, maxInFlightFetches);
+            this.executors.submit(dispatcher);
+            return;
+        }
+
         for (int i = 0; i < noOfProducers; i++) {
             WikiProducer producer = new WikiProducer(i, this, fetcher);
             this.producers.add(producer);
             this.executors.submit(producer);
         }
+    }
 
-        putLink(startURL);
+    //the threads taking links to fetch, the producers or the one dispatcher
+    private int fetchWorkers() {
+        return maxInFlightFetches > 0 ? 1 : noOfProducers;
     }
 
     public Poisonable<WikiLink> nextLink() throws InterruptedException {
-        return urls.take();
+        Poisonable<WikiLink> taken = urls.take();
+        if (journal != null && !taken.isPoisoned())
+            journal.logPop(taken.getItem());
+        return taken;
     }
 
     public void addFetched(FetchResult document) throws InterruptedException {
@@ -373,15 +449,21 @@ public class WikiCrawler {
         switch (document.getStatus()) {
             case SUCCESS -> {
                 debug("Fetched " + document.getWikiLink().getLink());
+                settled(link);
                 fetched.put(Poisonable.item(document));
             }
             case DOES_NOT_EXIST -> {
                 //debug("Does not exist "+document.getWikiLink().getLink());
+                settled(link);
                 unlink(link);
             }
             case CONNECTION_ERROR -> {
                 debug("Connection Error when fetching '" + link.getLink() + "'");
-                stash(link);
+                retryOrStash(link);
+            }
+            case THROTTLED -> {
+                debug("Throttled when fetching '" + link.getLink() + "'");
+                retryOrStash(link);
             }
             default -> {
                 throw new IllegalStateException();
@@ -390,6 +472,26 @@ public class WikiCrawler {
 
     }
 
+    private void settled(WikiLink link) {
+        if (retrier != null)
+            retrier.settled(link);
+    }
+
+    //the link stays counted in the size while it waits for its retry, it is only stashed once out of retries
+    private void retryOrStash(WikiLink link) {
+        if (retrier != null && retrier.retry(link))
+            return;
+
+        stash(link);
+    }
+
+    //a link back from the retrier, already counted in the size. It goes to the front, it has waited its turn already
+    void requeue(WikiLink link) throws InterruptedException {
+        if (journal != null)
+            journal.logPush(link);
+        urls.putFirst(Poisonable.item(link));
+    }
+
     public Poisonable<FetchResult> nextFetched() throws InterruptedException {
         return fetched.take();
     }
@@ -397,12 +499,20 @@ public class WikiCrawler {
     public void unlink(WikiLink link) {
         //for whatever reason the link couldn't be fetched (malformed or non-existent)
         wikipedia.remove(link);
+        if (journal != null) {
+            journal.logRemoved(link);
+            journal.logDone(link);
+        }
 
         shrinkSize();
     }
 
     public void stash(WikiLink link) {
         linkService.stash(link);
+        if (journal != null) {
+            journal.logLink(linkService.get(link));
+            journal.logDone(link);
+        }
         shrinkSize();
     }
 
@@ -436,11 +546,38 @@ public class WikiCrawler {
         stopWorkers();
 
         wikipedia.publishBulkCreate();
+        closeJournal();
         deregisterLinks();
+        writeSnapshot();
 
         awaitLatch.countDown();
     }
 
+    //the links still queued stay in the journal's frontier, a resumed crawl picks them up. Closing
+    //forces the log to disk, resuming compacts it so there is no need for a checkpoint here
+    private void closeJournal() {
+        if (journal == null)
+            return;
+
+        try {
+            journal.close();
+        } catch (IOException e) {
+            debug("Could not close the journal in " + journal.getDirectory() + ": " + e.getMessage());
+        }
+    }
+
+    private void writeSnapshot() {
+        if (snapshotFile == null)
+            return;
+
+        try {
+            wikipedia.writeSnapshot(snapshotFile);
+            debug("Wrote graph snapshot to " + snapshotFile);
+        } catch (IOException e) {
+            debug("Could not write graph snapshot to " + snapshotFile + ": " + e.getMessage());
+        }
+    }
+
     private void deregisterLinks() {
         Iterator<Poisonable<WikiLink>> links = urls.iterator();
         while (links.hasNext()) {
@@ -453,20 +590,45 @@ public class WikiCrawler {
                 links.remove();
             }
         }
+
+        if (retrier == null)
+            return;
+
+        for (WikiLink waiting : retrier.drain()) {
+            CrawlableLink link = linkService.get(waiting);
+            if (link != null) {
+                link.setRegistered(false);
+            }
+        }
     }
 
 
-    private void await() throws InterruptedException {
+    public void await() throws InterruptedException {
         awaitLatch.await();
     }
 
     private void stopWorkers() {
+        //a full queue would refuse the poison, the documents not consumed yet are dropped like the queued links
+        List<Poisonable<FetchResult>> unconsumed = new ArrayList<>();
+        fetched.drainTo(unconsumed);
+        for (Poisonable<FetchResult> taken : unconsumed) {
+            if (!taken.isPoisoned()) {
+                CrawlableLink link = linkService.get(taken.getItem().getWikiLink());
+                if (link != null) {
+                    link.setRegistered(false);
+                }
+            }
+        }
+
         for (int i = 0; i < noOfConsumers; i++)
             fetched.add(Poisonable.poison());
 
-        for (int i = 0; i < noOfProducers; i++)
+        for (int i = 0; i < fetchWorkers(); i++)
             urls.push(Poisonable.poison());
 
+        if (retrier != null)
+            retrier.stop();
+
         if(releasedUpdaters) {
             for (int i = 0; i < noOfUpdaters; i++) {
                 updaters.get(i).stop();
@@ -483,6 +645,7 @@ public class WikiCrawler {
                 links);
 
         addLinks(l);
+        logPage(original, links);
 
         synchronized (this) {
             shrinkSize();
@@ -493,6 +656,7 @@ public class WikiCrawler {
 
     public void create(WikiPage page, Collection<WikiLink> links) throws InterruptedException {
         addLinks(wikipedia.create(page, links)); //very very slow
+        logPage(page, links);
         boolean publishUpdate = false;
         synchronized (this) {
             createsSinceLastPublish++;
@@ -511,6 +675,16 @@ public class WikiCrawler {
     }
 
 
+    //logged after the links it pushed, so a crash that loses them also loses the page being done
+    private void logPage(WikiPage page, Collection<WikiLink> links) {
+        if (journal == null)
+            return;
+
+        journal.logPage(page, links);
+        journal.logLink(linkService.get(page.getLink()));
+        journal.logDone(page.getLink());
+    }
+
     private void incrementPages() {
         indexed++;
 
@@ -543,6 +717,8 @@ public class WikiCrawler {
     }
 
     private void putLink(WikiLink link) throws InterruptedException {
+        if (journal != null)
+            journal.logPush(link);
         urls.put(Poisonable.item(link));
     }
 
@@ -558,10 +734,22 @@ public class WikiCrawler {
         return Collections.unmodifiableList(producers);
     }
 
+    //null unless the crawler fetches with a limit on fetches in flight rather than with producers
+    public FetchDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    //null unless failed fetches are retried with backoff
+    public FetchRetrier getRetrier() {
+        return retrier;
+    }
+
     public void addURL(WikiLink link) {
         synchronized (this) {
             size++;
         }
+        if (journal != null)
+            journal.logPush(link);
         urls.add(Poisonable.item(link));
     }
 
@@ -574,6 +762,7 @@ public class WikiCrawler {
         private final Wikipedia wikipedia;
         private final LinkService linkService;
         private int producers;
+        private int maxInFlightFetches;
         private int consumers;
         private int updaters;
 
@@ -586,6 +775,12 @@ public class WikiCrawler {
 
         private int documentMaxCapacity;
         private int createsUntilBulkPublish;
+        private Path snapshotFile;
+        private CrawlJournal journal;
+
+        private int maxRetries;
+        private Duration retryBaseDelay;
+        private Duration retryMaxDelay;
 
         public Builder(Wikipedia wikipedia, LinkService linkService) {
             this.wikipedia = wikipedia;
@@ -603,6 +798,10 @@ public class WikiCrawler {
 
             this.createsUntilBulkPublish = 1000;
 
+            this.maxRetries = 0;
+            this.retryBaseDelay = Duration.ofMillis(100);
+            this.retryMaxDelay = Duration.ofSeconds(30);
+
             this.fetcher = new WebDocumentFetcher();
             this.analyzer = new WikiAnalyzerFactory(wikipedia);
         }
@@ -624,6 +823,16 @@ public class WikiCrawler {
             return this;
         }
 
+        public int getMaxInFlightFetches() {
+            return maxInFlightFetches;
+        }
+
+        //fetches on a thread each, virtual where possible, up to this many at once in place of the producers. 0 to use producers
+        public Builder setMaxInFlightFetches(int maxInFlightFetches) {
+            this.maxInFlightFetches = maxInFlightFetches;
+            return this;
+        }
+
         public int getConsumers() {
             return consumers;
         }
@@ -706,6 +915,43 @@ public class WikiCrawler {
             return this;
         }
 
+        public Path getSnapshotFile() {
+            return snapshotFile;
+        }
+
+        //the graph is written to the file when the crawler shuts down, null to not write it
+        public Builder setSnapshotFile(Path snapshotFile) {
+            this.snapshotFile = snapshotFile;
+            return this;
+        }
+
+        public CrawlJournal getJournal() {
+            return journal;
+        }
+
+        //logs the crawl so it can be resumed after a crash, null to not log it
+        public Builder setJournal(CrawlJournal journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        //retries a failed or throttled fetch this many times with backoff before stashing it, 0 to stash straight away
+        public Builder setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        //the first retry waits up to the base delay, each one after up to twice the last, never more than the max
+        public Builder setRetryBackoff(Duration baseDelay, Duration maxDelay) {
+            this.retryBaseDelay = baseDelay;
+            this.retryMaxDelay = maxDelay;
+            return this;
+        }
+
         public WikiCrawler build() {
             return new WikiCrawler(this);
         }
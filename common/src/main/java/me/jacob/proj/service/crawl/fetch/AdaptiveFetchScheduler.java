@@ -0,0 +1,265 @@
+package me.jacob.proj.service.crawl.fetch;
+
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.service.crawl.FetchResult;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands between the threads taking links from the crawler and the fetcher that sends the requests,
+ * so the crawl only asks as much of a host as it can take. Each host has a {@link TokenBucket}
+ * capping its requests a second and an {@link AimdLimit} on its fetches in flight, which backs off
+ * when the host throttles, fails or slows down and creeps back up while it keeps up.
+ * <p>
+ * A fetch over the limit waits its turn. If too many are waiting for a host already it is rejected
+ * as {@link FetchStatus#THROTTLED} without being sent, and the crawler stashes it like a throttled
+ * response.
+ */
+public class AdaptiveFetchScheduler implements DocumentFetcher {
+
+    private final DocumentFetcher fetcher;
+    private final double requestsPerSecond;
+    private final double burst;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final int maxQueueDepth;
+
+    private final Map<String,Host> hosts;
+
+    //-- Stats Divider --//
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong fetched = new AtomicLong();
+
+    private AdaptiveFetchScheduler(Builder builder) {
+        this.fetcher = builder.fetcher;
+        this.requestsPerSecond = builder.requestsPerSecond;
+        this.burst = builder.burst > 0 ? builder.burst : Math.max(1,builder.requestsPerSecond);
+        this.initialLimit = builder.initialLimit;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoffRatio = builder.backoffRatio;
+        this.latencyTolerance = builder.latencyTolerance;
+        this.maxQueueDepth = builder.maxQueueDepth;
+        this.hosts = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public FetchResult fetch(WikiLink link) {
+        Host host = hosts.computeIfAbsent(link.getLink().getHost(),this::newHost);
+        try {
+            if(!host.enter()) {
+                rejected.incrementAndGet();
+                return new FetchResult(link,FetchStatus.THROTTLED);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new FetchResult(link,FetchStatus.CONNECTION_ERROR);
+        }
+
+        try {
+            host.bucket.acquire();
+            long before = System.nanoTime();
+            FetchResult result = fetcher.fetch(link);
+            long latency = System.nanoTime() - before;
+
+            boolean dropped = false;
+            if(result.getStatus() == FetchStatus.THROTTLED) {
+                throttled.incrementAndGet();
+                dropped = true;
+            } else if(result.getStatus() == FetchStatus.CONNECTION_ERROR) {
+                errors.incrementAndGet();
+                dropped = true;
+            }
+            fetched.incrementAndGet();
+            host.limit.onSample(latency,dropped,host.getInFlight());
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new FetchResult(link,FetchStatus.CONNECTION_ERROR);
+        } finally {
+            host.leave();
+        }
+    }
+
+    private Host newHost(String name) {
+        return new Host(new TokenBucket(requestsPerSecond,burst),
+                new AimdLimit(initialLimit,minLimit,maxLimit,backoffRatio,latencyTolerance));
+    }
+
+    //the sum of the limits of every host
+    public int getLimit() {
+        int limit = 0;
+        for(Host host : hosts.values()) {
+            limit += host.limit.getLimit();
+        }
+        return limit;
+    }
+
+    //the limit for one host, or -1 if nothing has been fetched from it
+    public int getLimit(String host) {
+        Host known = hosts.get(host);
+        return known == null ? -1 : known.limit.getLimit();
+    }
+
+    public AimdLimit getAimdLimit(String host) {
+        Host known = hosts.get(host);
+        return known == null ? null : known.limit;
+    }
+
+    public int getInFlight() {
+        int inFlight = 0;
+        for(Host host : hosts.values()) {
+            inFlight += host.getInFlight();
+        }
+        return inFlight;
+    }
+
+    //the fetches waiting for their host to be under its limit
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    //the fetches turned away because their host's queue was full
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    //the fetches the host answered with 429 or 503
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getFetched() {
+        return fetched.get();
+    }
+
+    private class Host {
+
+        private final TokenBucket bucket;
+        private final AimdLimit limit;
+        private int inFlight = 0;
+        private int waiting = 0;
+
+        private Host(TokenBucket bucket, AimdLimit limit) {
+            this.bucket = bucket;
+            this.limit = limit;
+        }
+
+        //false if the fetch was rejected, the queue being full
+        private synchronized boolean enter() throws InterruptedException {
+            if(inFlight >= limit.getLimit() && waiting >= maxQueueDepth)
+                return false;
+
+            waiting++;
+            int depth = queueDepth.incrementAndGet();
+            peakQueueDepth.accumulateAndGet(depth,Math::max);
+            try {
+                while (inFlight >= limit.getLimit()) {
+                    wait();
+                }
+            } finally {
+                waiting--;
+                queueDepth.decrementAndGet();
+            }
+
+            inFlight++;
+            //the limit may have grown by more than one, let the next waiter check
+            if(inFlight < limit.getLimit())
+                notify();
+            return true;
+        }
+
+        private synchronized void leave() {
+            inFlight--;
+            notify();
+        }
+
+        private synchronized int getInFlight() {
+            return inFlight;
+        }
+    }
+
+    public static class Builder {
+
+        private final DocumentFetcher fetcher;
+        private double requestsPerSecond = 100;
+        private double burst = 0;
+        private int initialLimit = 10;
+        private int minLimit = 1;
+        private int maxLimit = 1000;
+        private double backoffRatio = 0.9;
+        private double latencyTolerance = 2.0;
+        private int maxQueueDepth = 1000;
+
+        public Builder(DocumentFetcher fetcher) {
+            this.fetcher = fetcher;
+        }
+
+        //the most requests a second to send to any one host
+        public Builder setRequestsPerSecond(double requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+            return this;
+        }
+
+        //the requests that may be sent at once after a quiet spell, a second's worth by default
+        public Builder setBurst(double burst) {
+            this.burst = burst;
+            return this;
+        }
+
+        public Builder setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        public Builder setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        public Builder setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        //what the limit is multiplied by when a host throttles, fails or slows down
+        public Builder setBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        //how many times its quickest a host may take before it is thought to be overloaded
+        public Builder setLatencyTolerance(double latencyTolerance) {
+            this.latencyTolerance = latencyTolerance;
+            return this;
+        }
+
+        //the fetches that may wait for a host before more are rejected
+        public Builder setMaxQueueDepth(int maxQueueDepth) {
+            this.maxQueueDepth = maxQueueDepth;
+            return this;
+        }
+
+        public AdaptiveFetchScheduler build() {
+            return new AdaptiveFetchScheduler(this);
+        }
+    }
+}
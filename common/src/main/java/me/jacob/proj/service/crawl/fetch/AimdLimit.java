@@ -0,0 +1,91 @@
+package me.jacob.proj.service.crawl.fetch;
+
+/**
+ * A limit on the fetches in flight to one host, found the way TCP finds its window. Every fetch that
+ * comes back in good time adds 1/limit, so the limit grows by one per round of fetches. A fetch that
+ * was throttled or failed, or took more than the tolerance times the quickest the host has been,
+ * cuts the limit by the backoff ratio. Only one cut is made per round trip, a burst of failures from
+ * the same overload counts once.
+ * <p>
+ * The quickest time drifts up slowly towards what is seen, so a host that has become slower for
+ * good is not taken to be overloaded for ever.
+ */
+public class AimdLimit {
+
+    private final static double BASELINE_DRIFT = 0.01;
+    private final static double SMOOTHING = 0.1;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+
+    private double limit;
+    private double baseline = -1;
+    private double smoothed = -1;
+    private long lastDecrease;
+
+    //-- Stats Divider --//
+    private int increases = 0;
+    private int decreases = 0;
+
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double latencyTolerance) {
+        if(minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit)
+            throw new IllegalArgumentException("the limits must satisfy 1 <= min <= initial <= max");
+        if(backoffRatio <= 0 || backoffRatio >= 1)
+            throw new IllegalArgumentException("the backoff ratio must be between 0 and 1");
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = initialLimit;
+        this.lastDecrease = System.nanoTime();
+    }
+
+    /**
+     * Adjusts the limit for a fetch that took the given nanos. Dropped means the host throttled it or
+     * it failed. The limit is only raised when the fetches in flight were near it, a limit that
+     * isn't being used says nothing about whether the host could take more.
+     */
+    public synchronized void onSample(long latency, boolean dropped, int inFlight) {
+        long now = System.nanoTime();
+        if(!dropped) {
+            baseline = baseline < 0 ? latency : Math.min(latency,baseline + (latency - baseline) * BASELINE_DRIFT);
+            smoothed = smoothed < 0 ? latency : smoothed + (latency - smoothed) * SMOOTHING;
+        }
+
+        boolean slow = !dropped && latency > baseline * latencyTolerance;
+        if(dropped || slow) {
+            if(now - lastDecrease >= Math.max(0,smoothed)) {
+                limit = Math.max(minLimit,limit * backoffRatio);
+                lastDecrease = now;
+                decreases++;
+            }
+        } else if(inFlight * 2 >= limit && limit < maxLimit) {
+            limit = Math.min(maxLimit,limit + 1 / limit);
+            increases++;
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    //the quickest a fetch has been lately, in nanos
+    public synchronized long getBaselineLatency() {
+        return (long) baseline;
+    }
+
+    public synchronized long getSmoothedLatency() {
+        return (long) smoothed;
+    }
+
+    public synchronized int getIncreases() {
+        return increases;
+    }
+
+    public synchronized int getDecreases() {
+        return decreases;
+    }
+}
@@ -5,5 +5,7 @@ public enum FetchStatus {
     SUCCESS,
     CONNECTION_ERROR,
     DOES_NOT_EXIST,
+    //the server asked us to slow down (429 or 503), or the fetch was turned away before being sent
+    THROTTLED,
     ;
 }
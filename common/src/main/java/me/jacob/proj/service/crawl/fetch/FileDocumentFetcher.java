@@ -6,7 +6,6 @@ import org.jsoup.Jsoup;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.util.regex.Pattern;
@@ -22,8 +21,7 @@ public class FileDocumentFetcher implements DocumentFetcher {
 
     @Override
     public FetchResult fetch(WikiLink link) {
-        URL url = link.getLink();
-        String[] split = FORWARD_SLASH_SPLIT.split(url.getPath());
+        String[] split = FORWARD_SLASH_SPLIT.split(link.getRelative());
         String name = split[2];
 
         File file = null;
@@ -0,0 +1,242 @@
+package me.jacob.proj.service.crawl.fetch;
+
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.service.crawl.FetchDispatcher;
+import me.jacob.proj.service.crawl.FetchResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a slow response from holding up a page. Every fetch has a deadline from when it was asked
+ * for, past which it is given up as a {@link FetchStatus#CONNECTION_ERROR} whatever the fetcher's own
+ * timeout is. If hedging is on, a fetch that has taken longer than most recent fetches, the 95th
+ * percentile by default, has a second request sent alongside it and the first to come back wins.
+ * <p>
+ * A throttled or failed attempt only settles the fetch once every attempt sent has failed, the
+ * other may still come back. Attempts run on threads of their own, virtual where the JVM has them.
+ */
+public class HedgedDocumentFetcher implements DocumentFetcher {
+
+    //the recent latencies the percentile is taken over, and how often it is worked out again
+    private final static int WINDOW = 1024;
+    private final static int RECOMPUTE_EVERY = 64;
+
+    private final DocumentFetcher fetcher;
+    private final long deadline;
+    private final boolean hedged;
+    private final double hedgePercentile;
+    private final long minHedgeDelay;
+    private final ExecutorService attempts;
+
+    private final long[] latencies = new long[WINDOW];
+    private int samples = 0;
+    private long hedgeDelay = -1;
+
+    //-- Stats Divider --//
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong deadlinesMissed = new AtomicLong();
+
+    private HedgedDocumentFetcher(Builder builder) {
+        this.fetcher = builder.fetcher;
+        this.deadline = builder.deadline.toNanos();
+        this.hedged = builder.hedged;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.minHedgeDelay = builder.minHedgeDelay.toNanos();
+
+        ExecutorService virtualThreads = FetchDispatcher.newVirtualThreadPerTaskExecutor();
+        this.attempts = virtualThreads != null ? virtualThreads : Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable,"Fetch-Attempt");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public FetchResult fetch(WikiLink link) {
+        fetches.incrementAndGet();
+        long giveUpAt = System.nanoTime() + deadline;
+        Race race = new Race(link);
+        try {
+            race.start();
+            long delay = getHedgeDelay();
+            if(hedged && delay >= 0) {
+                FetchResult result = race.await(Math.min(System.nanoTime() + delay,giveUpAt));
+                if(result != null)
+                    return result;
+
+                if(System.nanoTime() < giveUpAt) {
+                    hedges.incrementAndGet();
+                    race.start();
+                }
+            }
+
+            FetchResult result = race.await(giveUpAt);
+            if(result != null)
+                return result;
+
+            deadlinesMissed.incrementAndGet();
+            return new FetchResult(link,FetchStatus.CONNECTION_ERROR);
+        } catch (InterruptedException | RejectedExecutionException e) {
+            if(e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            return new FetchResult(link,FetchStatus.CONNECTION_ERROR);
+        } finally {
+            race.cancel();
+        }
+    }
+
+    //the attempts still running are abandoned, the threads they hold are not worth waiting for
+    public void shutdown() {
+        attempts.shutdownNow();
+    }
+
+    private synchronized void sample(long latency) {
+        latencies[samples % WINDOW] = latency;
+        samples++;
+        if(samples >= RECOMPUTE_EVERY && samples % RECOMPUTE_EVERY == 0) {
+            long[] sorted = Arrays.copyOf(latencies,Math.min(samples,WINDOW));
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(hedgePercentile * sorted.length) - 1;
+            hedgeDelay = Math.max(minHedgeDelay,sorted[Math.max(0,index)]);
+        }
+    }
+
+    //how long a fetch runs before it is hedged, in nanos, -1 until enough have been seen
+    public synchronized long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public long getFetches() {
+        return fetches.get();
+    }
+
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    //the hedges that came back before the request they were sent alongside
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    public long getDeadlinesMissed() {
+        return deadlinesMissed.get();
+    }
+
+    private static boolean settles(FetchResult result) {
+        return result.getStatus() == FetchStatus.SUCCESS || result.getStatus() == FetchStatus.DOES_NOT_EXIST;
+    }
+
+    //the attempts at one fetch, the first to settle it wins
+    private class Race {
+
+        private final WikiLink link;
+        private final List<Future<?>> running = new ArrayList<>(2);
+        private int started = 0;
+        private int failed = 0;
+        private FetchResult result;
+
+        private Race(WikiLink link) {
+            this.link = link;
+        }
+
+        private synchronized void start() {
+            int attempt = started++;
+            running.add(attempts.submit(() -> attempt(attempt)));
+        }
+
+        private void attempt(int attempt) {
+            long before = System.nanoTime();
+            FetchResult fetched = fetcher.fetch(link);
+            if(settles(fetched))
+                sample(System.nanoTime() - before);
+
+            synchronized (this) {
+                if(result != null)
+                    return;
+
+                if(settles(fetched)) {
+                    result = fetched;
+                    if(attempt > 0)
+                        hedgeWins.incrementAndGet();
+                } else if(++failed == started) {
+                    result = fetched;
+                }
+                notifyAll();
+            }
+        }
+
+        //null if nothing has settled the fetch by then
+        private synchronized FetchResult await(long until) throws InterruptedException {
+            long left;
+            while (result == null && (left = until - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this,left);
+            }
+            return result;
+        }
+
+        private synchronized void cancel() {
+            for(Future<?> attempt : running) {
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private final DocumentFetcher fetcher;
+        private Duration deadline = Duration.ofSeconds(10);
+        private boolean hedged = false;
+        private double hedgePercentile = 0.95;
+        private Duration minHedgeDelay = Duration.ofMillis(10);
+
+        public Builder(DocumentFetcher fetcher) {
+            this.fetcher = fetcher;
+        }
+
+        //the longest a fetch may take, every attempt included
+        public Builder setDeadline(Duration deadline) {
+            this.deadline = deadline;
+            return this;
+        }
+
+        public Builder setHedged(boolean hedged) {
+            this.hedged = hedged;
+            return this;
+        }
+
+        //the percentile of recent fetch times a fetch must pass to be hedged
+        public Builder setHedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = hedgePercentile;
+            return this;
+        }
+
+        //never hedge sooner than this, however quick fetches have been
+        public Builder setMinHedgeDelay(Duration minHedgeDelay) {
+            this.minHedgeDelay = minHedgeDelay;
+            return this;
+        }
+
+        public HedgedDocumentFetcher build() {
+            if(hedgePercentile <= 0 || hedgePercentile > 1)
+                throw new IllegalArgumentException("the hedge percentile must be in (0, 1]");
+            return new HedgedDocumentFetcher(this);
+        }
+    }
+}
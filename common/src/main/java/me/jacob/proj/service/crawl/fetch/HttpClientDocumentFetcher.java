@@ -0,0 +1,222 @@
+package me.jacob.proj.service.crawl.fetch;
+
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.service.crawl.FetchResult;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.channels.UnresolvedAddressException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Fetches pages with one shared {@link HttpClient}, so connections are pooled and reused, and
+ * multiplexed over HTTP/2 by servers that speak it. Pages are asked for gzipped and parsed while the
+ * body is still arriving, it is never held whole, compressed or not.
+ * <p>
+ * The statuses are the ones {@link WebDocumentFetcher} gives: 429 and 503 are throttling, any other
+ * status below 200 or from 400 up, or a body that isn't text or xml, is a page that does not exist. Redirects are not followed, the body
+ * of one is parsed as the page. Timeouts and hosts that can't be found are connection errors, any
+ * other failure is a page that does not exist.
+ * <p>
+ * The request's timeout only lasts until the headers arrive, so the body is closed under the reader
+ * if it is still coming in once the timeout has passed since the request was sent.
+ */
+public class HttpClientDocumentFetcher implements DocumentFetcher {
+
+    private final static String WIKIPEDIA = "https://en.wikipedia.org";
+    //the content types jsoup accepts besides text/*
+    private final static Pattern XML_CONTENT_TYPE = Pattern.compile("(application|text)/\\w*\\+?xml.*");
+    private final static Pattern CHARSET = Pattern.compile("(?i)\\bcharset=\\s*\"?([^\\s;\"]*)");
+    //closes the bodies that run past their deadline, shared by every fetcher
+    private final static ScheduledThreadPoolExecutor DEADLINES = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable,"Fetch-Deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        //every fetch schedules one, most are cancelled long before they are due
+        DEADLINES.setRemoveOnCancelPolicy(true);
+    }
+
+    private final String root;
+    private final Duration timeout;
+    private final HttpClient client;
+
+    //-- Stats Divider --//
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    public HttpClientDocumentFetcher() {
+        this(WIKIPEDIA);
+    }
+
+    public HttpClientDocumentFetcher(String root) {
+        this(root,Duration.ofSeconds(10));
+    }
+
+    public HttpClientDocumentFetcher(String root, Duration timeout) {
+        this.root = root;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    //blocks the calling thread, cheap on a virtual thread, and parses on it
+    @Override
+    public FetchResult fetch(WikiLink link) {
+        try {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            return read(link,client.send(request(link),HttpResponse.BodyHandlers.ofInputStream()),deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new FetchResult(link,FetchStatus.CONNECTION_ERROR);
+        } catch (IOException | IllegalArgumentException e) {
+            return failed(link,e);
+        }
+    }
+
+    /**
+     * Sends the request without blocking. Once the headers are in, the body is parsed on the given
+     * executor as it arrives. The future never fails, a failure is a result like any other.
+     */
+    public CompletableFuture<FetchResult> fetchAsync(WikiLink link, Executor parser) {
+        HttpRequest request;
+        try {
+            request = request(link);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(failed(link,e));
+        }
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        return client.sendAsync(request,HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> read(link,response,deadline),parser)
+                .exceptionally(e -> failed(link,e instanceof CompletionException && e.getCause() != null ? e.getCause() : e));
+    }
+
+    private HttpRequest request(WikiLink link) {
+        URI uri = URI.create(WIKIPEDIA.equals(root) ? link.toString() : root + link.getRelative());
+        return HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("Accept-Encoding","gzip")
+                .GET()
+                .build();
+    }
+
+    private FetchResult read(WikiLink link, HttpResponse<InputStream> response, long deadline) {
+        responses.incrementAndGet();
+        //closing the body wakes a reader blocked on it with an IOException
+        AtomicBoolean expired = new AtomicBoolean();
+        InputStream stream = response.body();
+        ScheduledFuture<?> watchdog = DEADLINES.schedule(() -> {
+            expired.set(true);
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+            }
+        },deadline - System.nanoTime(),TimeUnit.NANOSECONDS);
+
+        try (InputStream body = new CountingInputStream(stream)) {
+            int status = response.statusCode();
+            String contentType = response.headers().firstValue("Content-Type").orElse(null);
+            if(status == 429 || status == 503) {
+                body.transferTo(OutputStream.nullOutputStream());
+                return new FetchResult(link,FetchStatus.THROTTLED);
+            }
+            if(status < 200 || status >= 400
+                    || (contentType != null && !contentType.startsWith("text/") && !XML_CONTENT_TYPE.matcher(contentType).matches())) {
+                //read to the end so the connection goes back to the pool rather than being closed
+                body.transferTo(OutputStream.nullOutputStream());
+                return new FetchResult(link,FetchStatus.DOES_NOT_EXIST);
+            }
+
+            InputStream decoded = body;
+            String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+            if(encoding.equalsIgnoreCase("gzip"))
+                decoded = new GZIPInputStream(body,8192);
+
+            Document document = Jsoup.parse(decoded,charset(contentType),response.uri().toString());
+            return new FetchResult(link,document);
+        } catch (IOException e) {
+            if(expired.get())
+                return new FetchResult(link,FetchStatus.CONNECTION_ERROR);
+            return failed(link,e);
+        } finally {
+            watchdog.cancel(false);
+        }
+    }
+
+    private static String charset(String contentType) {
+        if(contentType == null)
+            return null;
+
+        Matcher matcher = CHARSET.matcher(contentType);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static FetchResult failed(WikiLink link, Throwable e) {
+        if(e instanceof HttpTimeoutException || e instanceof SocketTimeoutException || e instanceof UnknownHostException
+                || (e instanceof ConnectException && e.getCause() instanceof UnresolvedAddressException))
+            return new FetchResult(link,FetchStatus.CONNECTION_ERROR);
+
+        return new FetchResult(link,FetchStatus.DOES_NOT_EXIST);
+    }
+
+    public long getResponses() {
+        return responses.get();
+    }
+
+    //the bytes of the bodies as they came over the wire, before they were decompressed
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    private class CountingInputStream extends FilterInputStream {
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if(read >= 0)
+                bytesReceived.incrementAndGet();
+            return read;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes,offset,length);
+            if(read > 0)
+                bytesReceived.addAndGet(read);
+            return read;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package me.jacob.proj.service.crawl.fetch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets through a steady number of requests a second, with bursts of up to the capacity after a
+ * quiet spell. A request that finds the bucket empty reserves the next token and sleeps until it is
+ * due, outside the lock, so waiters are let through in the order they came at the set rate.
+ */
+public class TokenBucket {
+
+    private final double perNano;
+    private final double capacity;
+    private double tokens;
+    private long refilled;
+
+    public TokenBucket(double perSecond, double capacity) {
+        if(perSecond <= 0 || capacity < 1)
+            throw new IllegalArgumentException("a bucket needs a positive rate and room for a token");
+
+        this.perNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.refilled = System.nanoTime();
+    }
+
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        if(wait > 0)
+            TimeUnit.NANOSECONDS.sleep(wait);
+    }
+
+    //takes a token if one is there now, never waits
+    public synchronized boolean tryAcquire() {
+        refill();
+        if(tokens < 1)
+            return false;
+
+        tokens--;
+        return true;
+    }
+
+    //takes a token, going into debt if there is none, and gives the nanos until it is paid off
+    private synchronized long reserve() {
+        refill();
+        tokens--;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / perNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity,tokens + (now - refilled) * perNano);
+        refilled = now;
+    }
+
+    public double getRate() {
+        return perNano * TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -3,6 +3,7 @@ package me.jacob.proj.service.crawl.fetch;
 import me.jacob.proj.service.crawl.FetchResult;
 import me.jacob.proj.model.WikiLink;
 import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
 
 import java.io.IOException;
@@ -13,20 +14,38 @@ import java.net.UnknownHostException;
 
 public class WebDocumentFetcher implements DocumentFetcher {
 
+    private final static String WIKIPEDIA = "https://en.wikipedia.org";
+
+    private final String root;
+
     public static void main(String[] args) throws MalformedURLException {
         WebDocumentFetcher fetcher = new WebDocumentFetcher();
         System.out.println(fetcher.fetch(new WikiLink(new URL("https://en.wikipedia.org/admin"))).getStatus());
     }
 
+    public WebDocumentFetcher() {
+        this(WIKIPEDIA);
+    }
+
+    //fetches the same paths from another server, a local copy or a stub
+    public WebDocumentFetcher(String root) {
+        this.root = root;
+    }
+
     @Override
     public FetchResult fetch(WikiLink link) {
         try {
-            URL url = link.getLink();
+            URL url = WIKIPEDIA.equals(root) ? link.getLink() : new URL(root + link.getRelative());
             Connection connection = Jsoup.connect(url.toString());
             connection.followRedirects(false);
             connection.timeout(10000);
 
             return new FetchResult(new WikiLink(url),connection.get());
+        } catch (HttpStatusException e) {
+            //too many requests, or the server is overloaded
+            if(e.getStatusCode() == 429 || e.getStatusCode() == 503)
+                return new FetchResult(link,FetchStatus.THROTTLED);
+            return new FetchResult(link,FetchStatus.DOES_NOT_EXIST);
         } catch (UnknownHostException | SocketTimeoutException e) {
             return new FetchResult(link,FetchStatus.CONNECTION_ERROR);
         } catch (IOException | ClassCastException e) {
@@ -0,0 +1,638 @@
+package me.jacob.proj.service.crawl.journal;
+
+import me.jacob.proj.model.CrawlableLink;
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.service.LinkService;
+import me.jacob.proj.service.Wikipedia;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the state of a crawl on the in memory repositories recoverable after a crash. Every page
+ * created or updated, page removed, change to the crawl flags of a link and every link pushed to or
+ * popped from the frontier is written to a {@link WriteAheadLog}. Now and then the whole state is
+ * written to a checkpoint and the log before it is deleted, so recovering reads one checkpoint and
+ * the little logged since.
+ * <p>
+ * A page is logged with every link found on it rather than its neighbours, replaying it through
+ * {@link Wikipedia#create(WikiPage, Collection)} links it exactly as the crawl did, whatever order
+ * the pages are replayed in. Replaying a record twice changes nothing, so a checkpoint can be taken
+ * while the crawl runs and the records logged during it are simply replayed on top.
+ * <p>
+ * The crawler logs the links a page pushed before the page itself and marks a link done last. A
+ * crash loses at most the last batch of the log, whatever survives of a page's records, the link
+ * of a page that was not marked done is still in the frontier and gets crawled again.
+ */
+public class CrawlJournal implements Closeable {
+
+    private final static byte PAGE = 1;
+    private final static byte REMOVE = 2;
+    private final static byte LINK = 3;
+    private final static byte PUSH = 4;
+    private final static byte POP = 5;
+    private final static byte DONE = 6;
+
+    private final static String LOG_PREFIX = "journal";
+    private final static String CHECKPOINT_PREFIX = "checkpoint-";
+    private final static String CHECKPOINT_SUFFIX = ".bin";
+
+    private final Path directory;
+    private final long checkpointInterval;
+    private final WriteAheadLog log;
+
+    //the frontier as logged, guarded by itself so a checkpoint copies exactly what the log before it holds
+    private final Object frontierLock;
+    private final Set<WikiLink> queued;
+    private final Set<WikiLink> inFlight;
+
+    private volatile Wikipedia wikipedia;
+    private volatile LinkService linkService;
+    private volatile boolean closed;
+    private ScheduledExecutorService checkpointer;
+
+    //-- Stats Divider --//
+    private int checkpoints;
+    private long totalCheckpointTime;
+
+    private CrawlJournal(Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.checkpointInterval = builder.checkpointInterval;
+        Files.createDirectories(directory);
+
+        long last = -1;
+        for(long segment : segments()) {
+            last = Math.max(last,segment);
+        }
+        this.log = new WriteAheadLog(directory,LOG_PREFIX,last + 1,builder.flushInterval,TimeUnit.MILLISECONDS);
+
+        this.frontierLock = new Object();
+        this.queued = new LinkedHashSet<>();
+        this.inFlight = new LinkedHashSet<>();
+    }
+
+    //the repositories the journal writes checkpoints of and recovers into
+    public void attach(Wikipedia wikipedia, LinkService linkService) {
+        this.wikipedia = wikipedia;
+        this.linkService = linkService;
+    }
+
+    //true if there is a crawl in the directory to recover
+    public boolean hasState() throws IOException {
+        if(latestCheckpoint() >= 0)
+            return true;
+
+        for(long segment : segments()) {
+            if(segment < log.getSegment() && Files.size(log.segmentFile(segment)) > 0)
+                return true;
+        }
+        return false;
+    }
+
+    //forgets the crawl in the directory, the next one starts afresh
+    public void clear() throws IOException {
+        synchronized (frontierLock) {
+            long current = log.rotate();
+            deleteBefore(current,Long.MAX_VALUE);
+            queued.clear();
+            inFlight.clear();
+        }
+    }
+
+    //-- Records Divider --//
+
+    public void logPage(WikiPage page, Collection<WikiLink> linksFound) {
+        if(closed)
+            return;
+
+        append(pageRecord(page,linksFound));
+    }
+
+    public void logRemoved(WikiLink link) {
+        if(closed)
+            return;
+
+        append(linkRecord(REMOVE,link));
+    }
+
+    public void logLink(CrawlableLink link) {
+        if(closed)
+            return;
+
+        append(flagsRecord(link));
+    }
+
+    public void logPush(WikiLink link) {
+        frontier(PUSH,link);
+    }
+
+    public void logPop(WikiLink link) {
+        frontier(POP,link);
+    }
+
+    //the crawl of the link is over, it leaves the frontier
+    public void logDone(WikiLink link) {
+        frontier(DONE,link);
+    }
+
+    private void frontier(byte type, WikiLink link) {
+        if(closed)
+            return;
+
+        byte[] record = linkRecord(type,link);
+        synchronized (frontierLock) {
+            applyFrontier(type,link);
+            append(record);
+        }
+    }
+
+    private void applyFrontier(byte type, WikiLink link) {
+        switch (type) {
+            case PUSH -> {
+                inFlight.remove(link);
+                queued.add(link);
+            }
+            case POP -> {
+                if(queued.remove(link))
+                    inFlight.add(link);
+            }
+            case DONE -> {
+                queued.remove(link);
+                inFlight.remove(link);
+            }
+            default -> throw new IllegalArgumentException("not a frontier record "+type);
+        }
+    }
+
+    private void append(byte[] record) {
+        try {
+            log.append(record);
+        } catch (IOException e) {
+            //the crawl can't carry on if it can no longer be recovered
+            throw new UncheckedIOException("could not write to the crawl journal in "+directory,e);
+        }
+    }
+
+    //-- Checkpoint Divider --//
+
+    //takes a checkpoint every interval until the journal is closed
+    public void startCheckpoints() {
+        if(checkpointInterval <= 0 || checkpointer != null)
+            return;
+
+        checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable,"Crawl-Checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointer.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (Throwable e) {
+                System.out.println("[Journal] Checkpoint failed: "+e.getMessage());
+            }
+        },checkpointInterval,checkpointInterval,TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the state of the attached repositories to a new checkpoint, then deletes the log and
+     * the checkpoints it replaces. The log is moved on to a new segment first, a change is logged
+     * after it is made so every change in the older segments is in the state written.
+     */
+    public synchronized void checkpoint() throws IOException {
+        Wikipedia wikipedia = this.wikipedia;
+        LinkService linkService = this.linkService;
+        if(wikipedia == null || linkService == null)
+            throw new IllegalStateException("the journal is not attached to a crawl");
+
+        long before = System.nanoTime();
+        long segment;
+        List<WikiLink> inFlight;
+        List<WikiLink> queued;
+        synchronized (frontierLock) {
+            segment = log.rotate();
+            inFlight = new ArrayList<>(this.inFlight);
+            queued = new ArrayList<>(this.queued);
+        }
+
+        //the links a page has not been connected to yet are held by the link, not the page
+        Map<WikiPage,List<WikiLink>> pending = new HashMap<>();
+        Collection<CrawlableLink> links = linkService.getAll();
+        for(CrawlableLink link : links) {
+            for(WikiPage source : link.getUnconnected()) {
+                pending.computeIfAbsent(source,k -> new ArrayList<>()).add(link.getLink());
+            }
+        }
+
+        Path file = checkpointFile(segment);
+        Path temp = file.resolveSibling(file.getFileName()+".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream,1 << 16))) {
+            for(WikiPage page : wikipedia.getAllPages()) {
+                List<WikiLink> found = new ArrayList<>(page.getDegree());
+                page.forEachNeighbour(neighbour -> found.add(neighbour.getLink()));
+                found.addAll(pending.getOrDefault(page,Collections.emptyList()));
+                WriteAheadLog.frame(out,pageRecord(page,found));
+            }
+
+            //a link that was never crawled is made again by the pages linking to it
+            for(CrawlableLink link : links) {
+                if(link.isProcessed())
+                    WriteAheadLog.frame(out,flagsRecord(link));
+            }
+
+            for(WikiLink link : inFlight) {
+                WriteAheadLog.frame(out,linkRecord(PUSH,link));
+                WriteAheadLog.frame(out,linkRecord(POP,link));
+            }
+            for(WikiLink link : queued) {
+                WriteAheadLog.frame(out,linkRecord(PUSH,link));
+            }
+
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temp,file,StandardCopyOption.ATOMIC_MOVE,StandardCopyOption.REPLACE_EXISTING);
+        //the rename must be on disk before what it replaces is deleted
+        WriteAheadLog.syncDirectory(directory);
+        deleteBefore(segment,segment);
+
+        synchronized (this) {
+            checkpoints++;
+            totalCheckpointTime += System.nanoTime() - before;
+        }
+    }
+
+    //-- Recovery Divider --//
+
+    /**
+     * Replays the latest checkpoint and the log after it into the attached repositories, which
+     * should be empty, then takes a checkpoint of what was recovered. Returns the frontier, the links
+     * that were being crawled when the crawl stopped first and then the ones waiting in push order.
+     */
+    public synchronized List<WikiLink> recover() throws IOException {
+        Wikipedia wikipedia = this.wikipedia;
+        LinkService linkService = this.linkService;
+        if(wikipedia == null || linkService == null)
+            throw new IllegalStateException("the journal is not attached to a crawl");
+
+        long current = log.getSegment();
+        long checkpoint = latestCheckpoint();
+        Replayer replayer = new Replayer(wikipedia,linkService);
+        if(checkpoint >= 0 && !WriteAheadLog.read(checkpointFile(checkpoint),replayer))
+            throw new IOException("checkpoint "+checkpointFile(checkpoint)+" is corrupt");
+
+        List<Long> segments = segments();
+        Collections.sort(segments);
+        for(long segment : segments) {
+            if(segment < checkpoint || segment >= current)
+                continue;
+
+            //only the end of the last segment written can be torn, stop there
+            if(!WriteAheadLog.read(log.segmentFile(segment),replayer)) {
+                debug("Log segment "+segment+" ends in a torn record, recovered up to it");
+                break;
+            }
+        }
+
+        List<WikiLink> frontier;
+        synchronized (frontierLock) {
+            queued.clear();
+            inFlight.clear();
+            inFlight.addAll(replayer.inFlight);
+            queued.addAll(replayer.queued);
+            frontier = new ArrayList<>(inFlight);
+            frontier.addAll(queued);
+        }
+
+        debug("Recovered "+replayer.pages+" pages from "+replayer.records+" records, "+frontier.size()+" links left to crawl");
+        checkpoint();
+        return frontier;
+    }
+
+    private class Replayer implements WriteAheadLog.RecordReader {
+
+        private final Wikipedia wikipedia;
+        private final LinkService linkService;
+        private final Set<WikiLink> queued;
+        private final Set<WikiLink> inFlight;
+        private int records;
+        private int pages;
+
+        private Replayer(Wikipedia wikipedia, LinkService linkService) {
+            this.wikipedia = wikipedia;
+            this.linkService = linkService;
+            this.queued = new LinkedHashSet<>();
+            this.inFlight = new LinkedHashSet<>();
+        }
+
+        @Override
+        public void read(DataInputStream in) throws IOException {
+            records++;
+            byte type = in.readByte();
+            switch (type) {
+                case PAGE -> replayPage(in);
+                case REMOVE -> wikipedia.remove(new WikiLink(readString(in)));
+                case LINK -> {
+                    CrawlableLink link = linkService.getOrMake(new WikiLink(readString(in)));
+                    link.setProcessed(in.readBoolean());
+                    link.setRegistered(in.readBoolean());
+                    link.setPageFound(in.readBoolean());
+                    link.setLastProcessed(in.readLong());
+                }
+                case PUSH -> {
+                    WikiLink link = new WikiLink(readString(in));
+                    inFlight.remove(link);
+                    queued.add(link);
+                }
+                case POP -> {
+                    WikiLink link = new WikiLink(readString(in));
+                    if(queued.remove(link))
+                        inFlight.add(link);
+                }
+                case DONE -> {
+                    WikiLink link = new WikiLink(readString(in));
+                    queued.remove(link);
+                    inFlight.remove(link);
+                }
+                default -> throw new IOException("unknown journal record "+type);
+            }
+        }
+
+        private void replayPage(DataInputStream in) throws IOException {
+            WikiLink link = new WikiLink(readString(in));
+            String title = readString(in);
+            String description = readString(in);
+            String articleType = readString(in);
+            boolean redirect = in.readBoolean();
+            boolean removed = in.readBoolean();
+            int amount = in.readInt();
+            List<WikiLink> found = new ArrayList<>(amount);
+            for(int i = 0; i < amount; i++) {
+                found.add(new WikiLink(readString(in)));
+            }
+
+            WikiPage page = wikipedia.getPage(link);
+            if(page == null) {
+                page = wikipedia.newPage(title,link);
+                page.update(s -> s.withDescription(description).withArticleType(articleType).withRedirect(redirect));
+                wikipedia.create(page,found);
+                pages++;
+            } else {
+                wikipedia.update(page,title,description,redirect,articleType,found);
+            }
+
+            if(removed) {
+                wikipedia.remove(page);
+            } else {
+                wikipedia.restore(page);
+            }
+        }
+    }
+
+    //-- Encoding Divider --//
+
+    private static byte[] pageRecord(WikiPage page, Collection<WikiLink> linksFound) {
+        WikiPage.State state = page.getState();
+        Encoder encoder = new Encoder(PAGE);
+        encoder.writeString(page.getLink().getRelative());
+        encoder.writeString(state.title());
+        encoder.writeString(state.description());
+        encoder.writeString(state.articleType());
+        encoder.writeBoolean(state.redirect());
+        encoder.writeBoolean(state.removed());
+        encoder.writeInt(linksFound.size());
+        for(WikiLink link : linksFound) {
+            encoder.writeString(link.getRelative());
+        }
+        return encoder.toByteArray();
+    }
+
+    private static byte[] flagsRecord(CrawlableLink link) {
+        Encoder encoder = new Encoder(LINK);
+        encoder.writeString(link.getLink().getRelative());
+        //read under the link's lock so the flags are from one moment
+        synchronized (link) {
+            encoder.writeBoolean(link.isProcessed());
+            encoder.writeBoolean(link.isRegistered());
+            encoder.writeBoolean(link.isPageFound());
+            encoder.writeLong(link.getLastProcessed());
+        }
+        return encoder.toByteArray();
+    }
+
+    private static byte[] linkRecord(byte type, WikiLink link) {
+        Encoder encoder = new Encoder(type);
+        encoder.writeString(link.getRelative());
+        return encoder.toByteArray();
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length < 0)
+            return null;
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes,StandardCharsets.UTF_8);
+    }
+
+    //a string is an int length then that many bytes of UTF-8, -1 for null. Plain array writes, the
+    //synchronized writes of a ByteArrayOutputStream showed in the cost of logging
+    private static class Encoder {
+
+        private byte[] bytes;
+        private int length;
+
+        private Encoder(byte type) {
+            this.bytes = new byte[64];
+            this.bytes[0] = type;
+            this.length = 1;
+        }
+
+        private void writeString(String string) {
+            if(string == null) {
+                writeInt(-1);
+                return;
+            }
+
+            byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+            writeInt(encoded.length);
+            ensure(encoded.length);
+            System.arraycopy(encoded,0,bytes,length,encoded.length);
+            length += encoded.length;
+        }
+
+        private void writeBoolean(boolean value) {
+            ensure(1);
+            bytes[length++] = (byte) (value ? 1 : 0);
+        }
+
+        private void writeInt(int value) {
+            ensure(4);
+            bytes[length++] = (byte) (value >>> 24);
+            bytes[length++] = (byte) (value >>> 16);
+            bytes[length++] = (byte) (value >>> 8);
+            bytes[length++] = (byte) value;
+        }
+
+        private void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        private void ensure(int more) {
+            if(length + more > bytes.length)
+                bytes = Arrays.copyOf(bytes,Math.max(length + more,bytes.length * 2));
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes,length);
+        }
+    }
+
+    //-- Files Divider --//
+
+    private Path checkpointFile(long segment) {
+        return directory.resolve(String.format("%s%010d%s",CHECKPOINT_PREFIX,segment,CHECKPOINT_SUFFIX));
+    }
+
+    //the first segment not in the latest checkpoint, -1 if there is none
+    private long latestCheckpoint() throws IOException {
+        long latest = -1;
+        try (Stream<Path> files = Files.list(directory)) {
+            for(Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if(name.startsWith(CHECKPOINT_PREFIX) && name.endsWith(CHECKPOINT_SUFFIX)) {
+                    latest = Math.max(latest,Long.parseLong(name.substring(CHECKPOINT_PREFIX.length(),name.length() - CHECKPOINT_SUFFIX.length())));
+                }
+            }
+        }
+        return latest;
+    }
+
+    private List<Long> segments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        String prefix = LOG_PREFIX + "-";
+        try (Stream<Path> files = Files.list(directory)) {
+            for(Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if(name.startsWith(prefix) && name.endsWith(".log"))
+                    segments.add(Long.parseLong(name.substring(prefix.length(),name.length() - 4)));
+            }
+        }
+        return segments;
+    }
+
+    //deletes the segments before the first and the checkpoints before the second
+    private void deleteBefore(long segment, long checkpoint) throws IOException {
+        for(long old : segments()) {
+            if(old < segment)
+                Files.deleteIfExists(log.segmentFile(old));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for(Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if(!name.startsWith(CHECKPOINT_PREFIX))
+                    continue;
+
+                if(!name.endsWith(CHECKPOINT_SUFFIX)) {
+                    //a checkpoint that was never finished
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                long number = Long.parseLong(name.substring(CHECKPOINT_PREFIX.length(),name.length() - CHECKPOINT_SUFFIX.length()));
+                if(number < checkpoint)
+                    Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    //waits until everything logged so far is on disk
+    public void sync() throws IOException {
+        log.sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if(checkpointer != null)
+            checkpointer.shutdownNow();
+        log.close();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getRecords() {
+        return log.getAppended();
+    }
+
+    public long getSyncs() {
+        return log.getSyncs();
+    }
+
+    public long getBytesWritten() {
+        return log.getBytesWritten();
+    }
+
+    public synchronized int getCheckpoints() {
+        return checkpoints;
+    }
+
+    public synchronized long getTotalCheckpointTime() {
+        return totalCheckpointTime;
+    }
+
+    private void debug(String line) {
+        System.out.println("[Journal] " + line);
+    }
+
+    public static class Builder {
+        private final Path directory;
+        private long flushInterval;
+        private long checkpointInterval;
+
+        public Builder(Path directory) {
+            this.directory = directory;
+            this.flushInterval = 5;
+            this.checkpointInterval = TimeUnit.MINUTES.toMillis(5);
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public long getFlushInterval() {
+            return flushInterval;
+        }
+
+        //how long in milliseconds a batch may gather before it is forced to disk
+        public Builder setFlushInterval(long flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        public long getCheckpointInterval() {
+            return checkpointInterval;
+        }
+
+        //milliseconds between checkpoints, 0 to only checkpoint when asked
+        public Builder setCheckpointInterval(long checkpointInterval) {
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        public CrawlJournal build() throws IOException {
+            return new CrawlJournal(this);
+        }
+    }
+}
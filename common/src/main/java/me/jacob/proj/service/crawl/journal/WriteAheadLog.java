@@ -0,0 +1,325 @@
+package me.jacob.proj.service.crawl.journal;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append only log of records split into numbered segment files. Appending only copies the record
+ * into a buffer, a background thread writes whatever has gathered and forces it to disk in one go,
+ * so many records share each fsync. It waits up to the flush interval for a batch to gather, less
+ * if the buffer fills or a writer asks to {@link #sync()}.
+ * <p>
+ * Each record is framed by its length and a CRC32 of its bytes. A crash can leave the last batch
+ * half written, reading stops at the first record that is cut short or fails its check. A new
+ * segment's directory entry is forced to disk along with the file, or a crash could lose the file.
+ */
+public class WriteAheadLog implements Closeable {
+
+    //flush early once this much is waiting
+    private final static int MAX_BATCH = 1 << 20;
+    //the largest record, a torn length claiming more is not allocated
+    private final static int MAX_RECORD = 1 << 26;
+
+    private final Path directory;
+    private final String prefix;
+    private final long flushInterval;
+    private final Thread flusher;
+
+    //the order locks are taken in is channel then buffer, appenders only ever take the buffer lock
+    private final Object channelLock;
+    private final Object bufferLock;
+
+    private FileChannel channel;
+    private long segment;
+
+    private byte[] buffer;
+    private int buffered;
+    private long appended;
+    private long durable;
+    private boolean flushRequested;
+    private boolean closed;
+    private IOException failure;
+
+    //-- Stats Divider --//
+    private long syncs;
+    private long bytesWritten;
+
+    public WriteAheadLog(Path directory, String prefix, long segment, long flushInterval, TimeUnit unit) throws IOException {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.flushInterval = unit.toNanos(flushInterval);
+        this.channelLock = new Object();
+        this.bufferLock = new Object();
+        this.buffer = new byte[1 << 16];
+        this.segment = segment;
+        this.channel = openSegment(segment);
+
+        this.flusher = new Thread(this::flushLoop,"Log-Flusher-"+prefix);
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public Path segmentFile(long segment) {
+        return directory.resolve(String.format("%s-%010d.log",prefix,segment));
+    }
+
+    //copies the record into the next batch, it is on disk once a later sync returns
+    public void append(byte[] record) throws IOException {
+        if(record.length > MAX_RECORD)
+            throw new IOException("a record can be at most "+MAX_RECORD+" bytes, not "+record.length);
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        synchronized (bufferLock) {
+            if(failure != null)
+                throw failure;
+            if(closed)
+                throw new IOException("the log is closed");
+
+            int needed = buffered + 8 + record.length;
+            if(needed > buffer.length)
+                buffer = Arrays.copyOf(buffer,Math.max(needed,buffer.length * 2));
+
+            putInt(buffer,buffered,record.length);
+            putInt(buffer,buffered + 4,(int) crc.getValue());
+            System.arraycopy(record,0,buffer,buffered + 8,record.length);
+            buffered = needed;
+            appended++;
+
+            if(buffered >= MAX_BATCH) {
+                flushRequested = true;
+                bufferLock.notifyAll();
+            }
+        }
+    }
+
+    //waits until every record appended before the call is on disk
+    public void sync() throws IOException {
+        synchronized (bufferLock) {
+            long wanted = appended;
+            flushRequested = true;
+            bufferLock.notifyAll();
+            while (durable < wanted && failure == null && !closed) {
+                try {
+                    bufferLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted waiting for the log to sync");
+                }
+            }
+            if(failure != null)
+                throw failure;
+        }
+    }
+
+    /**
+     * Writes out what is buffered, then starts the next segment. Every record appended before the
+     * call is in an earlier segment, every record after it in the new one. Returns the new segment.
+     */
+    public long rotate() throws IOException {
+        synchronized (channelLock) {
+            writeBatch();
+            channel.close();
+            segment++;
+            channel = openSegment(segment);
+            return segment;
+        }
+    }
+
+    public long getSegment() {
+        synchronized (channelLock) {
+            return segment;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (channelLock) {
+            if(channel.isOpen()) {
+                writeBatch();
+                channel.close();
+            }
+            synchronized (bufferLock) {
+                closed = true;
+                bufferLock.notifyAll();
+            }
+        }
+        flusher.interrupt();
+    }
+
+    public long getAppended() {
+        synchronized (bufferLock) {
+            return appended;
+        }
+    }
+
+    public long getSyncs() {
+        synchronized (channelLock) {
+            return syncs;
+        }
+    }
+
+    public long getBytesWritten() {
+        synchronized (channelLock) {
+            return bytesWritten;
+        }
+    }
+
+    private void flushLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                synchronized (bufferLock) {
+                    while (buffered == 0 && !closed) {
+                        bufferLock.wait();
+                    }
+                    if(closed)
+                        return;
+
+                    //give other writers the rest of the interval to join the batch
+                    long deadline = System.nanoTime() + flushInterval;
+                    long left;
+                    while (!flushRequested && (left = deadline - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(bufferLock,left);
+                    }
+                }
+
+                synchronized (channelLock) {
+                    if(channel.isOpen())
+                        writeBatch();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                synchronized (bufferLock) {
+                    failure = e;
+                    bufferLock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    //only called holding the channel lock, so batches reach the file in the order they were taken
+    private void writeBatch() throws IOException {
+        byte[] batch;
+        int length;
+        long upTo;
+        synchronized (bufferLock) {
+            flushRequested = false;
+            if(buffered == 0)
+                return;
+
+            batch = buffer;
+            length = buffered;
+            upTo = appended;
+            buffer = new byte[Math.min(batch.length,MAX_BATCH * 2)];
+            buffered = 0;
+        }
+
+        ByteBuffer bytes = ByteBuffer.wrap(batch,0,length);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        channel.force(false);
+        syncs++;
+        bytesWritten += length;
+
+        synchronized (bufferLock) {
+            durable = upTo;
+            bufferLock.notifyAll();
+        }
+    }
+
+    private FileChannel openSegment(long segment) throws IOException {
+        Path file = segmentFile(segment);
+        boolean created = !Files.exists(file);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if(created)
+            syncDirectory(directory);
+        return channel;
+    }
+
+    //forces the entries of the directory to disk, so a file created, renamed or deleted in it stays that way
+    public static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            //windows can't open a directory, its file system keeps the entries safe itself
+        }
+    }
+
+    /**
+     * Writes records to a file framed the same way as the log, for files written in one go such
+     * as checkpoints.
+     */
+    public static DataOutputStream frame(DataOutputStream out, byte[] record) throws IOException {
+        if(record.length > MAX_RECORD)
+            throw new IOException("a record can be at most "+MAX_RECORD+" bytes, not "+record.length);
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        out.writeInt(record.length);
+        out.writeInt((int) crc.getValue());
+        out.write(record);
+        return out;
+    }
+
+    /**
+     * Hands every whole record in the file to the reader in order. Returns false if the file ends in
+     * a record that was cut short or is corrupt, everything before it has been read.
+     */
+    public static boolean read(Path file, RecordReader reader) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file),1 << 16))) {
+            CRC32 crc = new CRC32();
+            //the bytes left after the length and checksum of the record being read
+            long left = Files.size(file);
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return true;
+                }
+
+                //a torn length can be anything, it is only trusted if the record fits in the file
+                left -= 8;
+                if(length < 0 || length > MAX_RECORD || length > left)
+                    return false;
+                left -= length;
+
+                byte[] record = new byte[length];
+                try {
+                    int checksum = in.readInt();
+                    in.readFully(record);
+                    crc.reset();
+                    crc.update(record);
+                    if((int) crc.getValue() != checksum)
+                        return false;
+                } catch (EOFException e) {
+                    return false;
+                }
+
+                reader.read(new DataInputStream(new ByteArrayInputStream(record)));
+            }
+        }
+    }
+
+    private static void putInt(byte[] into, int at, int value) {
+        into[at] = (byte) (value >>> 24);
+        into[at + 1] = (byte) (value >>> 16);
+        into[at + 2] = (byte) (value >>> 8);
+        into[at + 3] = (byte) value;
+    }
+
+    public interface RecordReader {
+        void read(DataInputStream record) throws IOException;
+    }
+}
@@ -0,0 +1,108 @@
+package me.jacob.proj.util;
+
+import me.jacob.proj.model.PageRepository;
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.model.map.HashMapLinkRepository;
+import me.jacob.proj.model.map.HashMapPageRepository;
+import me.jacob.proj.service.LinkService;
+import me.jacob.proj.service.Wikipedia;
+import me.jacob.proj.service.crawl.WikiCrawler;
+import me.jacob.proj.service.crawl.analysis.factory.TestAnalyzerFactory;
+import me.jacob.proj.service.crawl.fetch.AdaptiveFetchScheduler;
+import me.jacob.proj.service.crawl.fetch.DocumentFetcher;
+import me.jacob.proj.service.crawl.fetch.HttpClientDocumentFetcher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crawls a synthetic site from a {@link StubWikiServer} that can only hold so many requests at once
+ * and only takes so many a second, answering the rest with 503 and 429. The crawl is run with every
+ * fetch sent as soon as it is taken, then through an {@link AdaptiveFetchScheduler}. Reports the
+ * pages crawled, since a throttled page is stashed rather than crawled, the requests the server
+ * refused, and for the scheduler how its limit moved and how many fetches it held back.
+ * <p>
+ * usage: AdaptiveFetchBenchmark [pages] [latency ms] [server capacity] [server requests a second] [fetches in flight]
+ */
+public class AdaptiveFetchBenchmark {
+
+    private final static PrintStream OUT = System.out;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 4_000;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        double rate = args.length > 3 ? Double.parseDouble(args[3]) : 800;
+        int inFlight = args.length > 4 ? Integer.parseInt(args[4]) : 500;
+
+        SyntheticGraph graph = new SyntheticGraph(pages,8,42);
+        try (StubWikiServer server = new StubWikiServer(StubWikiServer.syntheticSite(graph),latency,TimeUnit.MILLISECONDS)) {
+            server.setCapacity(capacity);
+            server.setRateLimit(rate);
+            OUT.printf("%d pages, %d ms a response, the server holds %d requests and takes %.0f a second, %d fetches in flight%n",
+                    pages,latency,capacity,rate,inFlight);
+            OUT.printf("%-12s %8s %10s %8s %8s %10s %10s %10s %8s%n","mode","pages","requests","503","429","time ms","pages/s",
+                    "peak queue","rejects");
+
+            crawl(server,new HttpClientDocumentFetcher(server.getRoot()),null,inFlight,"unscheduled");
+
+            //a little under the server's rate, the limit is left to find its capacity
+            AdaptiveFetchScheduler scheduler = new AdaptiveFetchScheduler.Builder(new HttpClientDocumentFetcher(server.getRoot()))
+                    .setRequestsPerSecond(rate * 0.9)
+                    .setBurst(rate / 10)
+                    .build();
+            crawl(server,scheduler,scheduler,inFlight,"adaptive");
+        }
+    }
+
+    private static void crawl(StubWikiServer server, DocumentFetcher fetcher, AdaptiveFetchScheduler scheduler, int inFlight,
+                              String mode) throws InterruptedException {
+        PageRepository repository = new HashMapPageRepository(new AtomicIntCounter());
+        LinkService service = new LinkService(new HashMapLinkRepository(repository), repository);
+        service.setTimeBetweenUpdates(Duration.ofHours(1));
+        Wikipedia wikipedia = new Wikipedia(service, repository);
+
+        WikiCrawler crawler = new WikiCrawler.Builder(wikipedia, service)
+                .setShutDownOnSize(true)
+                .setMaxInFlightFetches(inFlight)
+                .setAnalyzer(new TestAnalyzerFactory(wikipedia))
+                .setFetcher(fetcher)
+                .build();
+
+        //the limit every quarter of a second, to see it back off and settle
+        List<Integer> limits = new ArrayList<>();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        if(scheduler != null)
+            sampler.scheduleAtFixedRate(() -> limits.add(scheduler.getLimit()),250,250,TimeUnit.MILLISECONDS);
+
+        server.resetStats();
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long before = System.nanoTime();
+        try {
+            crawler.start(new WikiLink("/wiki/Page_0"));
+            crawler.await();
+        } finally {
+            System.setOut(OUT);
+        }
+        long elapsed = System.nanoTime() - before;
+        sampler.shutdownNow();
+        sampler.awaitTermination(1,TimeUnit.SECONDS);
+
+        int crawled = wikipedia.size();
+        OUT.printf("%-12s %8d %10d %8d %8d %10d %10.0f %10s %8s%n",mode,crawled,server.getRequests(),server.getOverloaded(),
+                server.getTooManyRequests(),elapsed / 1_000_000,crawled / (elapsed / 1e9),
+                scheduler == null ? "-" : scheduler.getPeakQueueDepth(),scheduler == null ? "-" : scheduler.getRejected());
+        if(scheduler != null) {
+            OUT.printf("%-12s limit every 250 ms: %s%n","",limits);
+            OUT.printf("%-12s %d throttled, %d errors, %d fetched%n","",scheduler.getThrottled(),scheduler.getErrors(),
+                    scheduler.getFetched());
+        }
+    }
+}
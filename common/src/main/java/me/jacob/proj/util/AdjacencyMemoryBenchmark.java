@@ -0,0 +1,180 @@
+package me.jacob.proj.util;
+
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.model.map.HashMapPageRepository;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compares the heap the links of a {@link HashMapPageRepository} take up, and the time to read them
+ * back with getNeighbours, against the layout the repository had before it kept them as int lists:
+ * a set of pages for the out links and one for the in links of every page, keyed by boxed ids, plus
+ * the copy of every link each page kept in a concurrent map at both of its ends. The old layout is rebuilt here to
+ * measure against. The pages are made before either is measured, only the links are counted. The
+ * heap is read from the class histogram of the live objects, the used size of the heap after a
+ * collection also counts the room lost to fragmentation.
+ * <p>
+ * usage: AdjacencyMemoryBenchmark [pages] [average degree]
+ */
+public class AdjacencyMemoryBenchmark {
+
+    private final static int ROUNDS = 5;
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+        SyntheticGraph graph = new SyntheticGraph(pages,degree,42);
+        HashMapPageRepository repository = new HashMapPageRepository(new AtomicIntCounter());
+        List<WikiPage> created = graph.newPages(repository);
+        repository.createPages(created);
+        System.out.println(pages+" pages with an average of "+degree+" links");
+
+        long before = usedHeap();
+        LegacyAdjacency legacy = new LegacyAdjacency(created);
+        graph.forEachEdge(legacy::addEdge);
+        long legacyBytes = usedHeap() - before;
+        long edges = legacy.edges;
+        System.out.printf("boxed sets:  %.1f bytes/link%n",(double) legacyBytes / edges);
+        long legacyTime = time(() -> {
+            for(WikiPage page : created) {
+                for(WikiPage neighbour : legacy.getNeighbours(page.getUniqueId())) {
+                    sink += neighbour.getUniqueId();
+                }
+            }
+        });
+        long legacyPageTime = time(() -> {
+            for(WikiPage page : created) {
+                for(WikiPage neighbour : legacy.getPageNeighbours(page)) {
+                    sink += neighbour.getUniqueId();
+                }
+            }
+        });
+        legacy.clear();
+
+        before = usedHeap();
+        graph.forEachEdge((source, target) -> created.get(source).addNeighbour(created.get(target)));
+        for(WikiPage page : created) {
+            repository.savePage(page,true);
+        }
+        long intBytes = usedHeap() - before;
+        System.out.printf("int lists:   %.1f bytes/link, %d links saved%n",(double) intBytes / edges,repository.getAmountOfEdges());
+        long intTime = time(() -> {
+            for(WikiPage page : created) {
+                for(WikiPage neighbour : repository.getNeighbours(page.getUniqueId())) {
+                    sink += neighbour.getUniqueId();
+                }
+            }
+        });
+        long intPageTime = time(() -> {
+            for(WikiPage page : created) {
+                for(WikiPage neighbour : page.getNeighbours()) {
+                    sink += neighbour.getUniqueId();
+                }
+            }
+        });
+
+        System.out.printf("repository getNeighbours boxed sets: %.1f ns/link%n",(double) legacyTime / edges);
+        System.out.printf("repository getNeighbours int lists:  %.1f ns/link%n",(double) intTime / edges);
+        System.out.printf("page getNeighbours boxed sets:       %.1f ns/link%n",(double) legacyPageTime / edges);
+        System.out.printf("page getNeighbours int lists:        %.1f ns/link%n",(double) intPageTime / edges);
+
+        //keeps the loops from being optimised away
+        if(sink == 42)
+            System.out.println();
+    }
+
+    //the best of a few runs, the first ones only warm up the JIT
+    private static long time(Runnable run) {
+        long best = Long.MAX_VALUE;
+        for(int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            run.run();
+            best = Math.min(best,System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    //the histogram may count garbage the last collection left, so a full one is asked for first
+    private static long usedHeap() throws Exception {
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        String histogram = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName("com.sun.management:type=DiagnosticCommand"),"gcClassHistogram",
+                new Object[]{new String[0]},new String[]{String[].class.getName()});
+        String[] lines = histogram.trim().split("\n");
+        String[] total = lines[lines.length - 1].trim().split("\\s+");
+        return Long.parseLong(total[2]);
+    }
+
+    //the layout the links had before, getNeighbours handed out the saved set as the repository did
+    private static class LegacyAdjacency {
+
+        private final List<WikiPage> pages;
+        private final Map<Integer,Set<WikiPage>> neighbours = new HashMap<>();
+        private final Map<Integer,Set<WikiPage>> inLinks = new HashMap<>();
+        private final List<ConcurrentMap<WikiPage,Object>> cached = new ArrayList<>();
+        private final List<ConcurrentMap<WikiPage,Object>> cachedIn = new ArrayList<>();
+        private long edges;
+
+        private LegacyAdjacency(List<WikiPage> pages) {
+            this.pages = pages;
+            for(int i = 0; i < pages.size(); i++) {
+                cached.add(new ConcurrentHashMap<>());
+                cachedIn.add(new ConcurrentHashMap<>());
+            }
+        }
+
+        private void addEdge(int source, int target) {
+            WikiPage page = pages.get(source);
+            WikiPage neighbour = pages.get(target);
+            if(!neighbours.computeIfAbsent(source, k -> new LinkedHashSet<>()).add(neighbour))
+                return;
+
+            inLinks.computeIfAbsent(target, k -> new HashSet<>()).add(page);
+            cached.get(source).put(neighbour,new Object());
+            cachedIn.get(target).put(page,new Object());
+            edges++;
+        }
+
+        private Collection<WikiPage> getNeighbours(int id) {
+            Set<WikiPage> out = neighbours.get(id);
+            return out == null ? new ArrayList<>() : out;
+        }
+
+        //the copy a page made, every link it still held was checked against the saved ones twice,
+        //once to size the copy and once to skip it
+        private Collection<WikiPage> getPageNeighbours(WikiPage page) {
+            Set<WikiPage> out = neighbours.get(page.getUniqueId());
+            Collection<WikiPage> held = cached.get(page.getUniqueId()).keySet();
+            int degree = out == null ? 0 : out.size();
+            for(WikiPage neighbour : held) {
+                if(out == null || !out.contains(neighbour))
+                    degree++;
+            }
+
+            List<WikiPage> copy = new ArrayList<>(degree);
+            if(out != null)
+                copy.addAll(out);
+            for(WikiPage neighbour : held) {
+                if(out == null || !out.contains(neighbour))
+                    copy.add(neighbour);
+            }
+            return copy;
+        }
+
+        private void clear() {
+            neighbours.clear();
+            inLinks.clear();
+            cached.clear();
+            cachedIn.clear();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package me.jacob.proj.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size bit set that many threads may set bits in at once. Setting a bit reports whether
+ * this call was the one that set it, which lets a parallel search claim a page exactly once.
+ */
+public class AtomicBitSet {
+
+    private final AtomicLongArray words;
+    private final int size;
+
+    public AtomicBitSet(int size) {
+        if(size < 0)
+            throw new IllegalArgumentException("size must not be negative");
+
+        this.size = size;
+        this.words = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    public boolean get(int index) {
+        return (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    //returns true if the bit was clear before the call
+    public boolean set(int index) {
+        int word = index >>> 6;
+        long mask = 1L << index;
+        long current;
+        do {
+            current = words.get(word);
+            if((current & mask) != 0)
+                return false;
+        } while (!words.compareAndSet(word,current,current | mask));
+        return true;
+    }
+
+    public void clear() {
+        for(int i = 0; i < words.length(); i++) {
+            words.set(i,0);
+        }
+    }
+
+    public boolean isEmpty() {
+        for(int i = 0; i < words.length(); i++) {
+            if(words.get(i) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for(int i = 0; i < words.length(); i++) {
+            count += Long.bitCount(words.get(i));
+        }
+        return count;
+    }
+
+    public long getWord(int word) {
+        return words.get(word);
+    }
+
+    public int getWordCount() {
+        return words.length();
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,114 @@
+package me.jacob.proj.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bit set that grows as higher bits are set and that many threads may read and write at once.
+ * The bits live in fixed size chunks. Growing only copies the table of chunks, never the chunks
+ * themselves, so a bit set while the table grows can't be lost. Reads take no locks.
+ */
+public class ConcurrentBitSet {
+
+    //64 * 1024 bits to a chunk
+    private final static int CHUNK_SHIFT = 16;
+    private final static int CHUNK_WORDS = 1 << (CHUNK_SHIFT - 6);
+
+    private volatile AtomicLongArray[] chunks;
+
+    public ConcurrentBitSet() {
+        this.chunks = new AtomicLongArray[0];
+    }
+
+    public boolean get(int index) {
+        if(index < 0)
+            return false;
+
+        AtomicLongArray[] chunks = this.chunks;
+        int chunk = index >>> CHUNK_SHIFT;
+        if(chunk >= chunks.length || chunks[chunk] == null)
+            return false;
+
+        return (chunks[chunk].get((index >>> 6) & (CHUNK_WORDS - 1)) & (1L << index)) != 0;
+    }
+
+    public void set(int index, boolean value) {
+        if(value) {
+            set(index);
+        } else {
+            clear(index);
+        }
+    }
+
+    //returns true if the bit was clear before the call
+    public boolean set(int index) {
+        AtomicLongArray words = chunk(index,true);
+        int word = (index >>> 6) & (CHUNK_WORDS - 1);
+        long mask = 1L << index;
+        long current;
+        do {
+            current = words.get(word);
+            if((current & mask) != 0)
+                return false;
+        } while (!words.compareAndSet(word,current,current | mask));
+        return true;
+    }
+
+    //returns true if the bit was set before the call
+    public boolean clear(int index) {
+        AtomicLongArray words = chunk(index,false);
+        if(words == null)
+            return false;
+
+        int word = (index >>> 6) & (CHUNK_WORDS - 1);
+        long mask = 1L << index;
+        long current;
+        do {
+            current = words.get(word);
+            if((current & mask) == 0)
+                return false;
+        } while (!words.compareAndSet(word,current,current & ~mask));
+        return true;
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for(AtomicLongArray words : chunks) {
+            if(words == null)
+                continue;
+
+            for(int i = 0; i < words.length(); i++) {
+                count += Long.bitCount(words.get(i));
+            }
+        }
+        return count;
+    }
+
+    private AtomicLongArray chunk(int index, boolean create) {
+        if(index < 0)
+            throw new IndexOutOfBoundsException("index must not be negative: "+index);
+
+        int chunk = index >>> CHUNK_SHIFT;
+        AtomicLongArray[] chunks = this.chunks;
+        if(chunk < chunks.length && chunks[chunk] != null)
+            return chunks[chunk];
+
+        if(!create)
+            return null;
+
+        synchronized (this) {
+            chunks = this.chunks;
+            if(chunk >= chunks.length) {
+                AtomicLongArray[] grown = new AtomicLongArray[Math.max(chunk + 1, chunks.length * 2)];
+                System.arraycopy(chunks,0,grown,0,chunks.length);
+                chunks = grown;
+            }
+
+            if(chunks[chunk] == null)
+                chunks[chunk] = new AtomicLongArray(CHUNK_WORDS);
+
+            //published through the volatile write, the chunk is seen by any reader of the table
+            this.chunks = chunks;
+            return chunks[chunk];
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package me.jacob.proj.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.UnaryOperator;
+
+/**
+ * A table of values indexed by id that grows as higher ids are set and that many threads may read
+ * and write at once. Ids are handed out densely, so the table is an array rather than a map and a
+ * lookup never boxes the id. Like {@link ConcurrentBitSet} the values live in fixed size chunks and
+ * growing only copies the table of chunks. Reads take no locks.
+ */
+public class ConcurrentIdTable<T> {
+
+    //4096 values to a chunk
+    private final static int CHUNK_SHIFT = 12;
+    private final static int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private volatile AtomicReferenceArray<T>[] chunks;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentIdTable() {
+        this.chunks = new AtomicReferenceArray[0];
+    }
+
+    public T get(int id) {
+        if(id < 0)
+            return null;
+
+        AtomicReferenceArray<T>[] chunks = this.chunks;
+        int chunk = id >>> CHUNK_SHIFT;
+        if(chunk >= chunks.length || chunks[chunk] == null)
+            return null;
+
+        return chunks[chunk].get(id & (CHUNK_SIZE - 1));
+    }
+
+    public void set(int id, T value) {
+        AtomicReferenceArray<T> values = chunk(id,value != null);
+        if(values != null)
+            values.set(id & (CHUNK_SIZE - 1),value);
+    }
+
+    //sets the value only if there is none yet, returns the value the id ends up with
+    public T setIfAbsent(int id, T value) {
+        AtomicReferenceArray<T> values = chunk(id,true);
+        int index = id & (CHUNK_SIZE - 1);
+        if(values.compareAndSet(index,null,value))
+            return value;
+
+        return values.get(index);
+    }
+
+    public boolean compareAndSet(int id, T expected, T value) {
+        AtomicReferenceArray<T> values = chunk(id,true);
+        return values.compareAndSet(id & (CHUNK_SIZE - 1),expected,value);
+    }
+
+    //applies the change to the latest value, retrying if another thread changed it meanwhile
+    public T update(int id, UnaryOperator<T> change) {
+        AtomicReferenceArray<T> values = chunk(id,true);
+        return values.updateAndGet(id & (CHUNK_SIZE - 1),change);
+    }
+
+    //one past the highest id the table has room for, every id below it can be read
+    public int capacity() {
+        return chunks.length << CHUNK_SHIFT;
+    }
+
+    private AtomicReferenceArray<T> chunk(int id, boolean create) {
+        if(id < 0)
+            throw new IndexOutOfBoundsException("id must not be negative: "+id);
+
+        int chunk = id >>> CHUNK_SHIFT;
+        AtomicReferenceArray<T>[] chunks = this.chunks;
+        if(chunk < chunks.length && chunks[chunk] != null)
+            return chunks[chunk];
+
+        if(!create)
+            return null;
+
+        synchronized (this) {
+            chunks = this.chunks;
+            if(chunk >= chunks.length) {
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                AtomicReferenceArray<T>[] grown = new AtomicReferenceArray[Math.max(chunk + 1, chunks.length * 2)];
+                System.arraycopy(chunks,0,grown,0,chunks.length);
+                chunks = grown;
+            }
+
+            if(chunks[chunk] == null)
+                chunks[chunk] = new AtomicReferenceArray<>(CHUNK_SIZE);
+
+            //published through the volatile write, the chunk is seen by any reader of the table
+            this.chunks = chunks;
+            return chunks[chunk];
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package me.jacob.proj.util;
+
+import me.jacob.proj.model.PageRepository;
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.model.map.HashMapLinkRepository;
+import me.jacob.proj.model.map.HashMapPageRepository;
+import me.jacob.proj.service.LinkService;
+import me.jacob.proj.service.Wikipedia;
+import me.jacob.proj.service.crawl.WikiCrawler;
+import me.jacob.proj.service.crawl.analysis.factory.TestAnalyzerFactory;
+import me.jacob.proj.service.crawl.fetch.TestDocumentFetcher;
+import me.jacob.proj.service.crawl.journal.CrawlJournal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Crawls a synthetic site of test pages with and without a {@link CrawlJournal} to measure what
+ * logging costs, times a checkpoint of the crawled graph, which is paid once a checkpoint interval
+ * rather than per page, then stops a journaled crawl half way, resumes it into empty repositories and checks
+ * it ends with the same pages and links as the crawl that was never stopped. One page in twenty is
+ * missing from the site so some links are removed along the way.
+ * <p>
+ * usage: CrawlJournalBenchmark [pages] [average degree] [runs]
+ */
+public class CrawlJournalBenchmark {
+
+    private final static PrintStream OUT = System.out;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        SyntheticGraph graph = new SyntheticGraph(pages,degree,42);
+
+        //warm up, then take the best of the runs of each
+        crawl(graph,null,-1);
+        long plain = Long.MAX_VALUE;
+        long journaled = Long.MAX_VALUE;
+        long checkpoint = Long.MAX_VALUE;
+        Result expected = null;
+        for(int run = 0; run < runs; run++) {
+            long before = System.nanoTime();
+            expected = crawl(graph,null,-1);
+            plain = Math.min(plain,System.nanoTime() - before);
+
+            Path directory = Files.createTempDirectory("journal");
+            try {
+                try (CrawlJournal journal = new CrawlJournal.Builder(directory).setCheckpointInterval(0).build()) {
+                    before = System.nanoTime();
+                    Result logged = crawl(graph,journal,-1);
+                    journaled = Math.min(journaled,System.nanoTime() - before);
+                    check(expected,logged,"journaled crawl");
+                    if(run == runs - 1) {
+                        OUT.printf("journal: %d records, %d fsyncs, %.1f MB%n",journal.getRecords(),journal.getSyncs(),
+                                journal.getBytesWritten() / 1e6);
+                    }
+
+                    try (CrawlJournal again = new CrawlJournal.Builder(directory).setCheckpointInterval(0).build()) {
+                        again.attach(logged.wikipedia,logged.service);
+                        before = System.nanoTime();
+                        again.checkpoint();
+                        checkpoint = Math.min(checkpoint,System.nanoTime() - before);
+                    }
+                }
+            } finally {
+                delete(directory);
+            }
+        }
+
+        OUT.printf("%d pages, %d links%n",expected.pages,expected.links);
+        OUT.printf("without journal %d ms (%.0f pages/s), with journal %d ms (%.0f pages/s), overhead %.1f%%%n",
+                plain / 1_000_000,expected.pages / (plain / 1e9),journaled / 1_000_000,expected.pages / (journaled / 1e9),
+                (journaled - plain) * 100.0 / plain);
+        long interval = new CrawlJournal.Builder(null).getCheckpointInterval();
+        OUT.printf("checkpoint %.1f ms, %.3f%% of the time at the default interval of %d s%n",checkpoint / 1e6,
+                checkpoint / 1e4 / interval,interval / 1000);
+
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            try (CrawlJournal journal = new CrawlJournal.Builder(directory).build()) {
+                crawl(graph,journal,expected.pages / 2);
+                OUT.printf("stopped after %d pages%n",expected.pages / 2);
+            }
+
+            try (CrawlJournal journal = new CrawlJournal.Builder(directory).build()) {
+                long before = System.nanoTime();
+                Result resumed = crawl(graph,journal,-2);
+                OUT.printf("resumed to %d pages, %d links in %d ms%n",resumed.pages,resumed.links,(System.nanoTime() - before) / 1_000_000);
+                check(expected,resumed,"resumed crawl");
+            }
+        } finally {
+            delete(directory);
+        }
+        OUT.println("the resumed crawl matches the full crawl");
+    }
+
+    //an early stop of -1 crawls everything, -2 resumes the crawl in the journal. A crawl that stops early
+    //is still finishing the pages it fetched, so there is nothing to count
+    private static Result crawl(SyntheticGraph graph, CrawlJournal journal, int earlyStop) throws IOException, InterruptedException {
+        PageRepository repository = new HashMapPageRepository(new AtomicIntCounter());
+        LinkService service = new LinkService(new HashMapLinkRepository(repository), repository);
+        service.setTimeBetweenUpdates(Duration.ofHours(1));
+        Wikipedia wikipedia = new Wikipedia(service, repository);
+        TestDocumentFetcher fetcher = site(wikipedia,graph);
+
+        WikiCrawler crawler = new WikiCrawler.Builder(wikipedia, service)
+                .setShutDownOnSize(true)
+                .setShutDownOnEarlyStop(earlyStop >= 0)
+                .setEarlyStop(Math.max(earlyStop,-1))
+                //two consumers linking pages to each other at once can miss a link, so the counts would vary
+                .setConsumers(1)
+                .setProducers(2)
+                .setAnalyzer(new TestAnalyzerFactory(wikipedia))
+                .setFetcher(fetcher)
+                .setJournal(journal)
+                .build();
+
+        //the crawler reports every page it handles, none of it is wanted here
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            if(earlyStop == -2) {
+                crawler.resume();
+            } else {
+                crawler.start(new WikiLink("/wiki/Page_0"));
+            }
+            crawler.await();
+        } finally {
+            System.setOut(OUT);
+        }
+
+        if(earlyStop >= 0)
+            return null;
+
+        Result result = new Result();
+        result.wikipedia = wikipedia;
+        result.service = service;
+        for(WikiPage page : wikipedia.getAllPages()) {
+            if(page.isRemoved())
+                continue;
+
+            result.pages++;
+            result.links += page.getDegree();
+        }
+        return result;
+    }
+
+    private static TestDocumentFetcher site(Wikipedia wikipedia, SyntheticGraph graph) {
+        TestPage[] pages = new TestPage[graph.getPages()];
+        for(int id = 0; id < pages.length; id++) {
+            pages[id] = new TestPage(wikipedia,"Page_"+id);
+            pages[id].setTitle("Page "+id);
+            pages[id].setDescription("Synthetic page "+id);
+        }
+        graph.forEachEdge((source,target) -> pages[source].addLink(pages[target]));
+
+        TestDocumentFetcher fetcher = new TestDocumentFetcher();
+        for(int id = 0; id < pages.length; id++) {
+            if(id == 0 || id % 20 != 0)
+                fetcher.addPage(pages[id]);
+        }
+        return fetcher;
+    }
+
+    private static void check(Result expected, Result actual, String name) {
+        if(expected.pages != actual.pages || expected.links != actual.links)
+            throw new IllegalStateException("the "+name+" found "+actual.pages+" pages and "+actual.links+" links, expected "
+                    +expected.pages+" and "+expected.links);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static class Result {
+        private Wikipedia wikipedia;
+        private LinkService service;
+        private int pages;
+        private long links;
+    }
+}
@@ -0,0 +1,121 @@
+package me.jacob.proj.util;
+
+import me.jacob.proj.model.PageRepository;
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.model.map.HashMapLinkRepository;
+import me.jacob.proj.model.map.HashMapPageRepository;
+import me.jacob.proj.service.LinkService;
+import me.jacob.proj.service.ShortestPaths;
+import me.jacob.proj.service.Wikipedia;
+import me.jacob.proj.service.crawl.WikiCrawler;
+import me.jacob.proj.service.crawl.analysis.factory.AnalyzerFactory;
+import me.jacob.proj.service.crawl.analysis.factory.TestAnalyzerFactory;
+import me.jacob.proj.service.crawl.analysis.factory.WikiAnalyzerFactory;
+import me.jacob.proj.service.crawl.fetch.DocumentFetcher;
+import me.jacob.proj.service.crawl.fetch.HttpClientDocumentFetcher;
+import me.jacob.proj.service.crawl.fetch.WebDocumentFetcher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Crawls the testpages corpus, then a larger synthetic site, from a {@link StubWikiServer} with a
+ * delay on every response, once fetching with {@link WebDocumentFetcher} and once with
+ * {@link HttpClientDocumentFetcher}. Both must find the same graph. Reports the time taken, the
+ * connections the server saw opened and the bytes it sent.
+ * <p>
+ * usage: HttpClientFetchBenchmark [testpages directory] [latency ms] [synthetic pages] [fetches in flight]
+ */
+public class HttpClientFetchBenchmark {
+
+    private final static PrintStream OUT = System.out;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path testpages = Path.of(args.length > 0 ? args[0] : "testpages");
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        int pages = args.length > 2 ? Integer.parseInt(args[2]) : 4_000;
+        int inFlight = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+
+        OUT.printf("%-10s %-8s %8s %8s %10s %12s %12s %10s%n","site","fetcher","pages","links","time ms","connections","KB sent","distance");
+        try (StubWikiServer server = new StubWikiServer(StubWikiServer.directorySite(testpages),latency,TimeUnit.MILLISECONDS)) {
+            Function<Wikipedia,AnalyzerFactory> analyzer = WikiAnalyzerFactory::new;
+            Result web = crawl(server,new WebDocumentFetcher(server.getRoot()),analyzer,"/wiki/Black_hole",inFlight,"testpages","jsoup");
+            Result client = crawl(server,new HttpClientDocumentFetcher(server.getRoot()),analyzer,"/wiki/Black_hole",inFlight,"testpages","http");
+            check(web,client);
+        }
+
+        SyntheticGraph graph = new SyntheticGraph(pages,8,42);
+        try (StubWikiServer server = new StubWikiServer(StubWikiServer.syntheticSite(graph),latency,TimeUnit.MILLISECONDS)) {
+            Function<Wikipedia,AnalyzerFactory> analyzer = TestAnalyzerFactory::new;
+            Result web = crawl(server,new WebDocumentFetcher(server.getRoot()),analyzer,"/wiki/Page_0",inFlight,"synthetic","jsoup");
+            Result client = crawl(server,new HttpClientDocumentFetcher(server.getRoot()),analyzer,"/wiki/Page_0",inFlight,"synthetic","http");
+            check(web,client);
+        }
+        OUT.println("both fetchers found the same pages and links");
+    }
+
+    private static Result crawl(StubWikiServer server, DocumentFetcher fetcher, Function<Wikipedia,AnalyzerFactory> analyzer,
+                                String start, int inFlight, String site, String name) throws InterruptedException {
+        PageRepository repository = new HashMapPageRepository(new AtomicIntCounter());
+        LinkService service = new LinkService(new HashMapLinkRepository(repository), repository);
+        service.setTimeBetweenUpdates(Duration.ofHours(1));
+        Wikipedia wikipedia = new Wikipedia(service, repository);
+
+        WikiCrawler crawler = new WikiCrawler.Builder(wikipedia, service)
+                .setShutDownOnSize(true)
+                .setMaxInFlightFetches(inFlight)
+                .setAnalyzer(analyzer.apply(wikipedia))
+                .setFetcher(fetcher)
+                .build();
+
+        server.resetStats();
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long before = System.nanoTime();
+        try {
+            crawler.start(new WikiLink(start));
+            crawler.await();
+        } finally {
+            System.setOut(OUT);
+        }
+        long elapsed = System.nanoTime() - before;
+
+        Result result = new Result();
+        for(WikiPage page : wikipedia.getAllPages()) {
+            if(page.isRemoved())
+                continue;
+
+            result.pages++;
+            result.links += page.getDegree();
+        }
+
+        //a path across the corpus, the synthetic site has no titles worth asking for
+        WikiPage from = wikipedia.getPage("Black hole");
+        WikiPage to = wikipedia.getPage("Ultra-high-energy cosmic ray");
+        if(from != null && to != null) {
+            ShortestPaths paths = wikipedia.getShortestPaths(from,to);
+            result.distance = paths.getDistance();
+        }
+
+        OUT.printf("%-10s %-8s %8d %8d %10d %12d %12.1f %10s%n",site,name,result.pages,result.links,elapsed / 1_000_000,
+                server.getConnections(),server.getBytesSent() / 1e3,result.distance < 0 ? "-" : result.distance);
+        return result;
+    }
+
+    private static void check(Result expected, Result actual) {
+        if(expected.pages != actual.pages || expected.links != actual.links || expected.distance != actual.distance)
+            throw new IllegalStateException("the fetchers disagree: "+expected.pages+" pages, "+expected.links+" links and distance "
+                    +expected.distance+" against "+actual.pages+", "+actual.links+" and "+actual.distance);
+    }
+
+    private static class Result {
+        private int pages;
+        private long links;
+        private int distance = -1;
+    }
+}
@@ -0,0 +1,251 @@
+package me.jacob.proj.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * The links between pages held as primitive ints keyed by page id in an open addressing table. Each
+ * page has one array holding both directions: the amount of out links, the amount of in links, the
+ * out links, then the in links with room to grow. The out links of a page are always replaced whole,
+ * which builds a new array, so they are never written to once set. An edge costs the two ints it is
+ * stored as, a page the header of its array and its slot in the table. Not thread safe, callers lock
+ * around it.
+ */
+public class IntAdjacency {
+
+    private final static int MIN_CAPACITY = 16;
+    private final static int OUT = 0;
+    private final static int IN = 1;
+    private final static int HEADER = 2;
+    //shared by every page without links, it is replaced before anything is written to it
+    private final static int[] NONE = new int[HEADER];
+
+    private int[] keys;
+    //null marks a free slot
+    private int[][] links;
+    private int size;
+    private int edges;
+
+    public IntAdjacency() {
+        this(MIN_CAPACITY);
+    }
+
+    public IntAdjacency(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expected) {
+            capacity <<= 1;
+        }
+        this.keys = new int[capacity];
+        this.links = new int[capacity][];
+    }
+
+    //replaces the out links of the source with the first count targets, they must not repeat
+    public void setOut(int source, int[] targets, int count) {
+        clearOut(source);
+        if(count == 0)
+            return;
+
+        //the slot first, claiming it may grow the table
+        int slot = slot(source);
+        int[] old = links[slot];
+        int in = old[IN];
+        int[] updated = new int[HEADER + count + in];
+        updated[OUT] = count;
+        updated[IN] = in;
+        System.arraycopy(targets,0,updated,HEADER,count);
+        System.arraycopy(old,HEADER + old[OUT],updated,HEADER + count,in);
+        links[slot] = updated;
+
+        edges += count;
+        for(int i = 0; i < count; i++) {
+            addIn(targets[i],source);
+        }
+    }
+
+    public void clearOut(int source) {
+        int slot = find(source);
+        if(slot < 0)
+            return;
+
+        int[] old = links[slot];
+        int out = old[OUT];
+        if(out == 0)
+            return;
+
+        int in = old[IN];
+        int[] updated = NONE;
+        if(in > 0) {
+            updated = new int[HEADER + in];
+            updated[IN] = in;
+            System.arraycopy(old,HEADER + out,updated,HEADER,in);
+        }
+        links[slot] = updated;
+
+        edges -= out;
+        for(int i = HEADER; i < HEADER + out; i++) {
+            removeIn(old[i],source);
+        }
+    }
+
+    public int getOutDegree(int source) {
+        int slot = find(source);
+        return slot < 0 ? 0 : links[slot][OUT];
+    }
+
+    public int getInDegree(int target) {
+        int slot = find(target);
+        return slot < 0 ? 0 : links[slot][IN];
+    }
+
+    public boolean containsOut(int source, int target) {
+        return anyOut(source, t -> t == target);
+    }
+
+    //copies the out links of the source to the start of the array, returns how many there were
+    public int copyOut(int source, int[] into) {
+        int slot = find(source);
+        if(slot < 0)
+            return 0;
+
+        int[] list = links[slot];
+        System.arraycopy(list,HEADER,into,0,list[OUT]);
+        return list[OUT];
+    }
+
+    public void forEachOut(int source, IntConsumer action) {
+        anyOut(source, target -> {
+            action.accept(target);
+            return false;
+        });
+    }
+
+    public boolean anyOut(int source, IntPredicate predicate) {
+        int slot = find(source);
+        if(slot < 0)
+            return false;
+
+        int[] list = links[slot];
+        int end = HEADER + list[OUT];
+        for(int i = HEADER; i < end; i++) {
+            if(predicate.test(list[i]))
+                return true;
+        }
+        return false;
+    }
+
+    public void forEachIn(int target, IntConsumer action) {
+        anyIn(target, source -> {
+            action.accept(source);
+            return false;
+        });
+    }
+
+    public boolean anyIn(int target, IntPredicate predicate) {
+        int slot = find(target);
+        if(slot < 0)
+            return false;
+
+        int[] list = links[slot];
+        int start = HEADER + list[OUT];
+        int end = start + list[IN];
+        for(int i = start; i < end; i++) {
+            if(predicate.test(list[i]))
+                return true;
+        }
+        return false;
+    }
+
+    public int getEdges() {
+        return edges;
+    }
+
+    public void clear() {
+        keys = new int[MIN_CAPACITY];
+        links = new int[MIN_CAPACITY][];
+        size = 0;
+        edges = 0;
+    }
+
+    private void addIn(int target, int source) {
+        int slot = slot(target);
+        int[] list = links[slot];
+        int end = HEADER + list[OUT] + list[IN];
+        if(end == list.length) {
+            //the room grows with the in links alone, most pages are only linked from a handful of others
+            list = Arrays.copyOf(list,end + Math.max(2,list[IN] >> 1));
+            links[slot] = list;
+        }
+        list[end] = source;
+        list[IN]++;
+    }
+
+    private void removeIn(int target, int source) {
+        int slot = find(target);
+        if(slot < 0)
+            return;
+
+        int[] list = links[slot];
+        int start = HEADER + list[OUT];
+        int last = start + list[IN] - 1;
+        for(int i = start; i <= last; i++) {
+            if(list[i] == source) {
+                //the order of the in links means nothing, the last one fills the hole
+                list[i] = list[last];
+                list[IN]--;
+                return;
+            }
+        }
+    }
+
+    private int find(int key) {
+        int mask = keys.length - 1;
+        int slot = IntObjectMap.hash(key) & mask;
+        while (links[slot] != null) {
+            if(keys[slot] == key)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    //the slot of the key, claimed if the key is new
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int slot = IntObjectMap.hash(key) & mask;
+        while (links[slot] != null) {
+            if(keys[slot] == key)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+
+        if(size + 1 > keys.length * 3 / 4) {
+            grow();
+            return slot(key);
+        }
+
+        keys[slot] = key;
+        links[slot] = NONE;
+        size++;
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[][] oldLinks = links;
+        keys = new int[oldKeys.length * 2];
+        links = new int[oldKeys.length * 2][];
+        int mask = keys.length - 1;
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldLinks[i] == null)
+                continue;
+
+            int slot = IntObjectMap.hash(oldKeys[i]) & mask;
+            while (links[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            links[slot] = oldLinks[i];
+        }
+    }
+}
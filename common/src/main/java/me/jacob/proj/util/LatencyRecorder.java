@@ -0,0 +1,71 @@
+package me.jacob.proj.util;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the most recent latencies in a ring so percentiles follow the current load rather than the
+ * whole lifetime of the program. Recording is a single array write, the sorting is only paid for
+ * when a percentile is asked for.
+ */
+public class LatencyRecorder {
+
+    private final long[] samples;
+    private int next;
+    private int size;
+    private long count;
+    private long max;
+
+    public LatencyRecorder(int window) {
+        if(window <= 0)
+            throw new IllegalArgumentException("window must be positive");
+
+        this.samples = new long[window];
+        this.next = 0;
+        this.size = 0;
+        this.count = 0;
+        this.max = 0;
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+        count++;
+        max = Math.max(max,nanos);
+    }
+
+    //the latency at the percentile, between 0 and 100, of the recent samples or 0 if there are none
+    public long getPercentile(double percentile, TimeUnit unit) {
+        long[] sorted;
+        synchronized (this) {
+            if(size == 0)
+                return 0;
+
+            sorted = Arrays.copyOf(samples,size);
+        }
+
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        index = Math.max(0,Math.min(sorted.length - 1,index));
+        return unit.convert(sorted[index],TimeUnit.NANOSECONDS);
+    }
+
+    //the amount of latencies ever recorded
+    public synchronized long getCount() {
+        return count;
+    }
+
+    //the highest latency ever recorded
+    public synchronized long getMax(TimeUnit unit) {
+        return unit.convert(max,TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "p50=" + getPercentile(50,TimeUnit.MILLISECONDS) + "ms" +
+                ", p95=" + getPercentile(95,TimeUnit.MILLISECONDS) + "ms" +
+                ", p99=" + getPercentile(99,TimeUnit.MILLISECONDS) + "ms" +
+                ", max=" + getMax(TimeUnit.MILLISECONDS) + "ms";
+    }
+}
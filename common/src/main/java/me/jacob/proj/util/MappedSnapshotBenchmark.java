@@ -0,0 +1,82 @@
+package me.jacob.proj.util;
+
+import me.jacob.proj.model.GraphSnapshot;
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.model.mapped.MappedGraphWriter;
+import me.jacob.proj.model.mapped.MappedPageRepository;
+import me.jacob.proj.service.PageGraphShortestPathStrategy;
+import me.jacob.proj.service.ShortestPathStrategy;
+import me.jacob.proj.service.SnapshotShortestPathStrategy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Writes a synthetic graph as a snapshot file, then times opening it with
+ * {@link MappedPageRepository}, looking pages up by title and link, and answering path queries from
+ * the mapped file against the same queries on the graph held on the heap. The answers must agree.
+ * <p>
+ * usage: MappedSnapshotBenchmark [pages] [average degree] [queries]
+ */
+public class MappedSnapshotBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        SyntheticGraph graph = new SyntheticGraph(pages,degree,42);
+        GraphSnapshot snapshot = graph.toSnapshot();
+        Path file = Files.createTempFile("graph",".snapshot");
+        try {
+            long before = System.nanoTime();
+            MappedGraphWriter.write(snapshot,file);
+            long written = System.nanoTime() - before;
+            System.out.printf("%d pages, %d links, written in %d ms, %.1f MB%n",pages,snapshot.getAmountOfEdges(),
+                    written / 1_000_000,Files.size(file) / 1e6);
+
+            before = System.nanoTime();
+            MappedPageRepository mapped = MappedPageRepository.open(file);
+            long opened = System.nanoTime() - before;
+            System.out.printf("opened in %.2f ms%n",opened / 1e6);
+
+            Random random = new Random(3);
+            int lookups = 100_000;
+            before = System.nanoTime();
+            for(int i = 0; i < lookups; i++) {
+                WikiPage expected = snapshot.getPage(random.nextInt(pages));
+                WikiPage byTitle = mapped.getPage(expected.getTitle());
+                WikiPage byLink = mapped.getPage(expected.getLink());
+                if(byTitle == null || byTitle.getUniqueId() != expected.getUniqueId() || byLink != byTitle)
+                    throw new IllegalStateException("lookup of "+expected+" found "+byTitle+" and "+byLink);
+            }
+            long looked = System.nanoTime() - before;
+            System.out.printf("lookups by title and link: %.0f ns each%n",looked / (lookups * 2.0));
+
+            ShortestPathStrategy heap = new SnapshotShortestPathStrategy(snapshot);
+            ShortestPathStrategy onFile = new PageGraphShortestPathStrategy(mapped);
+            long heapTime = 0;
+            long fileTime = 0;
+            for(int q = 0; q < queries; q++) {
+                int start = random.nextInt(pages);
+                int end = random.nextInt(pages);
+
+                before = System.nanoTime();
+                int expected = heap.getShortestPaths(snapshot.getPage(start),snapshot.getPage(end)).getDistance();
+                heapTime += System.nanoTime() - before;
+
+                before = System.nanoTime();
+                int distance = onFile.getShortestPaths(mapped.getPage(start),mapped.getPage(end)).getDistance();
+                fileTime += System.nanoTime() - before;
+
+                if(distance != expected)
+                    throw new IllegalStateException("distance from "+start+" to "+end+" is "+expected+" but the file gave "+distance);
+            }
+            System.out.printf("queries: heap %.2f ms, mapped %.2f ms on average%n",heapTime / (queries * 1e6),fileTime / (queries * 1e6));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package me.jacob.proj.util;
+
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.model.map.HashMapPageRepository;
+import me.jacob.proj.service.BFSShortestPathStrategy;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Measures the bytes allocated to read the neighbours of pages held in a {@link HashMapPageRepository},
+ * copying them with getNeighbours against visiting them with forEachNeighbour, and the bytes a BFS
+ * query allocates for every link it follows. The counts come from the allocation counter the JVM
+ * keeps for each thread.
+ * <p>
+ * usage: NeighbourAllocationBenchmark [pages] [average degree] [queries]
+ */
+public class NeighbourAllocationBenchmark {
+
+    private final static int ROUNDS = 5;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if(!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("This JVM does not count allocated bytes");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        System.out.println("Generating "+pages+" pages with an average of "+degree+" links");
+        HashMapPageRepository repository = new HashMapPageRepository(new AtomicIntCounter());
+        List<WikiPage> created = new SyntheticGraph(pages,degree,42).populate(repository);
+        System.out.println("Generated "+repository.getAmountOfEdges()+" links");
+
+        long links = 0;
+        for(WikiPage page : created) {
+            links += page.getDegree();
+        }
+
+        Consumer<WikiPage> count = neighbour -> sink += neighbour.getUniqueId();
+        for(int round = 0; round < ROUNDS; round++) {
+            //the first rounds only warm up the JIT
+            boolean report = round == ROUNDS - 1;
+
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for(WikiPage page : created) {
+                for(WikiPage neighbour : page.getNeighbours()) {
+                    sink += neighbour.getUniqueId();
+                }
+            }
+            long copying = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+            before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for(WikiPage page : created) {
+                page.forEachNeighbour(count);
+            }
+            long visiting = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+            before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for(WikiPage page : created) {
+                sink += page.getDegree();
+            }
+            long degrees = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+            if(report) {
+                System.out.printf("getNeighbours:    %.2f bytes/link%n",(double) copying / links);
+                System.out.printf("forEachNeighbour: %.2f bytes/link%n",(double) visiting / links);
+                System.out.printf("getDegree:        %.2f bytes/page%n",(double) degrees / pages);
+            }
+        }
+
+        BFSShortestPathStrategy strategy = new BFSShortestPathStrategy(repository);
+        Random random = new Random(7);
+        for(int round = 0; round < ROUNDS; round++) {
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long followed = 0;
+            for(int i = 0; i < queries; i++) {
+                WikiPage start = created.get(random.nextInt(pages));
+                WikiPage end = created.get(random.nextInt(pages));
+                long expanded = strategy.getShortestPaths(start,end).getExpanded();
+                //roughly the links followed, every expanded page has its links read once
+                followed += expanded * repository.getAmountOfEdges() / pages;
+            }
+            long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+            if(round == ROUNDS - 1)
+                System.out.printf("BFS query:        %d bytes/query, %.2f bytes/link followed%n",allocated / queries,(double) allocated / Math.max(1,followed));
+        }
+
+        //keeps the loops from being optimised away
+        if(sink == 42)
+            System.out.println();
+    }
+}
@@ -0,0 +1,81 @@
+package me.jacob.proj.util;
+
+import me.jacob.proj.model.GraphSnapshot;
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.service.ParallelBFSShortestPathStrategy;
+import me.jacob.proj.service.ShortestPathStrategy;
+import me.jacob.proj.service.ShortestPaths;
+import me.jacob.proj.service.SnapshotShortestPathStrategy;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how the parallel BFS scales with the amount of cores on a large synthetic graph.
+ * <p>
+ * usage: ParallelBFSBenchmark [pages] [average degree] [queries]
+ */
+public class ParallelBFSBenchmark {
+
+    public static void main(String[] args) {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        System.out.println("Generating "+pages+" pages with an average of "+degree+" links");
+        GraphSnapshot snapshot = new SyntheticGraph(pages,degree,42).toSnapshot();
+        System.out.println("Generated "+snapshot.getAmountOfEdges()+" links");
+
+        Random random = new Random(7);
+        WikiPage[][] pairs = new WikiPage[queries][2];
+        for(int i = 0; i < queries; i++) {
+            pairs[i][0] = snapshot.getPage(random.nextInt(pages));
+            pairs[i][1] = snapshot.getPage(random.nextInt(pages));
+        }
+
+        double sequential = time(new SnapshotShortestPathStrategy(snapshot),pairs);
+        System.out.printf("sequential: %.2f ms/query%n",sequential);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for(int threads = 1; threads <= cores; threads = next(threads,cores)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                ParallelBFSShortestPathStrategy strategy = new ParallelBFSShortestPathStrategy(snapshot,pool);
+                verify(strategy,new SnapshotShortestPathStrategy(snapshot),pairs);
+                double parallel = time(strategy,pairs);
+                System.out.printf("%3d threads: %.2f ms/query, speedup %.2fx%n",threads,parallel,sequential / parallel);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static int next(int threads, int cores) {
+        if(threads == cores)
+            return cores + 1;
+
+        return Math.min(threads * 2,cores);
+    }
+
+    private static double time(ShortestPathStrategy strategy, WikiPage[][] pairs) {
+        //warm up so the JIT has compiled the search before it is timed
+        for(int i = 0; i < Math.min(5,pairs.length); i++) {
+            strategy.getShortestPaths(pairs[i][0],pairs[i][1]).getPathCount();
+        }
+
+        long start = System.nanoTime();
+        for(WikiPage[] pair : pairs) {
+            strategy.getShortestPaths(pair[0],pair[1]).getPathCount();
+        }
+        return (System.nanoTime() - start) / 1e6 / pairs.length;
+    }
+
+    private static void verify(ShortestPathStrategy strategy, ShortestPathStrategy reference, WikiPage[][] pairs) {
+        for(WikiPage[] pair : pairs) {
+            ShortestPaths expected = reference.getShortestPaths(pair[0],pair[1]);
+            ShortestPaths actual = strategy.getShortestPaths(pair[0],pair[1]);
+            if(expected.getDistance() != actual.getDistance() || !expected.getPathCount().equals(actual.getPathCount()))
+                throw new IllegalStateException("strategies disagree on "+pair[0].getTitle()+" to "+pair[1].getTitle());
+        }
+    }
+}
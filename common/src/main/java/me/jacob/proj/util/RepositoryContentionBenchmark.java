@@ -0,0 +1,96 @@
+package me.jacob.proj.util;
+
+import me.jacob.proj.model.PageRepository;
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.model.map.ConcurrentPageRepository;
+import me.jacob.proj.model.map.HashMapPageRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+
+/**
+ * Compares how {@link HashMapPageRepository} and {@link ConcurrentPageRepository} hold up as more
+ * threads write to them at once. Every writer does what a crawler consumer does with a page: looks
+ * up the pages it links to by link, creates the page with its links and reads back its degree. The
+ * pages and their links are made before the clock starts, only the repository calls are timed.
+ * <p>
+ * usage: RepositoryContentionBenchmark [pages] [average degree] [lookups per page]
+ */
+public class RepositoryContentionBenchmark {
+
+    private final static int[] WRITERS = {1, 2, 4, 8, 16, 32, 64};
+    private final static int ROUNDS = 3;
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws InterruptedException {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int lookups = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        SyntheticGraph graph = new SyntheticGraph(pages,degree,42);
+        System.out.println(pages+" pages with an average of "+degree+" links, "+lookups+" lookups per page, "
+                +Runtime.getRuntime().availableProcessors()+" cpus");
+        System.out.printf("%-8s %-22s %-22s%n","writers","single lock pages/s","concurrent pages/s");
+        for(int writers : WRITERS) {
+            double locked = best(graph,writers,lookups,counter -> new HashMapPageRepository(counter));
+            double concurrent = best(graph,writers,lookups,counter -> new ConcurrentPageRepository(counter));
+            System.out.printf("%-8d %-22.0f %-22.0f%n",writers,locked,concurrent);
+        }
+    }
+
+    //the best of a few rounds, each on a fresh repository
+    private static double best(SyntheticGraph graph, int writers, int lookups, Function<IDCounter,PageRepository> factory) throws InterruptedException {
+        double best = 0;
+        for(int round = 0; round < ROUNDS; round++) {
+            PageRepository repository = factory.apply(new AtomicIntCounter());
+            List<WikiPage> created = graph.newPages(repository);
+            graph.forEachEdge((source, target) -> created.get(source).addNeighbour(created.get(target)));
+            best = Math.max(best,run(repository,created,writers,lookups));
+        }
+        return best;
+    }
+
+    //pages created per second
+    private static double run(PageRepository repository, List<WikiPage> pages, int writers, int lookups) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for(int w = 0; w < writers; w++) {
+            int first = w;
+            Thread thread = new Thread(() -> {
+                Random random = new Random(first);
+                long local = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                for(int i = first; i < pages.size(); i += writers) {
+                    for(int l = 0; l < lookups; l++) {
+                        WikiPage linked = repository.getPage(pages.get(random.nextInt(pages.size())).getLink());
+                        if(linked != null)
+                            local += linked.getUniqueId();
+                    }
+                    WikiPage page = pages.get(i);
+                    repository.createPage(page);
+                    local += repository.getDegree(page);
+                }
+                sink += local;
+            },"Writer-"+w);
+            thread.start();
+            threads.add(thread);
+        }
+
+        long before = System.nanoTime();
+        start.countDown();
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - before;
+        return pages.size() / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,291 @@
+package me.jacob.proj.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import me.jacob.proj.service.crawl.fetch.TokenBucket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local HTTP server standing in for Wikipedia in the fetch benchmarks. It answers a path with the
+ * page the site gives for it, or 404 if there is none, after a delay. Responses are sent from a
+ * small scheduled pool once their delay is up rather than by a thread sleeping per request, so
+ * thousands of requests can wait at once. Pages are gzipped for clients that accept it.
+ * <p>
+ * It can act overloaded: past a capacity of requests waiting it answers 503 at once, and past a rate
+ * of requests a second it answers 429, like a server that throttles its clients. It can also have a
+ * tail: a share of responses that take far longer than the rest, and a share that fail with a 503
+ * for no reason but bad luck.
+ */
+public class StubWikiServer implements Closeable {
+
+    static {
+        //the server closes idle connections past 200 by default, under a client about to reuse them
+        if(System.getProperty("sun.net.httpserver.maxIdleConnections") == null)
+            System.setProperty("sun.net.httpserver.maxIdleConnections","10000");
+    }
+
+    private final static byte[] NOT_FOUND = "<p>Not found</p>".getBytes(StandardCharsets.UTF_8);
+    private final static byte[] REFUSED = "<p>Try again later</p>".getBytes(StandardCharsets.UTF_8);
+
+    private final Function<String,String> site;
+    private final long latency;
+    private final HttpServer server;
+    private final ScheduledExecutorService responders;
+    private volatile int capacity = 0;
+    private volatile TokenBucket rateLimit = null;
+    private volatile double slowShare = 0;
+    private volatile long slowLatency = 0;
+    private volatile double failureShare = 0;
+    //seeded so a run meets the same bad luck in the same order of requests
+    private final Random luck = new Random(42);
+
+    //-- Stats Divider --//
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger peakWaiting = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicInteger overloaded = new AtomicInteger();
+    private final AtomicInteger tooManyRequests = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    //a connection is known by the port the client opened it from
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+    public StubWikiServer(Function<String,String> site, long latency, TimeUnit unit) throws IOException {
+        this.site = site;
+        this.latency = unit.toNanos(latency);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),0),4096);
+        this.responders = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable,"Stub-Responder");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        //the handler only schedules the response, the server's own thread is enough to run it
+        server.createContext("/",this::handle);
+        server.start();
+    }
+
+    private void handle(HttpExchange exchange) {
+        requests.incrementAndGet();
+        connections.add(exchange.getRemoteAddress());
+        if(capacity > 0 && waiting.get() >= capacity) {
+            overloaded.incrementAndGet();
+            refuse(exchange,503);
+            return;
+        }
+        TokenBucket bucket = rateLimit;
+        if(bucket != null && !bucket.tryAcquire()) {
+            tooManyRequests.incrementAndGet();
+            refuse(exchange,429);
+            return;
+        }
+
+        if(failureShare > 0 && luck.nextDouble() < failureShare) {
+            failed.incrementAndGet();
+            refuse(exchange,503);
+            return;
+        }
+
+        int now = waiting.incrementAndGet();
+        peakWaiting.accumulateAndGet(now,Math::max);
+        boolean slow = slowShare > 0 && luck.nextDouble() < slowShare;
+        responders.schedule(() -> respond(exchange),slow ? slowLatency : latency,TimeUnit.NANOSECONDS);
+    }
+
+    private void respond(HttpExchange exchange) {
+        try (exchange) {
+            String page = site.apply(exchange.getRequestURI().getPath());
+            //a response without a body would close the connection
+            int status = page == null ? 404 : 200;
+            byte[] body = page == null ? NOT_FOUND : page.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type","text/html; charset=utf-8");
+            String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if(accepted != null && accepted.contains("gzip")) {
+                body = gzip(body);
+                exchange.getResponseHeaders().set("Content-Encoding","gzip");
+            }
+            bytesSent.addAndGet(body.length);
+            exchange.sendResponseHeaders(status,body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (IOException e) {
+            //the client gave up on the request
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    //answered straight away, an overloaded server doesn't make its clients wait to hear it
+    private void refuse(HttpExchange exchange, int status) {
+        try (exchange) {
+            exchange.getResponseHeaders().set("Content-Type","text/html; charset=utf-8");
+            exchange.getResponseHeaders().set("Retry-After","1");
+            exchange.sendResponseHeaders(status,REFUSED.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(REFUSED);
+            }
+        } catch (IOException e) {
+            //the client gave up on the request
+        }
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(body);
+        }
+        return bytes.toByteArray();
+    }
+
+    //the most requests that may wait for their response before more are answered 503, 0 for no limit
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    //the most requests a second before more are answered 429, 0 for no limit
+    public void setRateLimit(double perSecond) {
+        this.rateLimit = perSecond > 0 ? new TokenBucket(perSecond,Math.max(1,perSecond / 10)) : null;
+    }
+
+    //this share of responses, from 0 to 1, are sent after the slow latency rather than the usual one
+    public void setSlowResponses(double share, long slowLatency, TimeUnit unit) {
+        this.slowLatency = unit.toNanos(slowLatency);
+        this.slowShare = share;
+    }
+
+    //this share of requests, from 0 to 1, are answered 503 straight away
+    public void setFailures(double share) {
+        this.failureShare = share;
+    }
+
+    //the address to put paths after
+    public String getRoot() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public int getPeakWaiting() {
+        return peakWaiting.get();
+    }
+
+    public void resetPeakWaiting() {
+        peakWaiting.set(waiting.get());
+    }
+
+    //the bytes of the bodies sent, after compression
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    //the requests answered 503
+    public int getOverloaded() {
+        return overloaded.get();
+    }
+
+    //the requests answered 429
+    public int getTooManyRequests() {
+        return tooManyRequests.get();
+    }
+
+    //the requests answered 503 by bad luck rather than overload
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getConnections() {
+        return connections.size();
+    }
+
+    public void resetStats() {
+        requests.set(0);
+        bytesSent.set(0);
+        overloaded.set(0);
+        tooManyRequests.set(0);
+        failed.set(0);
+        connections.clear();
+        resetPeakWaiting();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        responders.shutdownNow();
+    }
+
+    //the pages saved in a directory as name.txt, at /wiki/name, like the FileDocumentFetcher reads them
+    public static Function<String,String> directorySite(Path directory) {
+        String prefix = "/wiki/";
+        return path -> {
+            if(!path.startsWith(prefix) || path.indexOf('/',prefix.length()) >= 0)
+                return null;
+
+            try {
+                Path file = directory.resolve(path.substring(prefix.length()) + ".txt");
+                return Files.isRegularFile(file) ? Files.readString(file) : null;
+            } catch (InvalidPathException | IOException e) {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * The pages of a synthetic graph in the markup the test analyzer reads, at /wiki/Page_id. One page
+     * in twenty, never the first, is missing so some links lead nowhere.
+     */
+    public static Function<String,String> syntheticSite(SyntheticGraph graph) {
+        List<List<Integer>> links = new ArrayList<>(graph.getPages());
+        for(int id = 0; id < graph.getPages(); id++) {
+            links.add(new ArrayList<>());
+        }
+        graph.forEachEdge((source,target) -> links.get(source).add(target));
+
+        String prefix = "/wiki/Page_";
+        return path -> {
+            if(!path.startsWith(prefix))
+                return null;
+
+            int id;
+            try {
+                id = Integer.parseInt(path.substring(prefix.length()));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if(id < 0 || id >= links.size() || (id != 0 && id % 20 == 0))
+                return null;
+
+            StringBuilder page = new StringBuilder();
+            page.append("<p id = \"title\">Page ").append(id).append("</p>\n");
+            page.append("<p id = \"description\">Synthetic page ").append(id).append("</p>\n");
+            for(int target : links.get(id)) {
+                page.append("<a>Page_").append(target).append("</a>\n");
+            }
+            return page.toString();
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package me.jacob.proj.util;
+
+import me.jacob.proj.model.GraphSnapshot;
+import me.jacob.proj.model.PageRepository;
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.model.WikiPage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates large random link graphs with a wikipedia like shape for benchmarking the path
+ * strategies. Half of the links point at a page picked by copying the target of an earlier link,
+ * which gives a few heavily linked pages and a long tail of rarely linked ones.
+ */
+public class SyntheticGraph {
+
+    private final int pages;
+    private final int averageDegree;
+    private final long seed;
+
+    public SyntheticGraph(int pages, int averageDegree, long seed) {
+        if(pages <= 0)
+            throw new IllegalArgumentException("there must be at least one page");
+
+        this.pages = pages;
+        this.averageDegree = averageDegree;
+        this.seed = seed;
+    }
+
+    public GraphSnapshot toSnapshot() {
+        GraphSnapshot.Builder builder = new GraphSnapshot.Builder();
+        for(int id = 0; id < pages; id++) {
+            builder.addPage(newPage(id,null));
+        }
+
+        forEachEdge(builder::addEdge);
+        return builder.build();
+    }
+
+    //creates the pages in the repository with their links, as if they had been crawled
+    public List<WikiPage> populate(PageRepository repository) {
+        List<WikiPage> created = newPages(repository);
+        forEachEdge((source, target) -> created.get(source).addNeighbour(created.get(target)));
+        repository.createPages(created);
+        return created;
+    }
+
+    //the pages without any links, the page with id i is at index i
+    public List<WikiPage> newPages(PageRepository repository) {
+        List<WikiPage> created = new ArrayList<>(pages);
+        for(int id = 0; id < pages; id++) {
+            created.add(newPage(id,repository));
+        }
+        return created;
+    }
+
+    //the same edges for the same seed, every call
+    public void forEachEdge(EdgeSink edges) {
+        Random random = new Random(seed);
+        int[] targets = new int[pages * averageDegree];
+        int count = 0;
+        for(int id = 0; id < pages; id++) {
+            //degrees vary from 1 to twice the average
+            int degree = 1 + random.nextInt(Math.max(1,averageDegree * 2 - 1));
+            for(int i = 0; i < degree; i++) {
+                int target;
+                if(count > 0 && random.nextBoolean()) {
+                    target = targets[random.nextInt(count)];
+                } else {
+                    target = random.nextInt(pages);
+                }
+
+                if(count < targets.length)
+                    targets[count++] = target;
+
+                edges.addEdge(id,target);
+            }
+        }
+    }
+
+    private WikiPage newPage(int id, PageRepository repository) {
+        WikiPage page = new WikiPage("Page "+id,new WikiLink("/wiki/Page_"+id),repository);
+        page.setUniqueId(id);
+        return page;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    public int getAverageDegree() {
+        return averageDegree;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public interface EdgeSink {
+        void addEdge(int source, int target);
+    }
+}
@@ -0,0 +1,156 @@
+package me.jacob.proj.util;
+
+import me.jacob.proj.model.PageRepository;
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.model.map.HashMapLinkRepository;
+import me.jacob.proj.model.map.HashMapPageRepository;
+import me.jacob.proj.service.LinkService;
+import me.jacob.proj.service.Wikipedia;
+import me.jacob.proj.service.crawl.FetchResult;
+import me.jacob.proj.service.crawl.FetchRetrier;
+import me.jacob.proj.service.crawl.WikiCrawler;
+import me.jacob.proj.service.crawl.analysis.factory.TestAnalyzerFactory;
+import me.jacob.proj.service.crawl.fetch.DocumentFetcher;
+import me.jacob.proj.service.crawl.fetch.FetchStatus;
+import me.jacob.proj.service.crawl.fetch.HedgedDocumentFetcher;
+import me.jacob.proj.service.crawl.fetch.HttpClientDocumentFetcher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crawls a synthetic site from a {@link StubWikiServer} with a slow tail, a few responses taking far
+ * longer than the rest, and a few failing with a 503. The crawl is run four ways: stashing failures
+ * as the crawler always has, retrying them with backoff, retrying with a deadline on every fetch, and
+ * retrying with a deadline and hedged requests. The latency of a page runs from when it was first
+ * asked for to when it was fetched, retries and all. A page that was stashed never arrives, it is
+ * counted apart.
+ * <p>
+ * usage: TailLatencyBenchmark [pages] [latency ms] [slow share] [slow latency ms] [failure share] [deadline ms]
+ */
+public class TailLatencyBenchmark {
+
+    private final static PrintStream OUT = System.out;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 20;
+        double slowShare = args.length > 2 ? Double.parseDouble(args[2]) : 0.02;
+        long slowLatency = args.length > 3 ? Long.parseLong(args[3]) : 2_000;
+        double failureShare = args.length > 4 ? Double.parseDouble(args[4]) : 0.03;
+        Duration deadline = Duration.ofMillis(args.length > 5 ? Long.parseLong(args[5]) : 300);
+        int inFlight = 64;
+
+        SyntheticGraph graph = new SyntheticGraph(pages,8,42);
+        try (StubWikiServer server = new StubWikiServer(StubWikiServer.syntheticSite(graph),latency,TimeUnit.MILLISECONDS)) {
+            server.setSlowResponses(slowShare,slowLatency,TimeUnit.MILLISECONDS);
+            server.setFailures(failureShare);
+            OUT.printf("%d pages, %d ms a response, %.0f%% take %d ms, %.0f%% fail, %d fetches in flight%n",pages,latency,
+                    slowShare * 100,slowLatency,failureShare * 100,inFlight);
+            OUT.printf("%-20s %7s %8s %9s %8s %8s %8s %8s %8s %8s %9s%n","mode","pages","stashed","requests","p50 ms","p95 ms",
+                    "p99 ms","max ms","hedges","missed","time ms");
+
+            crawl(server,new HttpClientDocumentFetcher(server.getRoot()),null,0,inFlight,"stash");
+            crawl(server,new HttpClientDocumentFetcher(server.getRoot()),null,5,inFlight,"retries");
+
+            HedgedDocumentFetcher bounded = new HedgedDocumentFetcher.Builder(new HttpClientDocumentFetcher(server.getRoot()))
+                    .setDeadline(deadline)
+                    .build();
+            crawl(server,bounded,bounded,5,inFlight,"retries, deadline");
+
+            HedgedDocumentFetcher hedged = new HedgedDocumentFetcher.Builder(new HttpClientDocumentFetcher(server.getRoot()))
+                    .setDeadline(deadline)
+                    .setHedged(true)
+                    .build();
+            crawl(server,hedged,hedged,5,inFlight,"retries, deadline, hedged");
+        }
+    }
+
+    private static void crawl(StubWikiServer server, DocumentFetcher fetcher, HedgedDocumentFetcher hedged, int retries,
+                              int inFlight, String mode) throws InterruptedException {
+        PageRepository repository = new HashMapPageRepository(new AtomicIntCounter());
+        LinkService service = new LinkService(new HashMapLinkRepository(repository), repository);
+        service.setTimeBetweenUpdates(Duration.ofHours(1));
+        Wikipedia wikipedia = new Wikipedia(service, repository);
+
+        PageTimer timer = new PageTimer(fetcher);
+        WikiCrawler crawler = new WikiCrawler.Builder(wikipedia, service)
+                .setShutDownOnSize(true)
+                .setMaxInFlightFetches(inFlight)
+                .setMaxRetries(retries)
+                .setRetryBackoff(Duration.ofMillis(50),Duration.ofSeconds(2))
+                .setAnalyzer(new TestAnalyzerFactory(wikipedia))
+                .setFetcher(timer)
+                .build();
+
+        server.resetStats();
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long before = System.nanoTime();
+        try {
+            crawler.start(new WikiLink("/wiki/Page_0"));
+            crawler.await();
+        } finally {
+            System.setOut(OUT);
+        }
+        long elapsed = System.nanoTime() - before;
+        if(hedged != null)
+            hedged.shutdown();
+
+        long[] latencies = timer.getLatencies();
+        Arrays.sort(latencies);
+        FetchRetrier retrier = crawler.getRetrier();
+        int stashed = retrier == null ? timer.getFailures() : retrier.getGaveUp();
+        OUT.printf("%-20s %7d %8d %9d %8.1f %8.1f %8.1f %8.1f %8s %8s %9d%n",mode,wikipedia.size(),stashed,server.getRequests(),
+                percentile(latencies,0.50),percentile(latencies,0.95),percentile(latencies,0.99),percentile(latencies,1),
+                hedged == null ? "-" : hedged.getHedges(),hedged == null ? "-" : hedged.getDeadlinesMissed(),elapsed / 1_000_000);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if(sorted.length == 0)
+            return 0;
+
+        int index = Math.max(0,(int) Math.ceil(percentile * sorted.length) - 1);
+        return sorted[index] / 1e6;
+    }
+
+    //times every page from its first fetch to the one that brought it back, across retries
+    private static class PageTimer implements DocumentFetcher {
+
+        private final DocumentFetcher fetcher;
+        private final Map<WikiLink,Long> firstAsked = new ConcurrentHashMap<>();
+        private final Map<WikiLink,Long> latencies = new ConcurrentHashMap<>();
+        private final Map<WikiLink,Boolean> failures = new ConcurrentHashMap<>();
+
+        private PageTimer(DocumentFetcher fetcher) {
+            this.fetcher = fetcher;
+        }
+
+        @Override
+        public FetchResult fetch(WikiLink link) {
+            firstAsked.putIfAbsent(link,System.nanoTime());
+            FetchResult result = fetcher.fetch(link);
+            if(result.getStatus() == FetchStatus.SUCCESS) {
+                latencies.put(link,System.nanoTime() - firstAsked.get(link));
+                failures.remove(link);
+            } else if(result.getStatus() != FetchStatus.DOES_NOT_EXIST) {
+                failures.put(link,true);
+            }
+            return result;
+        }
+
+        private long[] getLatencies() {
+            return latencies.values().stream().mapToLong(Long::longValue).toArray();
+        }
+
+        //the pages whose last fetch failed
+        private int getFailures() {
+            return failures.size();
+        }
+    }
+}
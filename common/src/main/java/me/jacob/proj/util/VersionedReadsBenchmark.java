@@ -0,0 +1,140 @@
+package me.jacob.proj.util;
+
+import me.jacob.proj.model.GraphVersions;
+import me.jacob.proj.model.PageRepository;
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.model.WikiPage;
+import me.jacob.proj.model.map.HashMapLinkRepository;
+import me.jacob.proj.model.map.HashMapPageRepository;
+import me.jacob.proj.service.BidirectionalBFSShortestPathStrategy;
+import me.jacob.proj.service.LinkService;
+import me.jacob.proj.service.ShortestPathStrategy;
+import me.jacob.proj.service.ShortestPaths;
+import me.jacob.proj.service.VersionedShortestPathStrategy;
+import me.jacob.proj.service.Wikipedia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs path queries while writers keep relinking pages through {@link Wikipedia#update}, first on
+ * the live repository and then on pinned versions of the graph. Every relinked page swaps between
+ * its own links and its own links plus one more, so a query from the page to its first link always
+ * has a distance of one. Any other answer saw the page between its links being cleared and put back.
+ * <p>
+ * usage: VersionedReadsBenchmark [pages] [average degree] [seconds per run] [writers] [readers]
+ */
+public class VersionedReadsBenchmark {
+
+    private final static int RELINKED = 64;
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws InterruptedException {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int writers = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        int readers = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+
+        PageRepository repository = new HashMapPageRepository(new AtomicIntCounter());
+        LinkService service = new LinkService(new HashMapLinkRepository(repository), repository);
+        Wikipedia wikipedia = new Wikipedia(service, repository);
+        List<WikiPage> created = new SyntheticGraph(pages,degree,42).populate(repository);
+        GraphVersions versions = wikipedia.enableVersionedReads();
+
+        //the pages that are relinked, each with the two sets of links it swaps between
+        Random random = new Random(7);
+        List<WikiPage> relinked = new ArrayList<>();
+        List<List<WikiLink>> shortLinks = new ArrayList<>();
+        List<List<WikiLink>> longLinks = new ArrayList<>();
+        while (relinked.size() < RELINKED) {
+            WikiPage page = created.get(random.nextInt(pages));
+            List<WikiLink> links = new ArrayList<>();
+            page.forEachNeighbour(p -> {
+                if(p.getUniqueId() != page.getUniqueId())
+                    links.add(p.getLink());
+            });
+            if(links.isEmpty() || relinked.contains(page))
+                continue;
+
+            List<WikiLink> more = new ArrayList<>(links);
+            more.add(created.get(random.nextInt(pages)).getLink());
+            relinked.add(page);
+            shortLinks.add(links);
+            longLinks.add(more);
+        }
+
+        System.out.println(pages+" pages with an average of "+degree+" links, "+writers+" writers relinking "
+                +RELINKED+" pages, "+readers+" readers, "+Runtime.getRuntime().availableProcessors()+" cpus");
+        System.out.printf("%-10s %-12s %-12s %-12s %-10s %-10s%n","reads","queries/s","wrong","updates/s","p99 ms","max ms");
+        run("live",new BidirectionalBFSShortestPathStrategy(repository),wikipedia,relinked,shortLinks,longLinks,seconds,writers,readers);
+        run("versioned",new VersionedShortestPathStrategy(versions),wikipedia,relinked,shortLinks,longLinks,seconds,writers,readers);
+        System.out.println("epochs published: "+versions.getEpoch()+", versions still pinned: "+versions.getPinnedVersions());
+    }
+
+    private static void run(String name, ShortestPathStrategy strategy, Wikipedia wikipedia, List<WikiPage> relinked,
+                            List<List<WikiLink>> shortLinks, List<List<WikiLink>> longLinks,
+                            int seconds, int writers, int readers) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong queries = new AtomicLong();
+        AtomicLong wrong = new AtomicLong();
+        AtomicLong updates = new AtomicLong();
+        LatencyRecorder latencies = new LatencyRecorder(100_000);
+        List<Thread> threads = new ArrayList<>();
+
+        for(int w = 0; w < writers; w++) {
+            int first = w;
+            threads.add(new Thread(() -> {
+                long round = 0;
+                while (running.get()) {
+                    for(int i = first; i < relinked.size(); i += writers) {
+                        WikiPage page = relinked.get(i);
+                        List<WikiLink> links = round % 2 == 0 ? longLinks.get(i) : shortLinks.get(i);
+                        WikiPage.State state = page.getState();
+                        wikipedia.update(page,state.title(),state.description(),state.redirect(),state.articleType(),links);
+                        updates.incrementAndGet();
+                    }
+                    round++;
+                }
+            },"Writer-"+w));
+        }
+
+        for(int r = 0; r < readers; r++) {
+            Random random = new Random(r);
+            threads.add(new Thread(() -> {
+                long local = 0;
+                while (running.get()) {
+                    int i = random.nextInt(relinked.size());
+                    WikiPage page = relinked.get(i);
+                    WikiPage end = wikipedia.getPage(shortLinks.get(i).get(0));
+                    long before = System.nanoTime();
+                    ShortestPaths paths = strategy.getShortestPaths(page,end);
+                    latencies.record(System.nanoTime() - before);
+                    if(paths.getDistance() != 1)
+                        wrong.incrementAndGet();
+                    queries.incrementAndGet();
+                    local += paths.getDistance();
+                }
+                sink += local;
+            },"Reader-"+r));
+        }
+
+        for(Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        System.out.printf("%-10s %-12.0f %-12d %-12.0f %-10.2f %-10.2f%n",name,queries.get() / (double) seconds,wrong.get(),
+                updates.get() / (double) seconds,latencies.getPercentile(99,TimeUnit.MICROSECONDS) / 1000.0,
+                latencies.getMax(TimeUnit.MICROSECONDS) / 1000.0);
+    }
+}
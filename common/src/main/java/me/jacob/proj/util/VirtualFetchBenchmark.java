@@ -0,0 +1,105 @@
+package me.jacob.proj.util;
+
+import me.jacob.proj.model.PageRepository;
+import me.jacob.proj.model.WikiLink;
+import me.jacob.proj.model.map.HashMapLinkRepository;
+import me.jacob.proj.model.map.HashMapPageRepository;
+import me.jacob.proj.service.LinkService;
+import me.jacob.proj.service.Wikipedia;
+import me.jacob.proj.service.crawl.FetchDispatcher;
+import me.jacob.proj.service.crawl.WikiCrawler;
+import me.jacob.proj.service.crawl.WikiProducer;
+import me.jacob.proj.service.crawl.analysis.factory.TestAnalyzerFactory;
+import me.jacob.proj.service.crawl.fetch.WebDocumentFetcher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crawls a synthetic site from a {@link StubWikiServer} that answers every request after a delay,
+ * first with the default 60 producers and then with a {@link FetchDispatcher} allowing thousands of
+ * fetches in flight. Reports the pages crawled a second, the most threads alive and the most requests
+ * the server held at once, and the same starvation and blocked times for both.
+ * <p>
+ * usage: VirtualFetchBenchmark [pages] [latency ms] [fetches in flight]
+ */
+public class VirtualFetchBenchmark {
+
+    private final static PrintStream OUT = System.out;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 4_000;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        int inFlight = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+
+        SyntheticGraph graph = new SyntheticGraph(pages,8,42);
+        try (StubWikiServer server = new StubWikiServer(StubWikiServer.syntheticSite(graph),latency,TimeUnit.MILLISECONDS)) {
+            OUT.printf("%d pages served from %s after %d ms%n",pages,server.getRoot(),latency);
+            OUT.printf("%-28s %10s %10s %12s %14s %16s %16s %16s%n","mode","pages","pages/s","peak threads","peak waiting",
+                    "starved ms/link","blocked ms/page","permit ms/link");
+            run(server,0,"60 platform producers");
+            run(server,inFlight,"dispatcher, " + inFlight + " in flight");
+        }
+    }
+
+    private static void run(StubWikiServer server, int inFlight, String mode) throws InterruptedException {
+        PageRepository repository = new HashMapPageRepository(new AtomicIntCounter());
+        LinkService service = new LinkService(new HashMapLinkRepository(repository), repository);
+        service.setTimeBetweenUpdates(Duration.ofHours(1));
+        Wikipedia wikipedia = new Wikipedia(service, repository);
+
+        WikiCrawler crawler = new WikiCrawler.Builder(wikipedia, service)
+                .setShutDownOnSize(true)
+                .setMaxInFlightFetches(inFlight)
+                .setAnalyzer(new TestAnalyzerFactory(wikipedia))
+                .setFetcher(new WebDocumentFetcher(server.getRoot()))
+                .build();
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        int requestsBefore = server.getRequests();
+        server.resetPeakWaiting();
+
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long before = System.nanoTime();
+        try {
+            crawler.start(new WikiLink("/wiki/Page_0"));
+            crawler.await();
+        } finally {
+            System.setOut(OUT);
+        }
+        long elapsed = System.nanoTime() - before;
+
+        long starved = 0;
+        long blocked = 0;
+        long permits = 0;
+        int taken = 0;
+        int placed = 0;
+        FetchDispatcher dispatcher = crawler.getDispatcher();
+        if(dispatcher != null) {
+            starved = dispatcher.getTotalStarvationTime();
+            blocked = dispatcher.getTotalBlockedTime();
+            permits = dispatcher.getTotalPermitWaitTime();
+            taken = dispatcher.getFetched();
+            placed = dispatcher.getPlaced();
+        } else {
+            for(WikiProducer producer : crawler.getProducers()) {
+                starved += producer.getTotalStarvationTime();
+                blocked += producer.getTotalBlockedTime();
+                taken += producer.getFetched();
+                placed += producer.getPlaced();
+            }
+        }
+
+        int crawled = wikipedia.size();
+        OUT.printf("%-28s %10d %10.0f %12d %14d %16.2f %16.2f %16.2f%n",mode,crawled,crawled / (elapsed / 1e9),
+                threads.getPeakThreadCount(),server.getPeakWaiting(),starved / (Math.max(1,taken) * 1e6),
+                blocked / (Math.max(1,placed) * 1e6),permits / (Math.max(1,taken) * 1e6));
+        OUT.printf("%-28s %d requests%n","",server.getRequests() - requestsBefore);
+    }
+}
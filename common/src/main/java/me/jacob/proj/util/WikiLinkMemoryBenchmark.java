@@ -0,0 +1,111 @@
+package me.jacob.proj.util;
+
+import me.jacob.proj.model.LinkSymbols;
+import me.jacob.proj.model.WikiLink;
+
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the heap held by links before and after interning their paths. A crawl sees the same
+ * page linked from many others, so the links are drawn from fewer paths than there are links and
+ * every path string is a fresh copy, as it would be coming out of the html parser. The old layout,
+ * a map of locale to path in every link, is rebuilt here to measure against.
+ * <p>
+ * usage: WikiLinkMemoryBenchmark [links] [distinct paths]
+ */
+public class WikiLinkMemoryBenchmark {
+
+    public static void main(String[] args) {
+        int links = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int distinct = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        System.out.println(links+" links to "+distinct+" pages");
+        long before = usedHeap();
+        Object[] legacy = new Object[links];
+        Random random = new Random(42);
+        for(int i = 0; i < links; i++) {
+            legacy[i] = new LegacyLink(path(random.nextInt(distinct)));
+        }
+        long legacyBytes = usedHeap() - before;
+        System.out.printf("map per link:  %.1f bytes/link%n",(double) legacyBytes / links);
+        legacy = null;
+
+        before = usedHeap();
+        WikiLink[] interned = new WikiLink[links];
+        random = new Random(42);
+        for(int i = 0; i < links; i++) {
+            interned[i] = new WikiLink(path(random.nextInt(distinct)));
+        }
+        long internedBytes = usedHeap() - before;
+        System.out.printf("interned:      %.1f bytes/link, symbol table holds %d paths%n",
+                (double) internedBytes / links,LinkSymbols.global().size());
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if(threads.isThreadAllocatedMemorySupported()) {
+            long id = Thread.currentThread().getId();
+            int calls = Math.min(links,200_000);
+            long length = 0;
+            for(int round = 0; round < 3; round++) {
+                long allocated = threads.getThreadAllocatedBytes(id);
+                for(int i = 0; i < calls; i++) {
+                    length += new LegacyLink(interned[i].getRelative()).toString().length();
+                }
+                long legacyString = threads.getThreadAllocatedBytes(id) - allocated;
+
+                allocated = threads.getThreadAllocatedBytes(id);
+                for(int i = 0; i < calls; i++) {
+                    length += interned[i].toString().length();
+                }
+                long internedString = threads.getThreadAllocatedBytes(id) - allocated;
+                if(round == 2) {
+                    System.out.printf("toString with a URL: %d bytes/call%n",legacyString / calls);
+                    System.out.printf("toString interned:   %d bytes/call%n",internedString / calls);
+                }
+            }
+            if(length == 42)
+                System.out.println();
+        }
+
+        //keeps the links alive until they have been measured
+        if(interned[0] == null)
+            System.out.println();
+    }
+
+    private static String path(int page) {
+        return new StringBuilder("/wiki/Page_").append(page).toString();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    //the layout links had before the symbol table, the link is never looked at so it is the map alone
+    private static class LegacyLink {
+
+        private final Map<Locale,String> paths;
+
+        private LegacyLink(String path) {
+            this.paths = new HashMap<>();
+            this.paths.put(Locale.ENGLISH,path);
+        }
+
+        @Override
+        public String toString() {
+            try {
+                return new URL("https",Locale.ENGLISH.getLanguage()+".wikipedia.org",paths.get(Locale.ENGLISH)).toString();
+            } catch (MalformedURLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}